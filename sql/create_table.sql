@@ -32,12 +32,18 @@ create table t_ai_assistant_chat_messages
     role        varchar(32)                        not null comment '角色(user/assistant)',
     content     text                               not null comment '对话内容',
     title       varchar(255)                       null comment '标题',
-    create_time datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    create_time datetime(3) default CURRENT_TIMESTAMP(3) not null comment '创建时间（毫秒精度）',
     modify_time datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    seq         bigint                             not null auto_increment comment '落库顺序，create_time 相同时用于排序',
+    constraint uk_seq
+        unique (seq),
     constraint fk_session
         foreign key (session_id) references t_ai_assistant_sessions (session_id)
 )comment 'AI 助手消息表';
 
+-- 按会话取最近 N 条消息（记忆回填）与按时间顺序读取历史都走该索引（已有库通过 upgrade.sql 创建）
+create index idx_session_time_seq on t_ai_assistant_chat_messages (session_id, create_time, seq);
+
 
 -- 景点表
 create table if not exists t_poi
@@ -0,0 +1,67 @@
+# 已有库升级（可重复执行）
+
+use aitourism;
+
+
+-- 消息表：create_time 升级为毫秒精度，避免同一秒内的用户消息与 AI 回复排序不稳定
+set @ddl = (select if(count(*) > 0,
+        'alter table t_ai_assistant_chat_messages modify create_time datetime(3) default CURRENT_TIMESTAMP(3) not null comment ''创建时间（毫秒精度）''',
+        'select 1')
+    from information_schema.columns
+    where table_schema = database() and table_name = 't_ai_assistant_chat_messages'
+      and column_name = 'create_time' and datetime_precision = 0);
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+-- 消息表：增加自增列 seq，create_time 相同时按落库顺序排序（findBySessionId 等查询按 create_time, seq 排序，本段必须执行）
+-- 分三步：先加可空列，按 create_time 回填，再改为自增。直接 add column ... auto_increment 会按聚簇索引
+-- （即随机的 UUID msg_id）顺序编号，旧数据中同一秒内的用户消息与 AI 回复会排乱。
+-- 回填时同一 create_time 内用户消息排在 AI 回复之前，再按 msg_id 保证结果确定。
+-- 注意：如果已执行过旧版本脚本（直接添加自增列），seq 已按 msg_id 顺序编号，本段不会重新编号。
+set @ddl = (select if(count(*) = 0,
+        'alter table t_ai_assistant_chat_messages add column seq bigint null comment ''落库顺序，create_time 相同时用于排序''',
+        'select 1')
+    from information_schema.columns
+    where table_schema = database() and table_name = 't_ai_assistant_chat_messages' and column_name = 'seq');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @seq = 0;
+update t_ai_assistant_chat_messages
+set seq = (@seq := @seq + 1)
+where seq is null
+order by create_time, field(role, 'user', 'assistant'), msg_id;
+
+-- 改为自增时保留已回填的值，自增计数器从 max(seq) + 1 开始
+set @ddl = (select if(count(*) > 0,
+        'alter table t_ai_assistant_chat_messages modify seq bigint not null auto_increment comment ''落库顺序，create_time 相同时用于排序'', add constraint uk_seq unique (seq)',
+        'select 1')
+    from information_schema.columns
+    where table_schema = database() and table_name = 't_ai_assistant_chat_messages'
+      and column_name = 'seq' and extra not like '%auto_increment%');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+-- 消息表：按会话取最近 N 条消息的索引，替换只含 (session_id, create_time) 的旧索引
+set @ddl = (select if(count(*) > 0,
+        'drop index idx_session_create_time on t_ai_assistant_chat_messages',
+        'select 1')
+    from information_schema.statistics
+    where table_schema = database() and table_name = 't_ai_assistant_chat_messages'
+      and index_name = 'idx_session_create_time');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @ddl = (select if(count(*) = 0,
+        'create index idx_session_time_seq on t_ai_assistant_chat_messages (session_id, create_time, seq)',
+        'select 1')
+    from information_schema.statistics
+    where table_schema = database() and table_name = 't_ai_assistant_chat_messages'
+      and index_name = 'idx_session_time_seq');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
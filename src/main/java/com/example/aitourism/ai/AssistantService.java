@@ -1,10 +1,12 @@
 package com.example.aitourism.ai;
 
 import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
 import reactor.core.publisher.Flux;
 
 // 定义Assistant接口
-public interface AssistantService {
+// 继承 ChatMemoryAccess：蓝图模式下共享一个实例，需要按 memoryId 移除 LangChain4j 内部持有的 ChatMemory
+public interface AssistantService extends ChatMemoryAccess {
     @dev.langchain4j.service.SystemMessage(fromResource ="prompt/tour-route-planning-system-prompt.txt")
     Flux<String> chat_Stream(@MemoryId String memoryId, @dev.langchain4j.service.UserMessage String userMessage);
 
@@ -2,19 +2,34 @@ package com.example.aitourism.ai;
 
 import com.example.aitourism.ai.guardrail.PromptSafetyInputGuardrail;
 import com.example.aitourism.ai.mcp.McpClientService;
+import com.example.aitourism.ai.memory.ChatHistoryLoader;
+import com.example.aitourism.ai.memory.ChatMemorySummarizer;
+import com.example.aitourism.ai.memory.CustomRedisChatMemoryStore;
+import com.example.aitourism.ai.memory.TokenBudgetChatMemory;
+import com.example.aitourism.config.TokenBudgetMemoryConfig;
+import com.example.aitourism.ai.model.ModelClientRegistry;
+import com.example.aitourism.ai.model.ModelRouter;
+import com.example.aitourism.ai.model.TokenCounter;
 import com.example.aitourism.ai.tool.ToolManager;
+import com.example.aitourism.exception.AdmissionRejectedException;
 import com.example.aitourism.exception.InputValidationException;
-import com.example.aitourism.mapper.ChatMessageMapper;
-import com.example.aitourism.monitor.AiModelMonitorListener;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
 import com.example.aitourism.monitor.MonitorContext;
 import com.example.aitourism.monitor.MonitorContextHolder;
 import com.example.aitourism.service.AbTestService;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -23,9 +38,15 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
-import java.util.List;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * 会话隔离的AI助手服务工厂
@@ -36,18 +57,6 @@ import reactor.core.publisher.Flux;
 @Slf4j
 public class MemoryAssistantServiceFactory {
 
-    @Value("${openai.api-key}")
-    private String apiKey;
-
-    @Value("${openai.base-url}")
-    private String baseUrl;
-
-    @Value("${openai.model-name}")
-    private String modelName;
-
-    @Value("${openai.max-output-tokens:800}")
-    private Integer maxOutputTokens;
-
     @Value("${mcp.max-history-messages:20}")
     private Integer maxHistoryMessages;
     
@@ -59,14 +68,26 @@ public class MemoryAssistantServiceFactory {
     @Value("${mcp.result-truncation.enabled:true}")
     private boolean mcpTruncationEnabled;
 
+    // 蓝图模式：全局只构建一个 AI 服务实例，各会话只持有各自的 ChatMemory
+    @Value("${ai.assistant.blueprint.enabled:false}")
+    private boolean blueprintEnabled;
+
+    @Value("${ai.assistant.blueprint.memory-cache-size:10000}")
+    private int memoryCacheSize;
+
+    @Value("${ai.assistant.blueprint.memory-expire-after-access-minutes:30}")
+    private int memoryExpireAfterAccessMinutes;
+
     private final McpClientService mcpClientService;
     private final ChatMemoryStore chatMemoryStore;
     
-    private final ChatMessageMapper chatMessageMapper;
+    private final ChatHistoryLoader chatHistoryLoader;
     private final ToolManager toolManager;
-
-    @Resource
-    private AiModelMonitorListener aiModelMonitorListener;
+    private final ModelClientRegistry modelClientRegistry;
+    private final AiModelMetricsCollector metricsCollector;
+    private final TokenBudgetMemoryConfig tokenBudgetConfig;
+    private final ChatMemorySummarizer chatMemorySummarizer;
+    private final ModelRouter modelRouter;
     
     @Resource
     private AbTestService abTestService;   
@@ -84,13 +105,64 @@ public class MemoryAssistantServiceFactory {
             })
             .build();
 
+    /**
+     * 蓝图模式下唯一的 AI 服务实例，以及按会话缓存的 ChatMemory
+     * 记忆本身由 @MemoryId 隔离、持久化在 ChatMemoryStore 中，ChatMemory 对象只是轻量的访问入口；
+     * 模型、工具反射元数据、护轨与系统提示词只在启动时构建一次，不再随会话数增长
+     */
+    private volatile AssistantService blueprintService;
+    private Cache<String, ChatMemory> memoryCache;
+
+    /**
+     * 小模型 AI 服务（按复杂度路由的简单对话使用）：全局一个实例，不挂工具，记忆与主模型共用同一个存储
+     */
+    private volatile AssistantService smallAssistantService;
+
+    @PostConstruct
+    public void init() {
+        if (!blueprintEnabled) {
+            return;
+        }
+        memoryCache = Caffeine.newBuilder()
+                .maximumSize(memoryCacheSize)
+                .expireAfterAccess(Duration.ofMinutes(memoryExpireAfterAccessMinutes))
+                .removalListener((String key, ChatMemory value, RemovalCause cause) -> {
+                    // LangChain4j 内部同样按 memoryId 持有 ChatMemory，这里一并移除，避免无界增长
+                    AssistantService service = blueprintService;
+                    if (key != null && service != null && cause != RemovalCause.REPLACED) {
+                        service.evictChatMemory(key);
+                    }
+                })
+                .build();
+        metricsCollector.registerCaffeineCache(memoryCache, "assistant_chat_memory");
+        blueprintService = buildAssistantService(idObj -> memoryCache.get(String.valueOf(idObj), this::createChatMemory));
+        log.info("AI服务蓝图模式已启用，ChatMemory 缓存上限: {}", memoryCacheSize);
+    }
+
 
 
     /**
      * 获取或创建会话隔离的 AI 服务实例。
      * 使用 Caffeine 基于会话键进行缓存，避免重复创建模型与记忆。
+     * 蓝图模式下直接返回共享实例（记忆仍按 sessionId 隔离）。
      */
     public AssistantService getAssistantService(String sessionId, String userId) {
+        long start = System.nanoTime();
+        try {
+            if (blueprintEnabled) {
+                // LangChain4j 按 memoryId 自行持有 ChatMemory，创建之后不会再调用 memoryCache.get；
+                // 每次对话在这里访问一次，空闲过期从最近一次对话起算，不会把仍在进行的会话按创建时间淘汰
+                memoryCache.getIfPresent(sessionId);
+                return blueprintService;
+            }
+            return getSessionAssistantService(sessionId, userId);
+        } finally {
+            metricsCollector.recordAssistantAcquisition(blueprintEnabled ? "blueprint" : "per_session",
+                    Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private AssistantService getSessionAssistantService(String sessionId, String userId) {
         log.info("获取或创建会话隔离的AI服务");
         String cacheKey = sessionId;
         
@@ -137,7 +209,7 @@ public class MemoryAssistantServiceFactory {
 
     /**
      * 按会话构建新的 AI 服务实例。
-     * - 通过 chatMemoryProvider 按 @MemoryId（sessionId）提供 MessageWindowChatMemory
+     * - 通过 chatMemoryProvider 按 @MemoryId（sessionId）提供 MessageWindowChatMemory（开启 token 预算时为 TokenBudgetChatMemory）
      * - 在 provider 内部：
      *   1) 使用通用 ChatMemoryStore（官方 Redis 或自定义 Redis）进行持久化
      *   2) 从 MySQL 读取历史消息并预热到记忆中
@@ -156,49 +228,64 @@ public class MemoryAssistantServiceFactory {
                 memoryId, chatMemoryStore.getClass().getSimpleName());
 
         // 使用 Provider 按 memoryId 构建记忆，兼容 @MemoryId
-        java.util.function.Function<Object, MessageWindowChatMemory> chatMemoryProvider = idObj -> {
-            String id = String.valueOf(idObj);
-            MessageWindowChatMemory m = MessageWindowChatMemory
+        return buildAssistantService(idObj -> createChatMemory(String.valueOf(idObj)));
+    }
+
+
+    /**
+     * 按 memoryId 构建记忆（开启 token 预算时为 TokenBudgetChatMemory），并从 MySQL 回填历史
+     */
+    private ChatMemory createChatMemory(String id) {
+        ChatMemory m;
+        if (tokenBudgetConfig.isEnabled()) {
+            // 按 token 预算淘汰，早期对话折叠为摘要
+            int summaryReserve = tokenBudgetConfig.isSummaryEnabled() ? tokenBudgetConfig.getSummaryMaxChars() : 0;
+            m = new TokenBudgetChatMemory(id, chatMemoryStore, chatMemorySummarizer, metricsCollector,
+                    tokenBudgetConfig.getMaxTokens(), maxHistoryMessages, summaryReserve);
+        } else {
+            m = MessageWindowChatMemory
                     .builder()
                     .id(id)
-                    .chatMemoryStore(chatMemoryStore)  
+                    .chatMemoryStore(chatMemoryStore)
                     .maxMessages(maxHistoryMessages)   // 最大消息数量
                     .build();
-            
-            // 从 MySQL 中回填消息到Redis中
-            try {
-                loadChatHistoryToMemory(sessionId, m);
-            } catch (Exception e) {
-                log.warn("根据 memoryId 预加载历史失败: {}", e.getMessage());
-            }
-            
-            return m;
-        };
-
-        // 创建流式模型
-        OpenAiStreamingChatModel streamingModel = OpenAiStreamingChatModel.builder()
-                .apiKey(apiKey)
-                .baseUrl(baseUrl)
-                .modelName(modelName)
-                .maxTokens(maxOutputTokens)
-                .listeners(List.of(aiModelMonitorListener))  // 注册监听器
-                .timeout(Duration.ofMinutes(5))
-                .build();
-        
-        log.info("创建流式模型成功");
+        }
+
+        // 从 MySQL 中回填消息到Redis中
+        try {
+            loadChatHistoryToMemory(id, m.id());
+        } catch (Exception e) {
+            log.warn("根据 memoryId 预加载历史失败: {}", e.getMessage());
+        }
+
+        return m;
+    }
+
 
+    /**
+     * 构建 AI 服务实例：模型、工具、护轨与记忆提供者
+     */
+    private AssistantService buildAssistantService(java.util.function.Function<Object, ChatMemory> chatMemoryProvider) {
+        // 从注册表获取共享的流式模型（已注册监听器），不再为每个会话单独构建 HTTP 客户端
+        return buildAssistantService(modelClientRegistry.mainStreamingModel(), true, chatMemoryProvider);
+    }
+
+    private AssistantService buildAssistantService(StreamingChatModel streamingModel, boolean withTools,
+                                                   java.util.function.Function<Object, ChatMemory> chatMemoryProvider) {
         // 构建AI服务
         try {
-            AssistantService assistantService = AiServices.builder(AssistantService.class)
+            AiServices<AssistantService> builder = AiServices.builder(AssistantService.class)
                     .streamingChatModel(streamingModel)                     // 流式模型
-                    .tools((Object[]) toolManager.getAllTools())            // Function Call 工具
                     // .tools(new WeatherTool())
                     // .toolProvider(mcpClientService.createToolProvider())    // 调用MCP工具，MCP工具提供者
                     .chatMemoryProvider(chatMemoryProvider::apply)          // 记忆存储，使用sessionId作为唯一键，Redis会自动加前缀
                     .maxSequentialToolsInvocations(1)                       // 最多连续调用 1 次工具，避免工具调用幻觉
-                    .inputGuardrails(new PromptSafetyInputGuardrail())      // 输入护轨
+                    .inputGuardrails(new PromptSafetyInputGuardrail());     // 输入护轨
                     // .outputGuardrails(new RetryOutputGuardrail())        // 输出护轨
-                    .build();
+            if (withTools) {
+                builder.tools((Object[]) toolManager.getAllTools());        // Function Call 工具
+            }
+            AssistantService assistantService = builder.build();
             
             log.info("AI服务构建成功，记忆存储类型: {}", chatMemoryStore.getClass().getSimpleName());
             // 返回AI服务实例
@@ -217,16 +304,40 @@ public class MemoryAssistantServiceFactory {
      * - 以 sessionId 作为 @MemoryId，保障会话级隔离
      */
     public Flux<String> chatStream(String sessionId, String userId, String message) {
+        return chatStream(sessionId, userId, message, route(sessionId, message));
+    }
+
+    /**
+     * 按复杂度决定本轮对话使用主模型还是小模型（路由关闭时始终为主模型）
+     */
+    public ModelRouter.Decision route(String sessionId, String message) {
+        if (!modelRouter.isEnabled()) {
+            return modelRouter.route(message, 0);
+        }
+        ModelRouter.Decision decision = modelRouter.route(message, historyDepth(sessionId));
+        metricsCollector.recordRouterDecision(decision.route().tag(), decision.reason());
+        if ("low_confidence".equals(decision.reason())) {
+            metricsCollector.recordRouterFallback("low_confidence");
+        }
+        log.info("会话 {} 路由到{}模型，原因: {}，把握: {}", sessionId,
+                decision.route() == ModelRouter.Route.SMALL ? "小" : "主", decision.reason(),
+                String.format("%.2f", decision.confidence()));
+        return decision;
+    }
+
+    /**
+     * 按已确定的路由发起流式对话
+     */
+    public Flux<String> chatStream(String sessionId, String userId, String message, ModelRouter.Decision decision) {
         log.info("开始流式对话，会话ID: {}, 用户ID: {}, 消息: {}", sessionId, userId, message);
 
 
         // 设置监控上下文
-        MonitorContextHolder.setContext(
-                MonitorContext.builder()
-                        .userId(userId)
-                        .sessionId(sessionId)
-                        .build()
-        );
+        MonitorContext monitorContext = MonitorContext.builder()
+                .userId(userId)
+                .sessionId(sessionId)
+                .build();
+        MonitorContextHolder.setContext(monitorContext);
 
         // 对话前，首先去获取一下caffeine尝试获取AI Service实例，若是获取不到，则新建实例
         AssistantService assistantService = getAssistantService(sessionId, userId);
@@ -237,7 +348,13 @@ public class MemoryAssistantServiceFactory {
         try {
             log.info("开始向大模型发起请求，进行旅游规划");
             // 开始发起流式请求
-            return assistantService.chat_Stream(memoryId, message);
+            Flux<String> stream = modelRouter.isEnabled()
+                    ? routedStream(assistantService, memoryId, message, decision)
+                    : assistantService.chat_Stream(memoryId, message);
+            return withMonitorContext(stream, monitorContext);
+        } catch (AdmissionRejectedException e) {
+            // 模型请求名额等待超时：按繁忙提示用户重试，不包装成服务不可用
+            throw e;
         } catch (Exception e) {
             // 捕获输入校验相关异常，抛出自定义异常
             String msg = e.getMessage();
@@ -258,6 +375,130 @@ public class MemoryAssistantServiceFactory {
     }
 
 
+    /**
+     * 订阅时把监控上下文设置到订阅线程上：延迟发起的模型请求（如路由到小模型的 Flux.defer）在订阅时才调用模型，
+     * 此时 chatStream 中设置的上下文已经清除。订阅返回后恢复订阅线程原有的上下文
+     */
+    private static Flux<String> withMonitorContext(Flux<String> stream, MonitorContext context) {
+        return Flux.from(subscriber -> {
+            MonitorContext previous = MonitorContextHolder.getContext();
+            MonitorContextHolder.setContext(context);
+            try {
+                stream.subscribe(subscriber);
+            } finally {
+                if (previous == null) {
+                    MonitorContextHolder.clearContext();
+                } else {
+                    MonitorContextHolder.setContext(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按复杂度路由：简单请求交给小模型，小模型在输出首个 token 前失败时回退主模型
+     * 已经输出部分内容后失败不再回退（前端已收到小模型的内容），按原有错误处理返回
+     */
+    private Flux<String> routedStream(AssistantService mainService, String memoryId, String message,
+                                      ModelRouter.Decision decision) {
+        long start = System.nanoTime();
+        AtomicLong outputTokens = new AtomicLong();
+        AtomicReference<String> completedBy = new AtomicReference<>(decision.route().tag());
+        Flux<String> tokens;
+        if (decision.route() == ModelRouter.Route.MAIN) {
+            tokens = mainService.chat_Stream(memoryId, message);
+        } else {
+            AssistantService small = smallAssistantService();
+            AtomicBoolean emitted = new AtomicBoolean(false);
+            tokens = Flux.defer(() -> small.chat_Stream(memoryId, message))
+                    .doOnNext(token -> emitted.set(true))
+                    // 小模型实例在所有会话间共享，用完即移除 LangChain4j 内部持有的 ChatMemory
+                    .doFinally(signal -> small.evictChatMemory(memoryId))
+                    .onErrorResume(e -> {
+                        if (emitted.get()) {
+                            return Flux.error(e);
+                        }
+                        metricsCollector.recordRouterFallback("error");
+                        log.warn("会话 {} 小模型调用失败，回退主模型: {}", memoryId, e.getMessage());
+                        completedBy.set("fallback");
+                        removeDanglingUserMessage(memoryId, message);
+                        return mainService.chat_Stream(memoryId, message);
+                    });
+        }
+        return tokens
+                .doOnNext(token -> outputTokens.addAndGet(TokenCounter.count(token)))
+                .doOnComplete(() -> metricsCollector.recordRouterCompletion(completedBy.get(),
+                        Duration.ofNanos(System.nanoTime() - start), outputTokens.get()));
+    }
+
+    private AssistantService smallAssistantService() {
+        AssistantService service = smallAssistantService;
+        if (service == null) {
+            synchronized (this) {
+                service = smallAssistantService;
+                if (service == null) {
+                    service = buildAssistantService(modelClientRegistry.smallStreamingModel(), false,
+                            idObj -> memoryCache != null
+                                    ? memoryCache.get(String.valueOf(idObj), this::createChatMemory)
+                                    : createChatMemory(String.valueOf(idObj)));
+                    smallAssistantService = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    // 记忆中已有的对话消息数（不含系统提示词）
+    private int historyDepth(String memoryId) {
+        try {
+            return (int) chatMemoryStore.getMessages(memoryId).stream()
+                    .filter(m -> !(m instanceof SystemMessage))
+                    .count();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    // 小模型失败时用户消息已写入记忆，回退主模型前移除，避免同一问题在记忆中出现两次
+    private void removeDanglingUserMessage(String memoryId, String message) {
+        try {
+            List<ChatMessage> messages = new ArrayList<>(chatMemoryStore.getMessages(memoryId));
+            if (!messages.isEmpty() && messages.get(messages.size() - 1) instanceof UserMessage last
+                    && last.hasSingleText() && last.singleText().equals(message)) {
+                messages.remove(messages.size() - 1);
+                chatMemoryStore.updateMessages(memoryId, messages);
+            }
+        } catch (Exception e) {
+            log.warn("回退前清理会话 {} 的记忆失败: {}", memoryId, e.getMessage());
+        }
+    }
+
+
+    // 将一轮完整对话直接追加到会话记忆中，只经 appendTurnToMemoryAsync 在弹性线程上调用
+    private void appendTurnToMemory(String sessionId, String userMessage, String aiReply) {
+        try {
+            List<ChatMessage> messages = new ArrayList<>(chatMemoryStore.getMessages(sessionId));
+            messages.add(UserMessage.from(userMessage));
+            messages.add(AiMessage.from(aiReply));
+            chatMemoryStore.updateMessages(sessionId, messages);
+        } catch (Exception e) {
+            log.warn("追加会话 {} 的记忆失败: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 将一轮完整对话直接追加到会话记忆中（不经过大模型），
+     * 用于响应缓存命中时保持记忆与数据库一致，下一轮对话能看到这一轮的上下文。
+     * 记忆存储的读写会阻塞等待 Redis，不能运行在 Reactor 的非阻塞线程上
+     * （如缓存回放 delayElements 使用的 parallel 调度器，在那里 block() 会直接抛出异常），因此切换到 boundedElastic 执行
+     */
+    public Mono<Void> appendTurnToMemoryAsync(String sessionId, String userMessage, String aiReply) {
+        return Mono.fromRunnable(() -> appendTurnToMemory(sessionId, userMessage, aiReply))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+
     /**
      * 清除指定会话的AI服务缓存
      */
@@ -265,6 +506,9 @@ public class MemoryAssistantServiceFactory {
         // String cacheKey = buildCacheKey(sessionId, userId);
         String cacheKey = sessionId;
         serviceCache.invalidate(cacheKey);
+        if (memoryCache != null) {
+            memoryCache.invalidate(cacheKey);
+        }
         log.info("清除会话 {} 用户 {} 的AI服务缓存", sessionId, userId);
     }
 
@@ -278,39 +522,71 @@ public class MemoryAssistantServiceFactory {
     }
 
 
+    /**
+     * 启动预热：构建一次 AI 服务，提前完成 AiServices 代理生成与工具规格反射
+     * 蓝图模式下共享实例已在初始化时构建，无需重复
+     */
+    public void warmup() {
+        if (blueprintEnabled) {
+            return;
+        }
+        buildAssistantService(idObj -> createChatMemory(String.valueOf(idObj)));
+    }
+
+
+    /**
+     * 预热会话记忆：把 MySQL 中的最近历史回填到记忆存储（Redis 与本节点 L1），不创建 AI 服务实例
+     * @return 回填结果，取值同 {@link AiModelMetricsCollector#recordMemoryHydration}
+     */
+    public String prewarmMemory(String sessionId) {
+        return loadChatHistoryToMemory(sessionId, sessionId);
+    }
+
+
     /**
      * 将 MySQL 中的历史消息预加载到当前记忆窗口。
      * 注意：只做预热，不改变数据库内容；增量写入由业务层或 LangChain4j 负责。
+     * 记忆存储中已有有效对话时直接跳过；否则在内存中组好窗口后一次性写入存储，
+     * 不再逐条 add（每次 add 都会读出并写回整个列表）。
+     * 系统消息不在这里回填，下一轮对话时由 AI 服务写入。
+     * @return hydrated / skipped / empty / error
      */
-    private void loadChatHistoryToMemory(String sessionId, MessageWindowChatMemory chatMemory) {
+    private String loadChatHistoryToMemory(String sessionId, Object memoryId) {
+        long start = System.nanoTime();
         try {
-            var dbMessages = chatMessageMapper.findBySessionId(sessionId);
-            if (dbMessages == null || dbMessages.isEmpty()) {
-                log.debug("为会话 {} 没有历史对话", sessionId);
-                return;
+            if (isWarm(memoryId)) {
+                metricsCollector.recordMemoryHydration("skipped", 0, Duration.ofNanos(System.nanoTime() - start));
+                log.debug("会话 {} 的记忆存储中已有对话，跳过预加载", sessionId);
+                return "skipped";
             }
-            chatMemory.clear();
-            for (var dbMessage : dbMessages) {
-                switch (dbMessage.getRole().toLowerCase()) {
-                    // 将数据库中读取到的消息，按照消息角色 创建不同的 Message 存入到 memory 中
-                    case "user":
-                        chatMemory.add(dev.langchain4j.data.message.UserMessage.from(dbMessage.getContent()));
-                        break;
-                    case "assistant":
-                        chatMemory.add(dev.langchain4j.data.message.AiMessage.from(dbMessage.getContent()));
-                        break;
-                    case "system":
-                        chatMemory.add(dev.langchain4j.data.message.SystemMessage.from(dbMessage.getContent()));
-                        break;
-                    default:
-                        chatMemory.add(dev.langchain4j.data.message.UserMessage.from(dbMessage.getContent()));
-                        break;
-                }
+            // 只取记忆窗口能容纳的最近消息
+            List<ChatMessage> history = chatHistoryLoader.loadRecent(sessionId);
+            if (history.isEmpty()) {
+                metricsCollector.recordMemoryHydration("empty", 0, Duration.ofNanos(System.nanoTime() - start));
+                log.debug("为会话 {} 没有历史对话", sessionId);
+                return "empty";
             }
-            log.info("为会话 {} 预加载 {} 条历史消息到记忆", sessionId, dbMessages.size());
+            // 窗口总条数不超过 maxHistoryMessages
+            int keep = Math.min(history.size(), Math.max(0, maxHistoryMessages));
+            List<ChatMessage> window = new ArrayList<>(history.subList(history.size() - keep, history.size()));
+            chatMemoryStore.updateMessages(memoryId, window);
+            metricsCollector.recordMemoryHydration("hydrated", window.size(), Duration.ofNanos(System.nanoTime() - start));
+            log.info("为会话 {} 预加载 {} 条历史消息到记忆", sessionId, window.size());
+            return "hydrated";
         } catch (Exception e) {
+            metricsCollector.recordMemoryHydration("error", 0, Duration.ofNanos(System.nanoTime() - start));
             log.error("加载历史对话失败，会话: {}, error: {}", sessionId, e.getMessage(), e);
+            return "error";
+        }
+    }
+
+    // 记忆存储中是否已有有效对话
+    private boolean isWarm(Object memoryId) {
+        if (chatMemoryStore instanceof CustomRedisChatMemoryStore redisStore) {
+            // 自定义存储的 getMessages 在 Redis 为空时会自行回源数据库并写回，这里只探测 Redis，避免重复回源与重复计数
+            return redisStore.isWarm(memoryId);
         }
+        return chatMemoryStore.getMessages(memoryId).stream().anyMatch(m -> !(m instanceof SystemMessage));
     }
 
     
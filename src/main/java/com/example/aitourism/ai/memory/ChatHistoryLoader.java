@@ -0,0 +1,69 @@
+package com.example.aitourism.ai.memory;
+
+import com.example.aitourism.entity.Message;
+import com.example.aitourism.mapper.ChatMessageMapper;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 从 MySQL 加载会话历史作为对话记忆
+ * 记忆窗口只保留最近 maxHistoryMessages 条消息，因此只查询会话尾部的这一段，
+ * 不再把整个会话（含全部 TEXT 内容）读出来再由窗口丢弃。
+ * 服务实例创建时的预热与 Redis 记忆过期后的回源共用这一个入口。
+ * 会话有折叠分界时只加载分界之后的消息，已经折叠进摘要的对话不会回到窗口中被再次折叠。
+ */
+@Component
+@Slf4j
+public class ChatHistoryLoader {
+
+    private final ChatMessageMapper chatMessageMapper;
+    private final ChatMemorySummarizer summarizer;
+
+    @Value("${mcp.max-history-messages:20}")
+    private int maxHistoryMessages;
+
+    public ChatHistoryLoader(ChatMessageMapper chatMessageMapper, ChatMemorySummarizer summarizer) {
+        this.chatMessageMapper = chatMessageMapper;
+        this.summarizer = summarizer;
+    }
+
+    /**
+     * 加载会话最近的消息（按时间正序），没有历史时返回空列表
+     */
+    public List<ChatMessage> loadRecent(String sessionId) {
+        int limit = Math.max(1, maxHistoryMessages);
+        ChatMemorySummarizer.Watermark watermark = summarizer.watermark(sessionId);
+        List<Message> dbMessages = watermark == null
+                ? chatMessageMapper.findRecentBySessionId(sessionId, limit)
+                : chatMessageMapper.findRecentBySessionIdSince(sessionId, watermark.createTime(), watermark.seq(), limit);
+        if (dbMessages == null || dbMessages.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<ChatMessage> messages = new ArrayList<>(dbMessages.size());
+        for (Message dbMessage : dbMessages) {
+            messages.add(toChatMessage(dbMessage));
+        }
+        log.debug("从数据库加载会话 {} 最近 {} 条消息", sessionId, messages.size());
+        return messages;
+    }
+
+    /**
+     * 按消息角色转换为 LangChain4j 的消息类型（未知角色按用户消息处理）
+     */
+    private static ChatMessage toChatMessage(Message dbMessage) {
+        String role = dbMessage.getRole() == null ? "" : dbMessage.getRole().toLowerCase();
+        return switch (role) {
+            case "assistant" -> AiMessage.from(dbMessage.getContent());
+            case "system" -> SystemMessage.from(dbMessage.getContent());
+            default -> UserMessage.from(dbMessage.getContent());
+        };
+    }
+}
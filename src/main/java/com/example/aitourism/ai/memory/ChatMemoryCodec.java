@@ -0,0 +1,285 @@
+package com.example.aitourism.ai.memory;
+
+import com.example.aitourism.config.ChatMemoryCodecConfig;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messageFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messageToJson;
+
+/**
+ * 对话记忆的单条消息编解码
+ * - json：LangChain4j 的 JSON 文本（UTF-8），与之前写入 Redis 的内容完全一致
+ * - binary：1 字节魔数 + 1 字节版本 + 1 字节标志，之后是消息体；消息体超过阈值时整体 deflate 压缩。
+ *   消息体只保存类型与各字段内容（变长长度 + UTF-8），不再携带字段名与类型元数据；
+ *   无法无损表达的消息（图片、带名字或附加属性的消息等）在消息体内退化为 JSON
+ * 读取时按首字节识别格式：JSON 以 '{' 开头，二进制以魔数开头，两种格式可以混存，切换格式无需迁移。
+ */
+@Component
+public class ChatMemoryCodec {
+
+    static final byte MAGIC = (byte) 0xCE;
+    static final byte VERSION = 1;
+    private static final int FLAG_DEFLATE = 1;
+
+    private static final byte TYPE_JSON = 0;
+    private static final byte TYPE_SYSTEM = 1;
+    private static final byte TYPE_USER = 2;
+    private static final byte TYPE_AI = 3;
+    private static final byte TYPE_TOOL_RESULT = 4;
+
+    private final boolean binary;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+
+    public ChatMemoryCodec(ChatMemoryCodecConfig config) {
+        this.binary = "binary".equalsIgnoreCase(config.getFormat());
+        this.compressionThreshold = Math.max(0, config.getCompressionThreshold());
+        this.compressionLevel = Math.min(9, Math.max(1, config.getCompressionLevel()));
+    }
+
+    public byte[] encode(ChatMessage message) {
+        if (!binary) {
+            return messageToJson(message).getBytes(StandardCharsets.UTF_8);
+        }
+        Buffer body = new Buffer(256);
+        writeBody(body, message);
+        byte[] payload = body.toByteArray();
+        int flags = 0;
+        if (payload.length > compressionThreshold) {
+            byte[] compressed = deflate(payload, compressionLevel);
+            // 压缩后反而更大（内容本身已很紧凑）时保留原文
+            if (compressed.length < payload.length) {
+                payload = compressed;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+        byte[] result = new byte[3 + payload.length];
+        result[0] = MAGIC;
+        result[1] = VERSION;
+        result[2] = (byte) flags;
+        System.arraycopy(payload, 0, result, 3, payload.length);
+        return result;
+    }
+
+    public ChatMessage decode(byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return messageFromJson(new String(data, StandardCharsets.UTF_8));
+        }
+        if (data.length < 3 || data[1] != VERSION) {
+            throw new IllegalArgumentException("不支持的记忆编码版本: " + (data.length > 1 ? data[1] : -1));
+        }
+        byte[] payload = Arrays.copyOfRange(data, 3, data.length);
+        if ((data[2] & FLAG_DEFLATE) != 0) {
+            payload = inflate(payload);
+        }
+        return readBody(new Reader(payload));
+    }
+
+    private static void writeBody(Buffer out, ChatMessage message) {
+        if (message instanceof SystemMessage system) {
+            out.write(TYPE_SYSTEM);
+            out.writeString(system.text());
+            return;
+        }
+        if (message instanceof UserMessage user && user.hasSingleText()
+                && UserMessage.from(user.singleText()).equals(user)) {
+            out.write(TYPE_USER);
+            out.writeString(user.singleText());
+            return;
+        }
+        if (message instanceof AiMessage ai && ai.equals(rebuildAi(ai))) {
+            out.write(TYPE_AI);
+            out.writeNullableString(ai.text());
+            List<ToolExecutionRequest> requests = ai.hasToolExecutionRequests() ? ai.toolExecutionRequests() : List.of();
+            out.writeVarInt(requests.size());
+            for (ToolExecutionRequest request : requests) {
+                out.writeNullableString(request.id());
+                out.writeNullableString(request.name());
+                out.writeNullableString(request.arguments());
+            }
+            return;
+        }
+        if (message instanceof ToolExecutionResultMessage result
+                && ToolExecutionResultMessage.from(result.id(), result.toolName(), result.text()).equals(result)) {
+            out.write(TYPE_TOOL_RESULT);
+            out.writeNullableString(result.id());
+            out.writeNullableString(result.toolName());
+            out.writeString(result.text());
+            return;
+        }
+        out.write(TYPE_JSON);
+        out.writeString(messageToJson(message));
+    }
+
+    private static ChatMessage readBody(Reader in) {
+        byte type = in.read();
+        switch (type) {
+            case TYPE_SYSTEM:
+                return SystemMessage.from(in.readString());
+            case TYPE_USER:
+                return UserMessage.from(in.readString());
+            case TYPE_AI: {
+                String text = in.readNullableString();
+                int count = in.readVarInt();
+                List<ToolExecutionRequest> requests = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    requests.add(ToolExecutionRequest.builder()
+                            .id(in.readNullableString())
+                            .name(in.readNullableString())
+                            .arguments(in.readNullableString())
+                            .build());
+                }
+                return AiMessage.builder().text(text).toolExecutionRequests(requests).build();
+            }
+            case TYPE_TOOL_RESULT:
+                return ToolExecutionResultMessage.from(in.readNullableString(), in.readNullableString(), in.readString());
+            case TYPE_JSON:
+                return messageFromJson(in.readString());
+            default:
+                throw new IllegalArgumentException("未知的记忆消息类型: " + type);
+        }
+    }
+
+    // 只由文本与工具调用构成的 AiMessage 才能无损编码；思考内容、附加属性等由 equals 比较排除
+    private static AiMessage rebuildAi(AiMessage ai) {
+        return AiMessage.builder()
+                .text(ai.text())
+                .toolExecutionRequests(ai.hasToolExecutionRequests() ? ai.toolExecutionRequests() : List.of())
+                .build();
+    }
+
+    private static byte[] deflate(byte[] input, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 3);
+            byte[] chunk = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("记忆压缩数据不完整");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("记忆压缩数据损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 写缓冲：变长整数 + UTF-8 字符串
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        // 长度 0 表示 null，其余长度整体加 1
+        void writeNullableString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        byte read() {
+            if (pos >= data.length) {
+                throw new IllegalArgumentException("记忆编码数据被截断");
+            }
+            return data[pos++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = read();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("记忆编码长度字段损坏");
+        }
+
+        String readString() {
+            return readBytes(readVarInt());
+        }
+
+        String readNullableString() {
+            int length = readVarInt();
+            return length == 0 ? null : readBytes(length - 1);
+        }
+
+        private String readBytes(int length) {
+            if (length < 0 || pos + length > data.length) {
+                throw new IllegalArgumentException("记忆编码数据被截断");
+            }
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
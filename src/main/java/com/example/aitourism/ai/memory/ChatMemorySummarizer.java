@@ -0,0 +1,252 @@
+package com.example.aitourism.ai.memory;
+
+import com.example.aitourism.ai.model.ModelClientRegistry;
+import com.example.aitourism.config.TokenBudgetMemoryConfig;
+import com.example.aitourism.entity.Message;
+import com.example.aitourism.mapper.ChatMessageMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 对话记忆滚动摘要
+ * 记忆超出 token 预算时，被淘汰的最早几轮对话交给小模型，与已有摘要合并成新的摘要；
+ * Redis 中只保存摘要本身（{keyPrefix}{memoryId}:summary），原始消息仍在 MySQL 中。
+ * 摘要成功后同时记录折叠分界（{keyPrefix}{memoryId}:folded，保留的最早一轮的 create_time 与 seq），
+ * Redis 记忆过期后从数据库回源时跳过分界之前已经折叠进摘要的对话，避免重复折叠。
+ * 两个键与消息列表的 TTL 相同，并在读取记忆时一同续期。
+ * - 异步执行，不阻塞当前对话；同一会话的折叠按提交顺序串行，保证摘要按时间累积
+ * - 本地缓存最近读取的摘要，避免每次组装上下文都访问 Redis
+ * - 小模型调用失败时保留旧摘要，被淘汰的对话不再进入上下文
+ */
+@Service
+@Slf4j
+public class ChatMemorySummarizer {
+
+    private static final String SUMMARY_PROMPT = """
+            你是对话摘要助手。请把【已有摘要】与【新增对话】合并为一段新的摘要，供旅游规划助手在后续对话中参考。
+            要求：保留目的地、出行日期与天数、预算、人数、偏好与禁忌、已经确定的行程和用户明确提出的修改意见；
+            省略寒暄、重复内容以及天气等可再次查询的明细；只输出摘要正文，不超过%d个字。
+            【已有摘要】
+            %s
+            【新增对话】
+            %s
+            """;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ModelClientRegistry modelClientRegistry;
+    private final Executor aiTaskExecutor;
+    private final TokenBudgetMemoryConfig config;
+    private final AiModelMetricsCollector metricsCollector;
+    private final ChatMessageMapper chatMessageMapper;
+
+    @Value("${ai.memory.redis.key-prefix:ai:memory:}")
+    private String keyPrefix;
+    @Value("${ai.memory.redis.ttl:1800}")
+    private long ttlSeconds;
+
+    // memoryId -> 摘要（没有摘要时为空串），短时间缓存，其他节点折叠后最多延迟一分钟可见
+    private final Cache<String, String> summaries = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
+    // memoryId -> 该会话最后一个尚未完成的折叠任务
+    private final ConcurrentMap<String, CompletableFuture<Void>> pendingFolds = new ConcurrentHashMap<>();
+
+    public ChatMemorySummarizer(StringRedisTemplate stringRedisTemplate,
+                                ModelClientRegistry modelClientRegistry,
+                                @Qualifier("aiTaskExecutor") Executor aiTaskExecutor,
+                                TokenBudgetMemoryConfig config,
+                                AiModelMetricsCollector metricsCollector,
+                                ChatMessageMapper chatMessageMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.modelClientRegistry = modelClientRegistry;
+        this.aiTaskExecutor = aiTaskExecutor;
+        this.config = config;
+        this.metricsCollector = metricsCollector;
+        this.chatMessageMapper = chatMessageMapper;
+    }
+
+    /**
+     * 折叠分界：create_time 与 seq 都不早于它的消息尚未折叠进摘要
+     */
+    public record Watermark(LocalDateTime createTime, long seq) {
+    }
+
+    // 与消息列表使用相同的 hash tag，集群模式下落在同一个槽，可以与列表一起续期
+    static String summaryKey(String keyPrefix, Object memoryId) {
+        return keyPrefix + "{" + memoryId + "}:summary";
+    }
+
+    static String watermarkKey(String keyPrefix, Object memoryId) {
+        return keyPrefix + "{" + memoryId + "}:folded";
+    }
+
+    private String summaryKey(Object memoryId) {
+        return summaryKey(keyPrefix, memoryId);
+    }
+
+    private String watermarkKey(Object memoryId) {
+        return watermarkKey(keyPrefix, memoryId);
+    }
+
+    /**
+     * 获取会话当前的摘要，没有摘要时返回空串
+     */
+    public String current(Object memoryId) {
+        return summaries.get(memoryId.toString(), id -> {
+            try {
+                String value = stringRedisTemplate.opsForValue().get(summaryKey(id));
+                return value == null ? "" : value;
+            } catch (Exception e) {
+                log.warn("读取会话 {} 的记忆摘要失败: {}", id, e.getMessage());
+                return "";
+            }
+        });
+    }
+
+    /**
+     * 读取会话的折叠分界，没有分界（未折叠过或摘要未开启）时返回 null
+     */
+    public Watermark watermark(Object memoryId) {
+        if (!config.isEnabled() || !config.isSummaryEnabled()) {
+            return null;
+        }
+        try {
+            String value = stringRedisTemplate.opsForValue().get(watermarkKey(memoryId));
+            if (value == null) {
+                return null;
+            }
+            int separator = value.lastIndexOf('|');
+            return new Watermark(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (Exception e) {
+            log.warn("读取会话 {} 的折叠分界失败，按未折叠处理: {}", memoryId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 异步把被淘汰的对话折叠进摘要
+     *
+     * @param retainedTurns 淘汰后记忆中保留的轮数（用户消息数），用于在数据库中定位折叠分界
+     */
+    public void fold(Object memoryId, List<ChatMessage> evicted, int retainedTurns) {
+        if (!config.isSummaryEnabled() || evicted.isEmpty()) {
+            return;
+        }
+        String id = memoryId.toString();
+        String transcript = transcript(evicted);
+        LocalDateTime evictedAt = LocalDateTime.now();
+        CompletableFuture<Void> next = pendingFolds.compute(id, (k, previous) -> {
+            CompletableFuture<Void> base = previous == null ? CompletableFuture.completedFuture(null) : previous;
+            return base.handle((v, ex) -> null)
+                    .thenRunAsync(() -> doFold(id, transcript, retainedTurns, evictedAt), aiTaskExecutor)
+                    .exceptionally(ex -> {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        if (cause instanceof RejectedExecutionException) {
+                            metricsCollector.recordMemorySummary("rejected", Duration.ZERO);
+                            log.warn("线程池繁忙，会话 {} 本次淘汰的对话未能折叠进摘要", id);
+                        }
+                        return null;
+                    });
+        });
+        // 不能在 compute 内部注册：任务被同步拒绝时回调会立即执行并修改同一个 Map
+        next.whenComplete((v, ex) -> pendingFolds.remove(id, next));
+    }
+
+    /**
+     * 删除会话的摘要与折叠分界
+     */
+    public void delete(Object memoryId) {
+        String id = memoryId.toString();
+        summaries.invalidate(id);
+        try {
+            stringRedisTemplate.delete(List.of(summaryKey(id), watermarkKey(id)));
+        } catch (Exception e) {
+            log.warn("删除会话 {} 的记忆摘要失败: {}", id, e.getMessage());
+        }
+    }
+
+    private void doFold(String id, String transcript, int retainedTurns, LocalDateTime evictedAt) {
+        long start = System.nanoTime();
+        try {
+            String previous = current(id);
+            String prompt = String.format(SUMMARY_PROMPT, config.getSummaryMaxChars(),
+                    previous.isEmpty() ? "（无）" : previous, transcript);
+            String summary = modelClientRegistry.smallChatModel().chat(prompt).trim();
+            if (summary.length() > config.getSummaryMaxChars()) {
+                summary = summary.substring(0, config.getSummaryMaxChars());
+            }
+            stringRedisTemplate.opsForValue().set(summaryKey(id), summary, Duration.ofSeconds(ttlSeconds));
+            summaries.put(id, summary);
+            advanceWatermark(id, retainedTurns, evictedAt);
+            metricsCollector.recordMemorySummary("success", Duration.ofNanos(System.nanoTime() - start));
+            log.info("会话 {} 的早期对话已折叠为摘要，摘要长度 {} 字", id, summary.length());
+        } catch (Exception e) {
+            metricsCollector.recordMemorySummary("error", Duration.ofNanos(System.nanoTime() - start));
+            log.warn("会话 {} 的记忆摘要生成失败，保留旧摘要: {}", id, e.getMessage());
+        }
+    }
+
+    // 摘要写入后记录折叠分界：淘汰发生时（evictedAt 之前落库的）倒数第 retainedTurns 条用户消息。
+    // 消息尚未落库（异步写入未刷出）时分界会偏早，回源时最多重复折叠几轮，不会漏掉未折叠的对话
+    private void advanceWatermark(String id, int retainedTurns, LocalDateTime evictedAt) {
+        if (retainedTurns <= 0) {
+            return;
+        }
+        try {
+            Message boundary = chatMessageMapper.findUserTurnBefore(id, evictedAt, retainedTurns - 1);
+            if (boundary == null || boundary.getCreateTime() == null || boundary.getSeq() == null) {
+                return;
+            }
+            stringRedisTemplate.opsForValue().set(watermarkKey(id),
+                    boundary.getCreateTime() + "|" + boundary.getSeq(), Duration.ofSeconds(ttlSeconds));
+        } catch (Exception e) {
+            log.warn("记录会话 {} 的折叠分界失败: {}", id, e.getMessage());
+        }
+    }
+
+    // 把消息整理为对话文本；长回复与工具结果只保留开头，避免摘要请求本身超出上游输入上限
+    private static String transcript(List<ChatMessage> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (ChatMessage message : messages) {
+            if (message instanceof UserMessage user) {
+                String text = user.hasSingleText() ? user.singleText() : String.valueOf(user.contents());
+                sb.append("用户：").append(text);
+            } else if (message instanceof AiMessage ai) {
+                if (ai.text() == null) {
+                    continue;
+                }
+                String text = ai.text();
+                sb.append("助手：").append(text.length() > 600 ? text.substring(0, 600) + "…" : text);
+            } else if (message instanceof ToolExecutionResultMessage result) {
+                String text = result.text();
+                sb.append("工具[").append(result.toolName()).append("]：")
+                        .append(text.length() > 200 ? text.substring(0, 200) + "…" : text);
+            } else {
+                continue;
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
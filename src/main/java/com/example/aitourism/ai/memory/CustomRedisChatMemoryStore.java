@@ -2,21 +2,44 @@ package com.example.aitourism.ai.memory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import com.example.aitourism.mapper.ChatMessageMapper;
+import com.example.aitourism.config.ChatMemoryCacheConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import static dev.langchain4j.data.message.ChatMessageDeserializer.messagesFromJson;
-import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
 
 import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
 
 
 // 实现ChatMemoryStore接口，在其中基于Redis管理消息
@@ -27,19 +50,136 @@ import java.time.Duration;
 @ConfigurationProperties(prefix = "ai.memory.redis")
 @RequiredArgsConstructor
 @Primary
-public class CustomRedisChatMemoryStore implements ChatMemoryStore {
-    
+public class CustomRedisChatMemoryStore implements ChatMemoryStore, MessageListener {
+
+    // 增量写入脚本：校验列表长度（及系统消息仍存在）与本节点快照一致后，裁剪队头被窗口淘汰的消息、追加新消息、刷新 TTL，一次往返完成
+    // KEYS[1]=消息列表 KEYS[2]=系统消息
+    // ARGV[1]=期望长度（-1 表示整体重写） ARGV[2]=队头裁剪条数 ARGV[3]=TTL秒
+    // ARGV[4]=系统消息操作 set/del/keep ARGV[5]=系统消息JSON
+    // ARGV[6]=失效广播频道（空串表示不广播） ARGV[7]=广播内容 ARGV[8..]=追加的消息
+    private static final DefaultRedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>("""
+            local expected = tonumber(ARGV[1])
+            if expected >= 0 then
+              if redis.call('LLEN', KEYS[1]) ~= expected then return -1 end
+              if ARGV[4] == 'keep' and redis.call('EXISTS', KEYS[2]) == 0 then return -1 end
+            else
+              redis.call('DEL', KEYS[1])
+            end
+            local drop = tonumber(ARGV[2])
+            if drop > 0 then redis.call('LTRIM', KEYS[1], drop, -1) end
+            if #ARGV >= 8 then redis.call('RPUSH', KEYS[1], unpack(ARGV, 8)) end
+            if ARGV[4] == 'set' then redis.call('SET', KEYS[2], ARGV[5], 'EX', ARGV[3])
+            elseif ARGV[4] == 'del' then redis.call('DEL', KEYS[2])
+            else redis.call('EXPIRE', KEYS[2], ARGV[3]) end
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            if ARGV[6] ~= '' then redis.call('PUBLISH', ARGV[6], ARGV[7]) end
+            return redis.call('LLEN', KEYS[1])
+            """, Long.class);
+
+    // 脚本参数既有字符串也有编码后的消息字节，统一转为字节数组
+    private static final RedisSerializer<Object> SCRIPT_ARGS_SERIALIZER = new RedisSerializer<>() {
+        @Override
+        public byte[] serialize(Object value) {
+            return value instanceof byte[] bytes ? bytes : String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+    private static final RedisSerializer<Long> SCRIPT_RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
     @Value("${ai.memory.redis.key-prefix:ai:memory:}")
     private String keyPrefix;
     @Value("${ai.memory.redis.ttl:1800}")
     private long ttlSeconds;
-    private final ChatMessageMapper chatMessageMapper;
+    private final ChatHistoryLoader chatHistoryLoader;
+    private final ChatMemoryCodec codec;
+    private final ChatMemoryCacheConfig cacheConfig;
+    private final AiModelMetricsCollector metricsCollector;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ReactiveRedisConnectionFactory reactiveConnectionFactory;
+    @Value("${ai.memory.redis.command-timeout-ms:2000}")
+    private long commandTimeoutMs;
+
+    // 基于 Lettuce 共享连接的响应式客户端：同一操作的多条命令并发发出、一次往返返回，且不占用连接池中的连接
+    private ReactiveRedisTemplate<String, byte[]> reactiveTemplate;
+
+    // 本节点标识，用于忽略自己发出的失效广播、识别自己的心跳
+    private final String nodeId = UUID.randomUUID().toString();
+    // L1：memoryId -> 反序列化后的消息列表
+    private Cache<String, CachedMessages> localCache;
+    // 最近一次收到本节点心跳的时间；超时说明订阅已中断，此时不再信任 L1
+    private volatile long lastHeartbeatMillis;
+    private volatile boolean localCacheActive;
+
+    // 本节点最近一次读写后 Redis 中列表内容的指纹，用于计算增量；缺失或与 Redis 不一致时整体重写
+    private final Cache<String, Snapshot> snapshots = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    /**
+     * 列表快照
+     * @param systemFingerprint 系统消息指纹（无系统消息时为 0）
+     * @param fingerprints 列表中每条消息的指纹，顺序与 Redis 一致
+     */
+    private record Snapshot(long systemFingerprint, long[] fingerprints) {
+    }
+
+    /**
+     * L1 缓存项
+     * @param messages 不可变的消息列表（返回给调用方前复制）
+     * @param weight 消息编码后的总字节数，作为缓存权重
+     */
+    private record CachedMessages(List<ChatMessage> messages, int weight) {
+    }
+
+    /**
+     * 一次读取的结果
+     * @param elements 消息列表中的元素
+     * @param systemValue 系统消息（不存在时为 null）
+     * @param legacyValue 旧格式键的内容（不存在时为 null）
+     */
+    private record ReadResult(List<byte[]> elements, byte[] systemValue, byte[] legacyValue) {
+    }
+
+    @PostConstruct
+    public void init() {
+        reactiveTemplate = new ReactiveRedisTemplate<>(reactiveConnectionFactory,
+                RedisSerializationContext.<String, byte[]>newSerializationContext(RedisSerializer.byteArray())
+                        .key(RedisSerializer.string())
+                        .hashKey(RedisSerializer.string())
+                        .build());
+        if (!cacheConfig.isEnabled()) {
+            return;
+        }
+        localCache = Caffeine.newBuilder()
+                .maximumWeight(cacheConfig.getMaxWeight())
+                .weigher((String key, CachedMessages value) -> value.weight())
+                .expireAfterAccess(Duration.ofSeconds(cacheConfig.getExpireAfterAccessSeconds()))
+                .recordStats()
+                .build();
+        metricsCollector.registerCaffeineCache(localCache, "chat_memory_l1");
+        metricsCollector.registerMemoryL1Gauge(() -> localCacheActive ? 1 : 0);
+        listenerContainer.addMessageListener(this, new ChannelTopic(cacheConfig.getChannel()));
+        log.info("对话记忆本地缓存已启用，权重上限: {}, 失效频道: {}", cacheConfig.getMaxWeight(), cacheConfig.getChannel());
+    }
 
     /**
      * 自定义的基于 Redis 的对话记忆存储。
-     * 适用于未安装 RedisJSON 模块的环境，使用普通 String value 存储 JSON 文本。
-     * key 形如：{keyPrefix}{memoryId}，并为每条 key 设置过期时间（ttlSeconds）。
+     * 每条消息经 ChatMemoryCodec 编码后作为 Redis List 的一个元素：{keyPrefix}{memoryId}:msgs；
+     * 系统消息（提示词较长且几乎不变）单独存放在 {keyPrefix}{memoryId}:sys，读取时放在最前。
+     * 更新时与上次的快照比对，只追加新消息并裁剪被窗口淘汰的旧消息，不再整段重写 JSON。
+     * 旧版本以 String 存储完整 JSON 的键 {keyPrefix}{memoryId} 在首次读取时自动迁移。
+     * 两个键使用 {memoryId} 作为 hash tag，保证 Redis Cluster 下落在同一槽位。
+     * 每个操作的全部命令通过 Lettuce 共享连接并发发出，一次往返完成：读取时 LRANGE + GETEX 系统消息 + EXPIRE 列表
+     * （滑动续期）+ GET 旧格式键，写入时一次脚本调用，删除时 DEL + PUBLISH；回源数据库期间不持有任何连接。
+     * 开启 ai.memory.l1 时，在 Redis 之前再加一层本地 Caffeine 缓存（按消息大小加权），
+     * 写入脚本顺带广播失效，其他节点收到后丢弃对应会话的缓存；心跳中断时退化为仅使用 Redis。
      */
     // @Autowired
     // public CustomRedisChatMemoryStore(RedisTemplate<String, Object> redisTemplate) {
@@ -58,65 +198,345 @@ public class CustomRedisChatMemoryStore implements ChatMemoryStore {
     // }
 
     /**
-     * 组合 Redis 键：前缀 + memoryId
+     * 旧版本的 String 键：前缀 + memoryId
      */
     private String buildKey(Object memoryId) {
         return keyPrefix + memoryId;
     }
 
+    private String listKey(Object memoryId) {
+        return keyPrefix + "{" + memoryId + "}:msgs";
+    }
+
+    private String systemKey(Object memoryId) {
+        return keyPrefix + "{" + memoryId + "}:sys";
+    }
+
     @Override
     public List<ChatMessage> getMessages(Object memoryId) {
-        // 从 Redis 读取 JSON 文本并反序列化为 ChatMessage 列表
+        // 优先读取本地缓存；未命中时一次往返读取消息列表与系统消息，逐条反序列化
         try {
-            // log.info("开始从Redis中获取记忆");
-            Object value = redisTemplate.opsForValue().get(buildKey(memoryId));
-            if (value == null) {
-                return new ArrayList<>();
+            if (localCacheActive) {
+                CachedMessages cached = localCache.getIfPresent(memoryId.toString());
+                if (cached != null) {
+                    return new ArrayList<>(cached.messages());
+                }
             }
-            String json = value instanceof String ? (String) value : String.valueOf(value);
-            List<ChatMessage> messages = messagesFromJson(json);
-            // log.info("从Redis中获取的记忆: {}", json);
-            if(messages==null || messages.isEmpty() || isOnlySystemMessage(messages)){
-                // 为空或只有系统消息（此时就是Redis超时过期），尝试从数据库中获取数据
-                log.info("Redis中无有效记忆（空或仅系统消息），尝试从数据库获取历史消息");
-                List<ChatMessage> tempMemory =  loadMessagesFromDatabase(memoryId);
-                // 将内容写到Redis中
-                updateMessages(memoryId, tempMemory);
-                return tempMemory;
-            } else {
-                // 不为空且包含有效对话，返回Redis中的记忆
+            ReadResult result = read(memoryId);
+            List<byte[]> elements = result.elements();
+            byte[] systemValue = result.systemValue();
+
+            if (!elements.isEmpty()) {
+                List<ChatMessage> messages = new ArrayList<>(elements.size() + 1);
+                if (systemValue != null) {
+                    messages.add(codec.decode(systemValue));
+                }
+                for (byte[] element : elements) {
+                    messages.add(codec.decode(element));
+                }
+                snapshots.put(memoryId.toString(), new Snapshot(fingerprint(systemValue), fingerprints(elements)));
+                cacheLocally(memoryId, messages, weight(systemValue, elements));
                 log.info("成功从Redis获取到{}条记忆", messages.size());
                 return messages;
             }
+
+            List<ChatMessage> legacy = migrateLegacy(memoryId, result.legacyValue());
+            if (!isOnlySystemMessage(legacy)) {
+                log.info("已将会话 {} 的旧格式记忆迁移为列表存储，共{}条", memoryId, legacy.size());
+                return legacy;
+            }
+
+            // 为空或只有系统消息（此时就是Redis超时过期），尝试从数据库中获取数据
+            log.info("Redis中无有效记忆（空或仅系统消息），尝试从数据库获取历史消息");
+            long start = System.nanoTime();
+            List<ChatMessage> tempMemory = new ArrayList<>();
+            if (systemValue != null) {
+                tempMemory.add(codec.decode(systemValue));
+            }
+            tempMemory.addAll(loadMessagesFromDatabase(memoryId));
+            // 将内容一次性写到Redis中
+            if (!isOnlySystemMessage(tempMemory)) {
+                updateMessages(memoryId, tempMemory);
+                metricsCollector.recordMemoryHydration("store_fallback", tempMemory.size(), Duration.ofNanos(System.nanoTime() - start));
+            }
+            return tempMemory;
         } catch (Exception e) {
             log.warn("读取Redis记忆失败: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
+    /**
+     * 只探测记忆是否已在本节点 L1 或 Redis 中（消息列表或待迁移的旧格式键）
+     * 与 getMessages 不同，不会回源数据库、写回 Redis 或续期，供批量回填前判断是否需要回填
+     */
+    public boolean isWarm(Object memoryId) {
+        if (localCacheActive) {
+            CachedMessages cached = localCache.getIfPresent(memoryId.toString());
+            if (cached != null && !isOnlySystemMessage(cached.messages())) {
+                return true;
+            }
+        }
+        long start = System.nanoTime();
+        Boolean warm = Mono.zip(
+                        reactiveTemplate.opsForList().size(listKey(memoryId)),
+                        reactiveTemplate.hasKey(buildKey(memoryId)))
+                .map(t -> t.getT1() > 0 || Boolean.TRUE.equals(t.getT2()))
+                .block(commandTimeout());
+        metricsCollector.recordMemoryRedisLatency("probe", Duration.ofNanos(System.nanoTime() - start));
+        return Boolean.TRUE.equals(warm);
+    }
+
     @Override
     public void updateMessages(Object memoryId, List<ChatMessage> messages) {
-        // 将消息序列化为 JSON，并写回 Redis，同时设置过期时间
+        // 与快照比对，只把新增部分写入 Redis，同时设置过期时间
         try {
-            // log.info("开始将以下记忆写入Redis：{}", messages);
-            String json = messagesToJson(messages == null ? new ArrayList<>() : messages);
-            redisTemplate.opsForValue().set(buildKey(memoryId), json, Duration.ofSeconds(ttlSeconds));
+            byte[] systemValue = null;
+            List<byte[]> elements = new ArrayList<>(messages == null ? 0 : messages.size());
+            if (messages != null) {
+                for (ChatMessage message : messages) {
+                    if (message instanceof SystemMessage) {
+                        systemValue = codec.encode(message);
+                    } else {
+                        elements.add(codec.encode(message));
+                    }
+                }
+            }
+            String id = memoryId.toString();
+            long systemFingerprint = fingerprint(systemValue);
+            long[] fingerprints = fingerprints(elements);
+
+            Snapshot previous = snapshots.getIfPresent(id);
+            boolean written = false;
+            if (previous != null) {
+                int stored = previous.fingerprints().length;
+                int drop = overlap(previous.fingerprints(), fingerprints);
+                List<byte[]> appended = elements.subList(stored - drop, elements.size());
+                String systemOp = systemValue == null ? "del"
+                        : systemFingerprint == previous.systemFingerprint() ? "keep" : "set";
+                written = execute(memoryId, stored, drop, systemOp, systemValue, appended) >= 0;
+                if (!written) {
+                    log.debug("会话 {} 的记忆已被其他节点修改，改为整体重写", id);
+                }
+            }
+            if (!written) {
+                execute(memoryId, -1, 0, systemValue == null ? "del" : "set", systemValue, elements);
+            }
+            snapshots.put(id, new Snapshot(systemFingerprint, fingerprints));
+            cacheLocally(memoryId, messages, weight(systemValue, elements));
         } catch (Exception e) {
+            snapshots.invalidate(memoryId.toString());
+            if (localCache != null) {
+                localCache.invalidate(memoryId.toString());
+            }
             log.warn("写入Redis记忆失败: {}", e.getMessage());
         }
     }
 
     @Override
     public void deleteMessages(Object memoryId) {
-        // 删除该 memoryId 对应的 Redis 键
+        // 删除该 memoryId 对应的全部 Redis 键（含旧格式键）
         try {
             log.info("开始删除Redis中某一key的记忆: {}", memoryId);
-            redisTemplate.delete(buildKey(memoryId));
+            snapshots.invalidate(memoryId.toString());
+            long start = System.nanoTime();
+            Mono<Long> delete = reactiveTemplate.delete(listKey(memoryId), systemKey(memoryId), buildKey(memoryId));
+            if (localCache != null) {
+                localCache.invalidate(memoryId.toString());
+                // 删除与失效广播同时发出
+                byte[] payload = invalidation(memoryId).getBytes(StandardCharsets.UTF_8);
+                delete = Mono.zip(delete, reactiveTemplate.convertAndSend(cacheConfig.getChannel(), payload), (d, p) -> d);
+            }
+            delete.block(commandTimeout());
+            metricsCollector.recordMemoryRedisLatency("delete", Duration.ofNanos(System.nanoTime() - start));
         } catch (Exception e) {
             log.warn("删除Redis记忆失败: {}", e.getMessage());
         }
     }
 
+    private long execute(Object memoryId, int expected, int drop, String systemOp, byte[] systemValue, List<byte[]> appended) {
+        Object[] args = new Object[7 + appended.size()];
+        args[0] = String.valueOf(expected);
+        args[1] = String.valueOf(drop);
+        args[2] = String.valueOf(ttlSeconds);
+        args[3] = systemOp;
+        args[4] = systemValue == null ? "" : systemValue;
+        // 开启 L1 时在同一脚本内广播失效，不额外增加往返
+        args[5] = localCache == null ? "" : cacheConfig.getChannel();
+        args[6] = localCache == null ? "" : invalidation(memoryId);
+        for (int i = 0; i < appended.size(); i++) {
+            args[7 + i] = appended.get(i);
+        }
+        long start = System.nanoTime();
+        Long length = reactiveTemplate.execute(APPEND_SCRIPT, List.of(listKey(memoryId), systemKey(memoryId)), Arrays.asList(args),
+                        RedisElementWriter.from(SCRIPT_ARGS_SERIALIZER), RedisElementReader.from(SCRIPT_RESULT_SERIALIZER))
+                .next()
+                .block(commandTimeout());
+        metricsCollector.recordMemoryRedisLatency("write", Duration.ofNanos(System.nanoTime() - start));
+        return length == null ? -1 : length;
+    }
+
+    /**
+     * 一次往返读取消息列表、系统消息与旧格式键，同时为这两个键以及记忆摘要、折叠分界续期（滑动 TTL）
+     */
+    private ReadResult read(Object memoryId) {
+        long start = System.nanoTime();
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        ReadResult result = Mono.zip(
+                        reactiveTemplate.opsForList().range(listKey(memoryId), 0, -1).collectList(),
+                        optional(reactiveTemplate.opsForValue().getAndExpire(systemKey(memoryId), ttl)),
+                        optional(reactiveTemplate.opsForValue().get(buildKey(memoryId))),
+                        reactiveTemplate.expire(listKey(memoryId), ttl),
+                        reactiveTemplate.expire(ChatMemorySummarizer.summaryKey(keyPrefix, memoryId), ttl),
+                        reactiveTemplate.expire(ChatMemorySummarizer.watermarkKey(keyPrefix, memoryId), ttl))
+                .map(t -> new ReadResult(t.getT1(), t.getT2().orElse(null), t.getT3().orElse(null)))
+                .block(commandTimeout());
+        metricsCollector.recordMemoryRedisLatency("read", Duration.ofNanos(System.nanoTime() - start));
+        return result;
+    }
+
+    // 键不存在时 Mono 为空，zip 会直接结束，这里包装为 Optional
+    private static Mono<Optional<byte[]>> optional(Mono<byte[]> value) {
+        return value.map(Optional::of).defaultIfEmpty(Optional.empty());
+    }
+
+    private Duration commandTimeout() {
+        return Duration.ofMillis(commandTimeoutMs);
+    }
+
+    private void cacheLocally(Object memoryId, List<ChatMessage> messages, int weight) {
+        if (localCacheActive && messages != null) {
+            localCache.put(memoryId.toString(), new CachedMessages(List.copyOf(messages), weight));
+        }
+    }
+
+    private static int weight(byte[] systemValue, List<byte[]> elements) {
+        long weight = systemValue == null ? 0 : systemValue.length;
+        for (byte[] element : elements) {
+            weight += element.length;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    // 广播内容：类型|节点|memoryId
+    private String invalidation(Object memoryId) {
+        return "inv|" + nodeId + "|" + memoryId;
+    }
+
+    /**
+     * 处理失效广播与心跳
+     * 其他节点更新或删除了某个会话的记忆时，丢弃本地缓存与增量快照；
+     * 本节点心跳恢复时清空全部本地缓存（中断期间可能漏掉了失效广播）后重新启用
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 3);
+        if (parts.length < 3 || localCache == null) {
+            return;
+        }
+        if ("hb".equals(parts[0])) {
+            if (nodeId.equals(parts[1])) {
+                lastHeartbeatMillis = System.currentTimeMillis();
+                if (!localCacheActive) {
+                    localCache.invalidateAll();
+                    localCacheActive = true;
+                    log.info("对话记忆失效通道已连通，启用本地缓存");
+                }
+            }
+            return;
+        }
+        if ("inv".equals(parts[0]) && !nodeId.equals(parts[1])) {
+            localCache.invalidate(parts[2]);
+            snapshots.invalidate(parts[2]);
+            metricsCollector.recordMemoryL1Invalidation("remote");
+        }
+    }
+
+    /**
+     * 定时发送心跳并检查失效通道：超时未收到自己的心跳时清空本地缓存并退化为仅使用 Redis
+     */
+    @Scheduled(fixedDelayString = "${ai.memory.l1.heartbeat-interval-ms:5000}")
+    public void heartbeat() {
+        if (localCache == null) {
+            return;
+        }
+        if (localCacheActive && System.currentTimeMillis() - lastHeartbeatMillis > cacheConfig.getHeartbeatTimeoutMs()) {
+            localCacheActive = false;
+            localCache.invalidateAll();
+            metricsCollector.recordMemoryL1Invalidation("channel_lost");
+            log.warn("超过 {}ms 未收到失效通道心跳，对话记忆退化为仅使用 Redis", cacheConfig.getHeartbeatTimeoutMs());
+        }
+        try {
+            stringRedisTemplate.convertAndSend(cacheConfig.getChannel(), "hb|" + nodeId + "|-");
+        } catch (Exception e) {
+            log.debug("发送对话记忆心跳失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 迁移旧格式（整段 JSON 字符串）的记忆：转为列表存储后删除旧键；没有旧键时返回空列表
+     */
+    private List<ChatMessage> migrateLegacy(Object memoryId, byte[] legacyValue) {
+        if (legacyValue == null) {
+            return new ArrayList<>();
+        }
+        // 旧键由 RedisTemplate 的 JSON 序列化器写入
+        Object value = redisTemplate.getValueSerializer().deserialize(legacyValue);
+        String json = value instanceof String ? (String) value : String.valueOf(value);
+        List<ChatMessage> messages = messagesFromJson(json);
+        if (messages != null && !isOnlySystemMessage(messages)) {
+            updateMessages(memoryId, messages);
+        }
+        reactiveTemplate.delete(buildKey(memoryId)).block(commandTimeout());
+        return messages == null ? new ArrayList<>() : new ArrayList<>(messages);
+    }
+
+    /**
+     * 计算快照列表需要从队头裁剪的条数：最小的 d，使 previous[d..] 恰好是 current 的前缀
+     * MessageWindowChatMemory 只会从队头淘汰、在队尾追加，因此正常情况下总能找到；
+     * 找不到时返回 previous.length，相当于清空后全部重新追加
+     */
+    static int overlap(long[] previous, long[] current) {
+        for (int drop = 0; drop < previous.length; drop++) {
+            int remaining = previous.length - drop;
+            if (remaining > current.length) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < remaining; i++) {
+                if (previous[drop + i] != current[i]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return drop;
+            }
+        }
+        return previous.length;
+    }
+
+    private static long[] fingerprints(List<byte[]> elements) {
+        long[] result = new long[elements.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = fingerprint(elements.get(i));
+        }
+        return result;
+    }
+
+    // FNV-1a 64 位指纹，仅用于判断消息是否已写入，不落盘
+    private static long fingerprint(byte[] value) {
+        if (value == null) {
+            return 0L;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
     /**
      * 判断是否只有系统消息
      */
@@ -136,56 +556,14 @@ public class CustomRedisChatMemoryStore implements ChatMemoryStore {
     }
 
     /**
-     * 从数据库加载历史消息作为记忆
+     * 从数据库加载历史消息作为记忆（只取记忆窗口大小的最近消息）
      */
     private List<ChatMessage> loadMessagesFromDatabase(Object memoryId) {
         try {
-            String sessionId = memoryId.toString();
-            // log.info("从数据库加载会话 {} 的历史消息", sessionId);
-            
-            // 从数据库获取历史消息
-            var dbMessages = chatMessageMapper.findBySessionId(sessionId);
-            if (dbMessages == null || dbMessages.isEmpty()) {
-                // log.info("数据库中也没有会话 {} 的历史消息", sessionId);
-                return new ArrayList<>();
-            }
-            
-            // 转换为LangChain4j的ChatMessage格式
-            List<ChatMessage> l4jMessages = new ArrayList<>();
-            for (var dbMessage : dbMessages) {
-                switch (dbMessage.getRole().toLowerCase()) {
-                    case "user":
-                        l4jMessages.add(dev.langchain4j.data.message.UserMessage.from(dbMessage.getContent()));
-                        break;
-                    case "assistant":
-                        l4jMessages.add(dev.langchain4j.data.message.AiMessage.from(dbMessage.getContent()));
-                        break;
-                    case "system":
-                        l4jMessages.add(dev.langchain4j.data.message.SystemMessage.from(dbMessage.getContent()));
-                        break;
-                    default:
-                        l4jMessages.add(dev.langchain4j.data.message.UserMessage.from(dbMessage.getContent()));
-                        break;
-                }
-            }
-            
-            // log.info("从数据库成功加载了{}条历史消息", l4jMessages.size());
-            
-            // 将数据库消息回填到Redis中，避免下次重复查询
-            if (!l4jMessages.isEmpty()) {
-                try {
-                    String json = messagesToJson(l4jMessages);
-                    redisTemplate.opsForValue().set(buildKey(memoryId), json, Duration.ofSeconds(ttlSeconds));
-                    // log.info("已将数据库消息回填到Redis");
-                } catch (Exception e) {
-                    log.warn("回填Redis失败: {}", e.getMessage());
-                }
-            }
-            
-            return l4jMessages;
+            return chatHistoryLoader.loadRecent(memoryId.toString());
         } catch (Exception e) {
             log.error("从数据库加载历史消息失败: {}", e.getMessage(), e);
             return new ArrayList<>();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+package com.example.aitourism.ai.memory;
+
+import com.example.aitourism.ai.MemoryAssistantServiceFactory;
+import com.example.aitourism.ai.model.ModelClientRegistry;
+import com.example.aitourism.config.MemoryPrewarmConfig;
+import com.example.aitourism.entity.Session;
+import com.example.aitourism.mapper.SessionMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话记忆预热
+ * 用户登录、查看会话列表或打开某个会话的历史时，异步把最近会话的记忆窗口回填到 Redis 与本节点 L1，
+ * 使用户发出的第一条消息直接命中记忆，不再在 /chat-stream 的请求路径上查询 MySQL。
+ * 预热是尽力而为的，任何一项约束不满足都直接放弃，不与实时对话争抢资源：
+ * - 独立的小线程池（低优先级守护线程）与有界队列，队列满即丢弃
+ * - 同一用户 / 会话在冷却时间内只预热一次
+ * - 全局每秒预热会话数上限
+ * - 在途的模型请求数达到阈值时暂停预热
+ */
+@Service
+@Slf4j
+public class MemoryPrewarmer {
+
+    private final MemoryPrewarmConfig config;
+    private final MemoryAssistantServiceFactory assistantServiceFactory;
+    private final SessionMapper sessionMapper;
+    private final ModelClientRegistry modelClientRegistry;
+    private final AiModelMetricsCollector metricsCollector;
+
+    private ThreadPoolExecutor executor;
+    private Cache<String, Boolean> recentlyWarmed;
+    // 简单的每秒计数窗口：当前秒与该秒内已预热的会话数
+    private final AtomicLong rateWindow = new AtomicLong();
+    private final AtomicInteger rateCount = new AtomicInteger();
+
+    public MemoryPrewarmer(MemoryPrewarmConfig config,
+                           MemoryAssistantServiceFactory assistantServiceFactory,
+                           SessionMapper sessionMapper,
+                           ModelClientRegistry modelClientRegistry,
+                           AiModelMetricsCollector metricsCollector) {
+        this.config = config;
+        this.assistantServiceFactory = assistantServiceFactory;
+        this.sessionMapper = sessionMapper;
+        this.modelClientRegistry = modelClientRegistry;
+        this.metricsCollector = metricsCollector;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        recentlyWarmed = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, config.getCooldownSeconds())))
+                .build();
+        AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                Math.max(1, config.getConcurrency()),
+                Math.max(1, config.getConcurrency()),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity())),
+                r -> {
+                    Thread t = new Thread(r, "memory-prewarm-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        log.info("记忆预热初始化完成，并发: {}, 队列容量: {}, 每秒上限: {}",
+                config.getConcurrency(), config.getQueueCapacity(), config.getMaxSessionsPerSecond());
+    }
+
+    /**
+     * 预热用户最近的若干个会话（登录后调用）
+     */
+    public void prewarmUser(String userId) {
+        if (!config.isEnabled() || userId == null || !claim("user:" + userId)) {
+            return;
+        }
+        submit(() -> {
+            List<Session> sessions = sessionMapper.findByUserId(0, config.getSessionsPerUser(), userId);
+            for (Session session : sessions) {
+                if (claim(session.getSessionId())) {
+                    warm(session.getSessionId());
+                }
+            }
+        });
+    }
+
+    /**
+     * 预热指定的会话（会话列表按最近修改时间排序，只取前 sessionsPerUser 个）
+     */
+    public void prewarmSessions(List<String> sessionIds) {
+        if (!config.isEnabled() || sessionIds == null) {
+            return;
+        }
+        for (String sessionId : sessionIds.subList(0, Math.min(sessionIds.size(), config.getSessionsPerUser()))) {
+            prewarmSession(sessionId);
+        }
+    }
+
+    /**
+     * 预热单个会话（打开会话历史时调用，用户很可能马上在该会话中发言）
+     */
+    public void prewarmSession(String sessionId) {
+        if (!config.isEnabled() || sessionId == null || !claim(sessionId)) {
+            return;
+        }
+        submit(() -> warm(sessionId));
+    }
+
+    private void warm(String sessionId) {
+        if (modelClientRegistry.totalInFlight() >= config.getMaxLiveInFlight()) {
+            metricsCollector.recordMemoryPrewarm("busy");
+            release(sessionId);
+            return;
+        }
+        if (!acquireRate()) {
+            metricsCollector.recordMemoryPrewarm("throttled");
+            release(sessionId);
+            return;
+        }
+        try {
+            metricsCollector.recordMemoryPrewarm(assistantServiceFactory.prewarmMemory(sessionId));
+        } catch (Exception e) {
+            metricsCollector.recordMemoryPrewarm("error");
+            log.warn("预热会话 {} 的记忆失败: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            metricsCollector.recordMemoryPrewarm("rejected");
+            log.debug("记忆预热队列已满，放弃本次预热");
+        }
+    }
+
+    // 冷却时间内已预热（或正在排队）的键直接跳过
+    private boolean claim(String key) {
+        if (recentlyWarmed.asMap().putIfAbsent(key, Boolean.TRUE) != null) {
+            metricsCollector.recordMemoryPrewarm("cooldown");
+            return false;
+        }
+        return true;
+    }
+
+    // 因繁忙或限速放弃时释放占位，下一次触发仍可预热
+    private void release(String sessionId) {
+        recentlyWarmed.invalidate(sessionId);
+    }
+
+    private boolean acquireRate() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long window = rateWindow.get();
+        if (window != second && rateWindow.compareAndSet(window, second)) {
+            rateCount.set(0);
+        }
+        return rateCount.incrementAndGet() <= config.getMaxSessionsPerSecond();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            // 预热任务可以随时放弃
+            executor.shutdownNow();
+        }
+    }
+}
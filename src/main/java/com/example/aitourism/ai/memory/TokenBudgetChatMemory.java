@@ -0,0 +1,231 @@
+package com.example.aitourism.ai.memory;
+
+import com.example.aitourism.ai.model.TokenCounter;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 token 预算管理的对话记忆
+ * 与 MessageWindowChatMemory 一样以 ChatMemoryStore 持久化，区别在于：
+ * - 淘汰依据是 token 数（系统提示词 + 摘要 + 历史消息不超过预算），条数上限仍然保留
+ * - 按轮次淘汰：一次移除从最早的用户消息到下一条用户消息之前的全部消息，工具调用请求与结果不会被拆开
+ * - 被淘汰的对话交给 ChatMemorySummarizer 异步折叠为摘要，组装上下文时附加在系统提示词之后
+ * 当前这一轮对话不会被淘汰；单轮本身超出预算时由工具结果裁剪兜底。
+ */
+public class TokenBudgetChatMemory implements ChatMemory {
+
+    private static final String SUMMARY_HEADER = "\n\n以下是此前对话的摘要，供参考：\n";
+
+    // 消息对象不可变，按对象身份缓存 token 数；L1 缓存命中时每轮拿到的是同一批对象，只需计数新增的消息
+    private static final Cache<ChatMessage, Integer> TOKEN_COUNTS = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(100_000)
+            .build();
+
+    private final Object id;
+    private final ChatMemoryStore store;
+    private final ChatMemorySummarizer summarizer;
+    private final AiModelMetricsCollector metricsCollector;
+    private final int maxTokens;
+    private final int maxMessages;
+    private final int summaryReserveTokens;
+
+    /**
+     * @param maxTokens 记忆整体的 token 预算
+     * @param maxMessages 非系统消息的条数上限
+     * @param summaryReserveTokens 为摘要预留的 token 数（摘要异步生成，淘汰时按上限预留）
+     */
+    public TokenBudgetChatMemory(Object id, ChatMemoryStore store, ChatMemorySummarizer summarizer,
+                                 AiModelMetricsCollector metricsCollector,
+                                 int maxTokens, int maxMessages, int summaryReserveTokens) {
+        this.id = id;
+        this.store = store;
+        this.summarizer = summarizer;
+        this.metricsCollector = metricsCollector;
+        this.maxTokens = maxTokens;
+        this.maxMessages = maxMessages;
+        this.summaryReserveTokens = summaryReserveTokens;
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        List<ChatMessage> messages = new ArrayList<>(store.getMessages(id));
+        if (message instanceof SystemMessage) {
+            int existing = indexOfSystemMessage(messages);
+            if (existing >= 0) {
+                if (messages.get(existing).equals(message)) {
+                    return;
+                }
+                messages.remove(existing);
+            }
+            messages.add(0, message);
+        } else {
+            messages.add(message);
+        }
+        evictOverBudget(messages);
+        store.updateMessages(id, messages);
+    }
+
+    @Override
+    public List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>(store.getMessages(id));
+        // 从数据库回填的历史可能超出预算，这里同样按预算淘汰
+        if (evictOverBudget(messages)) {
+            store.updateMessages(id, messages);
+        }
+        return withSummary(messages);
+    }
+
+    @Override
+    public void clear() {
+        store.deleteMessages(id);
+        summarizer.delete(id);
+    }
+
+    /**
+     * 按轮次从最早的对话开始淘汰，直到满足 token 预算与条数上限
+     * @return 是否淘汰了消息
+     */
+    private boolean evictOverBudget(List<ChatMessage> messages) {
+        int total = summaryReserveTokens;
+        int conversational = 0;
+        for (ChatMessage message : messages) {
+            total += tokensOf(message);
+            if (!(message instanceof SystemMessage)) {
+                conversational++;
+            }
+        }
+        List<ChatMessage> evicted = new ArrayList<>();
+        while (total > maxTokens || conversational > maxMessages) {
+            int first = firstConversationalIndex(messages);
+            int end = nextTurnStart(messages, first);
+            if (first < 0 || end < 0) {
+                // 只剩当前这一轮
+                break;
+            }
+            for (int i = first; i < end; i++) {
+                ChatMessage removed = messages.remove(first);
+                total -= tokensOf(removed);
+                conversational--;
+                evicted.add(removed);
+            }
+        }
+        if (evicted.isEmpty()) {
+            return false;
+        }
+        metricsCollector.recordMemoryEviction(evicted.size());
+        summarizer.fold(id, evicted, countTurns(messages));
+        return true;
+    }
+
+    // 在系统提示词之后附加摘要；没有系统提示词时单独作为系统消息放在最前
+    private List<ChatMessage> withSummary(List<ChatMessage> messages) {
+        String summary = summarizer.current(id);
+        if (summary.isEmpty()) {
+            return messages;
+        }
+        int index = indexOfSystemMessage(messages);
+        if (index >= 0) {
+            SystemMessage system = (SystemMessage) messages.get(index);
+            messages.set(index, SystemMessage.from(system.text() + SUMMARY_HEADER + summary));
+        } else {
+            messages.add(0, SystemMessage.from(SUMMARY_HEADER.strip() + "\n" + summary));
+        }
+        return messages;
+    }
+
+    private static int indexOfSystemMessage(List<ChatMessage> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i) instanceof SystemMessage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int firstConversationalIndex(List<ChatMessage> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (!(messages.get(i) instanceof SystemMessage)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int countTurns(List<ChatMessage> messages) {
+        int turns = 0;
+        for (ChatMessage message : messages) {
+            if (message instanceof UserMessage) {
+                turns++;
+            }
+        }
+        return turns;
+    }
+
+    // 下一轮（下一条用户消息）的起点；没有下一轮时返回 -1
+    private static int nextTurnStart(List<ChatMessage> messages, int from) {
+        if (from < 0) {
+            return -1;
+        }
+        for (int i = from + 1; i < messages.size(); i++) {
+            if (messages.get(i) instanceof UserMessage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 估算单条消息的 token 数（文本内容 + 工具调用参数）
+     */
+    static int tokensOf(ChatMessage message) {
+        return TOKEN_COUNTS.get(message, TokenBudgetChatMemory::countTokens);
+    }
+
+    private static int countTokens(ChatMessage message) {
+        if (message instanceof SystemMessage system) {
+            return TokenCounter.count(system.text());
+        }
+        if (message instanceof UserMessage user) {
+            int tokens = 0;
+            for (Content content : user.contents()) {
+                if (content instanceof TextContent text) {
+                    tokens += TokenCounter.count(text.text());
+                }
+            }
+            return tokens;
+        }
+        if (message instanceof AiMessage ai) {
+            int tokens = TokenCounter.count(ai.text());
+            if (ai.hasToolExecutionRequests()) {
+                for (ToolExecutionRequest request : ai.toolExecutionRequests()) {
+                    tokens += TokenCounter.count(request.name()) + TokenCounter.count(request.arguments());
+                }
+            }
+            return tokens;
+        }
+        if (message instanceof ToolExecutionResultMessage result) {
+            return TokenCounter.count(result.text());
+        }
+        return 0;
+    }
+}
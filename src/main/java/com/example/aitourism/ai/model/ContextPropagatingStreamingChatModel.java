@@ -0,0 +1,89 @@
+package com.example.aitourism.ai.model;
+
+import com.example.aitourism.monitor.MonitorContext;
+import com.example.aitourism.monitor.MonitorContextHolder;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.util.Set;
+
+/**
+ * 把发起请求时的监控上下文带到流式回调线程上
+ * 流式回调运行在 HTTP 执行器的线程上，AI Service 在回调中执行工具、发出工具调用后的下一轮请求，
+ * 这些代码（WeatherTool、TruncatingToolProvider、监听器的 onRequest）都从 MonitorContextHolder 读取上下文。
+ * 这里在 chat 时记下当前线程的上下文，随本次请求的回调传递，回调期间设置到回调线程上、结束后清除。
+ */
+public class ContextPropagatingStreamingChatModel implements StreamingChatModel {
+
+    private final StreamingChatModel delegate;
+
+    public ContextPropagatingStreamingChatModel(StreamingChatModel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        MonitorContext context = MonitorContextHolder.getContext();
+        delegate.chat(chatRequest, context == null ? handler : new ContextHandler(handler, context));
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    private record ContextHandler(StreamingChatResponseHandler handler, MonitorContext context)
+            implements StreamingChatResponseHandler {
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            withContext(() -> handler.onPartialResponse(partialResponse));
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking) {
+            withContext(() -> handler.onPartialThinking(partialThinking));
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall) {
+            withContext(() -> handler.onPartialToolCall(partialToolCall));
+        }
+
+        @Override
+        public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+            withContext(() -> handler.onCompleteToolCall(completeToolCall));
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+            withContext(() -> handler.onCompleteResponse(completeResponse));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            withContext(() -> handler.onError(error));
+        }
+
+        // 回调线程上已有上下文（如在发起请求的线程上同步回调）时保持不变
+        private void withContext(Runnable callback) {
+            boolean ownContext = MonitorContextHolder.getContext() == null;
+            if (ownContext) {
+                MonitorContextHolder.setContext(context);
+            }
+            try {
+                callback.run();
+            } finally {
+                if (ownContext) {
+                    MonitorContextHolder.clearContext();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.aitourism.ai.model;
+
+import com.example.aitourism.config.HedgingConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.example.aitourism.monitor.ModelAttempt;
+import com.example.aitourism.monitor.MonitorContext;
+import com.example.aitourism.monitor.MonitorContextHolder;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 带对冲与故障切换的流式模型
+ * 包装一组端点（主端点 + 备用端点），每次请求先发往首选端点：
+ * - 期限内（首选端点最近首 token 耗时的分位数）没有收到首个 token 时，向另一个端点发出对冲请求
+ * - 首选端点在首个 token 前报错时，直接切换到另一个端点
+ * - 两路中先产出 token（文本、思考过程或工具调用片段，或完整响应）的一方胜出，之后只转发胜出方的回调
+ * LangChain4j 的流式接口不支持中途取消，落败方由 InstrumentedHttpClient 在读到下一段数据时中止并关闭响应，
+ * 在此之前收到的输出只计入浪费的 token，不会转发给 AI Service，也就不会写入记忆；每一路都以 ModelAttempt 标记交给监听器，
+ * 落败方的 token 用量与错误不计入模型指标，也不会收缩自适应并发上限。
+ * 两路的首 token 耗时都计入各自端点的样本，否则样本只剩胜出的快请求，期限会越来越短。
+ * 对冲受预算约束（每个请求积累 budgetRatio 额度，每次对冲消耗 1），避免端点整体变慢时请求量翻倍。
+ */
+@Slf4j
+public class HedgingStreamingChatModel implements StreamingChatModel {
+
+    private static final double MAX_BUDGET = 10.0;
+
+    private final List<Endpoint> endpoints;
+    private final HedgingConfig config;
+    private final ScheduledExecutorService scheduler;
+    private final AiModelMetricsCollector metricsCollector;
+    // 对冲预算（放大 1000 倍存为整数）
+    private final AtomicLong budget = new AtomicLong((long) (MAX_BUDGET * 1000));
+
+    public HedgingStreamingChatModel(List<Endpoint> endpoints, HedgingConfig config,
+                                     ScheduledExecutorService scheduler, AiModelMetricsCollector metricsCollector) {
+        if (endpoints.size() < 2) {
+            throw new IllegalArgumentException("对冲至少需要两个端点");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.config = config;
+        this.scheduler = scheduler;
+        this.metricsCollector = metricsCollector;
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        Endpoint primary = preferred();
+        Endpoint secondary = primary == endpoints.get(0) ? endpoints.get(1) : endpoints.get(0);
+        new HedgedCall(chatRequest, handler, primary, secondary).start();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return endpoints.get(0).model().supportedCapabilities();
+    }
+
+    /**
+     * 当前主端点的对冲期限（毫秒），供监控展示
+     */
+    public long currentDeadlineMs() {
+        return preferred().deadlineMs(config);
+    }
+
+    // 首个健康的端点为首选；都不健康时按配置顺序
+    private Endpoint preferred() {
+        long now = System.nanoTime();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isHealthy(now)) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(0);
+    }
+
+    private boolean acquireBudget() {
+        while (true) {
+            long current = budget.get();
+            if (current < 1000) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - 1000)) {
+                return true;
+            }
+        }
+    }
+
+    private void depositBudget() {
+        long credit = (long) (config.getBudgetRatio() * 1000);
+        long max = (long) (MAX_BUDGET * 1000);
+        budget.accumulateAndGet(credit, (current, add) -> Math.min(max, current + add));
+    }
+
+    /**
+     * 一次对冲请求：最多两路尝试，第一个产出内容的尝试胜出
+     */
+    private final class HedgedCall {
+
+        private final ChatRequest request;
+        private final StreamingChatResponseHandler handler;
+        private final Endpoint primary;
+        private final Endpoint secondary;
+        private final AtomicReference<Attempt> winner = new AtomicReference<>();
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicReference<Attempt> hedge = new AtomicReference<>();
+        // 发起请求线程上的监控上下文，对冲请求在定时器线程上发出时沿用
+        private final MonitorContext monitorContext = MonitorContextHolder.getContext();
+        private volatile ScheduledFuture<?> hedgeTimer;
+
+        HedgedCall(ChatRequest request, StreamingChatResponseHandler handler, Endpoint primary, Endpoint secondary) {
+            this.request = request;
+            this.handler = handler;
+            this.primary = primary;
+            this.secondary = secondary;
+        }
+
+        void start() {
+            depositBudget();
+            long deadline = primary.deadlineMs(config);
+            launch(new Attempt(this, primary, false));
+            hedgeTimer = scheduler.schedule(() -> hedge("fired"), deadline, TimeUnit.MILLISECONDS);
+        }
+
+        // 发出对冲或故障切换请求（每次调用最多一次）
+        void hedge(String reason) {
+            if (winner.get() != null || hedge.get() != null) {
+                return;
+            }
+            // 主端点故障时的切换不受预算约束
+            if ("fired".equals(reason) && !acquireBudget()) {
+                metricsCollector.recordHedge("budget_exhausted");
+                return;
+            }
+            Attempt attempt = new Attempt(this, secondary, true);
+            if (!hedge.compareAndSet(null, attempt)) {
+                return;
+            }
+            metricsCollector.recordHedge(reason);
+            log.info("主端点 {} 未及时响应（{}），向 {} 发出对冲请求", primary.name(), reason, secondary.name());
+            launch(attempt);
+        }
+
+        private void launch(Attempt attempt) {
+            started.incrementAndGet();
+            // 监听器的 onRequest 在 chat 内同步执行，这里把尝试标记与监控上下文放到当前线程上
+            boolean ownContext = MonitorContextHolder.getContext() == null && monitorContext != null;
+            if (ownContext) {
+                MonitorContextHolder.setContext(monitorContext);
+            }
+            MonitorContextHolder.setAttempt(attempt);
+            try {
+                attempt.endpoint().model().chat(request, attempt);
+            } catch (Exception e) {
+                attempt.onError(e);
+            } finally {
+                MonitorContextHolder.clearAttempt();
+                if (ownContext) {
+                    MonitorContextHolder.clearContext();
+                }
+            }
+        }
+
+        // 尝试产出第一个内容时调用，返回该尝试是否胜出
+        boolean claim(Attempt attempt) {
+            boolean firstContent = attempt.firstContent.compareAndSet(false, true);
+            Attempt current = winner.get();
+            if (current == null && winner.compareAndSet(null, attempt)) {
+                ScheduledFuture<?> timer = hedgeTimer;
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                attempt.endpoint().recordFirstToken(attempt.elapsedMs(), config.getSampleSize());
+                if (hedge.get() != null) {
+                    metricsCollector.recordHedgeWin(attempt.hedge() ? "hedge" : "primary");
+                }
+                return true;
+            }
+            if (firstContent && winner.get() != attempt) {
+                // 落败方的首 token 耗时同样是该端点的有效样本
+                attempt.endpoint().recordFirstToken(attempt.elapsedMs(), config.getSampleSize());
+            }
+            return winner.get() == attempt;
+        }
+
+        void failed(Attempt attempt, Throwable error) {
+            if (attempt.superseded()) {
+                // 落败方被主动中止（或在落败后出错），不反映端点健康状况
+                return;
+            }
+            attempt.endpoint().recordFailure(config.getFailureThreshold(), config.getUnhealthySeconds());
+            if (winner.get() == attempt) {
+                handler.onError(error);
+                return;
+            }
+            int failures = failed.incrementAndGet();
+            if (!attempt.hedge() && hedge.get() == null) {
+                // 主端点在首个 token 前报错：立即切换到备用端点
+                ScheduledFuture<?> timer = hedgeTimer;
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                log.warn("主端点 {} 调用失败，切换到 {}: {}", primary.name(), secondary.name(), error.getMessage());
+                hedge("failover");
+                return;
+            }
+            // 两路都失败才把错误交给调用方
+            if (failures >= started.get() && winner.compareAndSet(null, attempt)) {
+                handler.onError(error);
+            }
+        }
+    }
+
+    /**
+     * 一路尝试：只有胜出方的回调会转发给调用方
+     */
+    private final class Attempt implements StreamingChatResponseHandler, ModelAttempt {
+
+        private final HedgedCall call;
+        private final Endpoint endpoint;
+        private final boolean hedge;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean firstContent = new AtomicBoolean();
+
+        Attempt(HedgedCall call, Endpoint endpoint, boolean hedge) {
+            this.call = call;
+            this.endpoint = endpoint;
+            this.hedge = hedge;
+        }
+
+        Endpoint endpoint() {
+            return endpoint;
+        }
+
+        boolean hedge() {
+            return hedge;
+        }
+
+        long elapsedMs() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        @Override
+        public boolean superseded() {
+            Attempt current = call.winner.get();
+            return current != null && current != this;
+        }
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            if (call.claim(this)) {
+                call.handler.onPartialResponse(partialResponse);
+            } else {
+                metricsCollector.recordHedgeWastedTokens(TokenCounter.count(partialResponse));
+            }
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking) {
+            if (call.claim(this)) {
+                call.handler.onPartialThinking(partialThinking);
+            }
+        }
+
+        // 工具调用轮次没有流式文本，必须在工具调用片段上胜出，否则期限一到就会向备用端点对冲
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall) {
+            if (call.claim(this)) {
+                call.handler.onPartialToolCall(partialToolCall);
+            }
+        }
+
+        @Override
+        public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+            if (call.claim(this)) {
+                call.handler.onCompleteToolCall(completeToolCall);
+            }
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+            if (call.claim(this)) {
+                endpoint.recordSuccess();
+                call.handler.onCompleteResponse(completeResponse);
+            } else {
+                // 纯工具调用的响应没有流式文本，按完整响应的输出 token 计入浪费
+                endpoint.recordSuccess();
+                if (completeResponse.aiMessage() != null && completeResponse.aiMessage().text() == null
+                        && completeResponse.tokenUsage() != null
+                        && completeResponse.tokenUsage().outputTokenCount() != null) {
+                    metricsCollector.recordHedgeWastedTokens(completeResponse.tokenUsage().outputTokenCount());
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            call.failed(this, error);
+        }
+    }
+
+    /**
+     * 模型端点及其健康状态：最近的首 token 耗时样本与连续失败次数
+     */
+    public static final class Endpoint {
+
+        private final String name;
+        private final StreamingChatModel model;
+        private long[] samples = new long[0];
+        private int sampleCount;
+        private int sampleIndex;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        // 是否曾被降级；从未降级时 unhealthyUntil 无意义（nanoTime 可能为负，不能与 0 比较）
+        private volatile boolean degraded;
+        private volatile long unhealthyUntil;
+
+        public Endpoint(String name, StreamingChatModel model) {
+            this.name = name;
+            this.model = model;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public StreamingChatModel model() {
+            return model;
+        }
+
+        boolean isHealthy(long now) {
+            return !degraded || now - unhealthyUntil >= 0;
+        }
+
+        void recordSuccess() {
+            consecutiveFailures.set(0);
+        }
+
+        void recordFailure(int threshold, int unhealthySeconds) {
+            if (consecutiveFailures.incrementAndGet() >= threshold) {
+                unhealthyUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(unhealthySeconds);
+                degraded = true;
+                consecutiveFailures.set(0);
+                log.warn("模型端点 {} 连续失败，{}s 内降级为备用端点", name, unhealthySeconds);
+            }
+        }
+
+        synchronized void recordFirstToken(long millis, int sampleSize) {
+            if (samples.length != sampleSize) {
+                samples = new long[Math.max(1, sampleSize)];
+                sampleCount = 0;
+                sampleIndex = 0;
+            }
+            samples[sampleIndex] = millis;
+            sampleIndex = (sampleIndex + 1) % samples.length;
+            sampleCount = Math.min(sampleCount + 1, samples.length);
+        }
+
+        // 最近样本的分位数，样本不足 20 个时使用初始期限
+        synchronized long deadlineMs(HedgingConfig config) {
+            long deadline = config.getInitialDelayMs();
+            if (sampleCount >= 20) {
+                long[] sorted = Arrays.copyOf(samples, sampleCount);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(config.getPercentile() * sampleCount) - 1;
+                deadline = sorted[Math.max(0, Math.min(sampleCount - 1, index))];
+            }
+            return Math.max(config.getMinDelayMs(), Math.min(config.getMaxDelayMs(), deadline));
+        }
+    }
+}
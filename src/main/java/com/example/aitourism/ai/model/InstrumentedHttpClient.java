@@ -0,0 +1,218 @@
+package com.example.aitourism.ai.model;
+
+import com.example.aitourism.exception.AdmissionRejectedException;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.example.aitourism.monitor.ModelAttempt;
+import com.example.aitourism.monitor.MonitorContextHolder;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEvent;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 带监控的共享 HTTP 客户端
+ * 包装 langchain4j 的 JdkHttpClient，统计在途请求数与首包（响应头）耗时，
+ * 由 ModelClientRegistry 统一创建并在所有模型之间复用，避免每次构建模型都新建连接池。
+ * 所有共享客户端共用一个信号量限制同时在途的模型请求数（流式请求持有到流结束），
+ * 名额用尽时最多等待 acquireTimeout，仍拿不到则抛出 AdmissionRejectedException，按“服务繁忙、稍后重试”处理；
+ * 排队主要由上层的准入控制负责，这里的等待只吸收准入放行与名额释放之间的短暂错位。
+ * 对冲请求中落败的一路在读到下一段数据时中止读流并关闭响应，尽早归还名额与连接。
+ */
+public class InstrumentedHttpClient implements HttpClient {
+
+    private final HttpClient delegate;
+    private final AiModelMetricsCollector metricsCollector;
+    // 当前在途请求数（含流式请求，流结束或出错时释放）
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // 所有共享客户端共用的在途请求名额
+    private final Semaphore permits;
+    // 名额用尽时的最长等待时间
+    private final Duration acquireTimeout;
+
+    public InstrumentedHttpClient(HttpClient delegate, AiModelMetricsCollector metricsCollector,
+                                  Semaphore permits, Duration acquireTimeout) {
+        this.delegate = delegate;
+        this.metricsCollector = metricsCollector;
+        this.permits = permits;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public SuccessfulHttpResponse execute(HttpRequest request) {
+        long start = System.nanoTime();
+        acquire(request);
+        inFlight.incrementAndGet();
+        try {
+            return delegate.execute(request);
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+            metricsCollector.recordHttpTimeToHeaders(endpointOf(request.url()), Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    @Override
+    public void execute(HttpRequest request, ServerSentEventParser parser, ServerSentEventListener listener) {
+        long start = System.nanoTime();
+        String endpoint = endpointOf(request.url());
+        // 对冲请求的一路在 chat 内同步发出，此时尝试标记就在当前线程上
+        ModelAttempt attempt = MonitorContextHolder.getAttempt();
+        acquire(request);
+        inFlight.incrementAndGet();
+        AtomicBoolean released = new AtomicBoolean(false);
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                permits.release();
+            }
+        };
+        try {
+            delegate.execute(request, abortWhenSuperseded(parser, attempt), new ServerSentEventListener() {
+                @Override
+                public void onOpen(SuccessfulHttpResponse response) {
+                    metricsCollector.recordHttpTimeToHeaders(endpoint, Duration.ofNanos(System.nanoTime() - start));
+                    listener.onOpen(response);
+                }
+
+                @Override
+                public void onEvent(ServerSentEvent event) {
+                    listener.onEvent(event);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    release.run();
+                    listener.onError(throwable);
+                }
+
+                @Override
+                public void onClose() {
+                    release.run();
+                    listener.onClose();
+                }
+            });
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+    }
+
+    private void acquire(HttpRequest request) {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            metricsCollector.recordAdmissionRejected(endpointOf(request.url()), "http_permit_timeout");
+            throw new AdmissionRejectedException("当前服务繁忙，请稍后重试");
+        }
+    }
+
+    /**
+     * 已被另一路胜出的对冲尝试，在下一次读取响应体时抛出 IOException：
+     * 解析器随即关闭响应流（JDK HttpClient 据此取消请求）并回调 onError，名额在 onError 中归还
+     */
+    private static ServerSentEventParser abortWhenSuperseded(ServerSentEventParser parser, ModelAttempt attempt) {
+        if (attempt == null) {
+            return parser;
+        }
+        return (body, listener) -> parser.parse(new FilterInputStream(body) {
+            @Override
+            public int read() throws IOException {
+                checkSuperseded();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkSuperseded();
+                return super.read(b, off, len);
+            }
+
+            private void checkSuperseded() throws IOException {
+                if (attempt.superseded()) {
+                    throw new IOException("对冲请求已由另一路胜出，中止读取");
+                }
+            }
+        }, listener);
+    }
+
+    /**
+     * 从 URL 中提取 host:port 作为指标标签，避免把完整路径写进标签
+     */
+    static String endpointOf(String url) {
+        try {
+            URI uri = URI.create(url);
+            int port = uri.getPort();
+            if (port < 0) {
+                port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+            }
+            return uri.getHost() + ":" + port;
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * 交给 OpenAiChatModel / OpenAiStreamingChatModel 的 HttpClientBuilder。
+     * 模型构建时会回填 connect/read 超时，build() 时按读超时从注册表中取出已存在的共享客户端。
+     */
+    static class SharedBuilder implements HttpClientBuilder {
+
+        private final Function<Duration, HttpClient> clientLookup;
+        private Duration connectTimeout;
+        private Duration readTimeout;
+
+        SharedBuilder(Function<Duration, HttpClient> clientLookup) {
+            this.clientLookup = clientLookup;
+        }
+
+        @Override
+        public Duration connectTimeout() {
+            return connectTimeout;
+        }
+
+        @Override
+        public HttpClientBuilder connectTimeout(Duration timeout) {
+            this.connectTimeout = timeout;
+            return this;
+        }
+
+        @Override
+        public Duration readTimeout() {
+            return readTimeout;
+        }
+
+        @Override
+        public HttpClientBuilder readTimeout(Duration timeout) {
+            this.readTimeout = timeout;
+            return this;
+        }
+
+        @Override
+        public HttpClient build() {
+            return clientLookup.apply(readTimeout);
+        }
+    }
+}
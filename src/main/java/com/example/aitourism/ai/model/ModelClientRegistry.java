@@ -0,0 +1,371 @@
+package com.example.aitourism.ai.model;
+
+import com.example.aitourism.config.HedgingConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.example.aitourism.monitor.AiModelMonitorListener;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模型客户端注册表
+ * 按 角色 + 端点 + 模型名 缓存 OpenAiChatModel / OpenAiStreamingChatModel，
+ * 所有模型共用同一套调优过的 HTTP 栈（keep-alive 连接复用、在途请求数上限、可用时启用 HTTP/2），
+ * 避免每次对话、每个会话都重新构建模型导致连接池无法复用、反复 TLS 握手。
+ */
+@Component
+@Slf4j
+public class ModelClientRegistry {
+
+    // 主模型
+    @Value("${openai.api-key}")
+    private String apiKey;
+    @Value("${openai.base-url}")
+    private String baseUrl;
+    @Value("${openai.model-name}")
+    private String modelName;
+    @Value("${openai.max-output-tokens:800}")
+    private Integer maxOutputTokens;
+
+    // 小模型
+    @Value("${openai-small.api-key}")
+    private String apiKeySmall;
+    @Value("${openai-small.base-url}")
+    private String baseUrlSmall;
+    @Value("${openai-small.model-name}")
+    private String modelNameSmall;
+
+    // HTTP 客户端配置（毫秒）
+    @Value("${http.client.connect-timeout:30000}")
+    private long connectTimeoutMs;
+    @Value("${http.client.read-timeout:120000}")
+    private long readTimeoutMs;
+    @Value("${http.client.max-connections:100}")
+    private int maxConnections;
+    @Value("${http.client.acquire-timeout:2000}")
+    private long acquireTimeoutMs;
+    @Value("${http.client.keep-alive-duration:300000}")
+    private long keepAliveMs;
+    @Value("${http.client.http2-enabled:true}")
+    private boolean http2Enabled;
+    @Value("${http.client.warmup-enabled:true}")
+    private boolean warmupEnabled;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // 流式模型需要等待完整的工具调用 + 生成过程，超时时间单独放宽
+    private static final Duration STREAMING_TIMEOUT = Duration.ofMinutes(5);
+
+    @Resource
+    private AiModelMetricsCollector metricsCollector;
+
+    @Resource
+    private AiModelMonitorListener aiModelMonitorListener;
+
+    @Resource
+    private HedgingConfig hedgingConfig;
+
+    // 模型缓存：key = 角色|baseUrl|modelName
+    private final ConcurrentMap<String, ChatModel> chatModels = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, StreamingChatModel> streamingModels = new ConcurrentHashMap<>();
+    // 底层 HTTP 客户端缓存：key = 协议版本|读超时，同一 key 的所有模型共用一个连接池
+    private final ConcurrentMap<String, InstrumentedHttpClient> httpClients = new ConcurrentHashMap<>();
+
+    // 所有 JDK HttpClient 共用的执行器（流式响应的解析与回调都运行在这里）
+    private ExecutorService httpExecutor;
+    // 所有共享 HTTP 客户端共用的在途请求名额（max-connections）
+    private Semaphore httpPermits;
+    // 对冲请求的定时器
+    private ScheduledExecutorService hedgeScheduler;
+
+    @PostConstruct
+    public void init() {
+        // 注意：jdk.httpclient.connectionPoolSize 只限制保留的空闲 keep-alive 连接数，不限制并发连接数，
+        // 且是 JVM 全局参数，只在本 JVM 首次创建 HttpClient 时读取一次，之前已创建过 HttpClient 时不生效。
+        // 并发上限由 httpPermits 在 InstrumentedHttpClient 中实际约束
+        setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(maxConnections));
+        setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(Math.max(1, keepAliveMs / 1000)));
+
+        httpPermits = new Semaphore(Math.max(1, maxConnections));
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "model-http-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // 注意：流式响应会长期占用线程读取 InputStream，且 JDK HttpClient 内部任务也跑在该执行器上，
+        // 固定大小的线程池在满载时会互相等待导致死锁，因此使用按需伸缩的线程池，在途请求数由 httpPermits 约束。
+        // 流式回调（含工具调用）都运行在这里，虚拟线程模式下每个任务一个虚拟线程，阻塞读流不再占用平台线程
+        httpExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("model-http-", 1).factory())
+                : Executors.newCachedThreadPool(threadFactory);
+
+        metricsCollector.registerHttpPoolGauges(this::totalInFlight, maxConnections);
+        if (hedgingConfig.isEnabled()) {
+            hedgeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "model-hedge");
+                t.setDaemon(true);
+                return t;
+            });
+            if (mainStreamingModel() instanceof HedgingStreamingChatModel hedging) {
+                metricsCollector.registerHedgeDeadlineGauge(hedging::currentDeadlineMs);
+            }
+        }
+        // token 估算按主模型的分词器族计数
+        TokenCounter.useModel(modelName);
+        log.info("模型客户端注册表初始化完成，maxConnections={}, keepAlive={}ms, http2={}, virtualThreads={}, tokenizer={}",
+                maxConnections, keepAliveMs, http2Enabled, virtualThreads, TokenCounter.profile());
+    }
+
+    /**
+     * 主模型（同步调用，如路线结构化抽取）
+     */
+    public ChatModel mainChatModel() {
+        return chatModel("main", apiKey, baseUrl, modelName);
+    }
+
+    /**
+     * 小模型（同步调用，如会话标题生成）
+     */
+    public ChatModel smallChatModel() {
+        return chatModel("small", apiKeySmall, baseUrlSmall, modelNameSmall);
+    }
+
+    /**
+     * 主模型的流式客户端（AI Service 对话使用），注册监控监听器；
+     * 启用对冲时返回包装了主端点与备用端点的对冲模型
+     */
+    public StreamingChatModel mainStreamingModel() {
+        StreamingChatModel main = streamingModel(apiKey, baseUrl, modelName);
+        if (!hedgingConfig.isEnabled()) {
+            return main;
+        }
+        String secondaryUrl = secondaryBaseUrl();
+        String secondaryModel = secondaryModelName();
+        return streamingModels.computeIfAbsent("hedging|" + baseUrl + "|" + secondaryUrl + "|" + secondaryModel, k -> {
+            log.info("创建对冲流式模型: {}", k);
+            return new HedgingStreamingChatModel(List.of(
+                    new HedgingStreamingChatModel.Endpoint(InstrumentedHttpClient.endpointOf(baseUrl), main),
+                    new HedgingStreamingChatModel.Endpoint(InstrumentedHttpClient.endpointOf(secondaryUrl),
+                            streamingModel(secondaryApiKey(), secondaryUrl, secondaryModel))),
+                    hedgingConfig, hedgeScheduler, metricsCollector);
+        });
+    }
+
+    /**
+     * 小模型的流式客户端（按复杂度路由的简单对话使用）
+     */
+    public StreamingChatModel smallStreamingModel() {
+        return streamingModel(apiKeySmall, baseUrlSmall, modelNameSmall);
+    }
+
+    private StreamingChatModel streamingModel(String key, String url, String model) {
+        String cacheKey = "streaming|" + url + "|" + model;
+        return streamingModels.computeIfAbsent(cacheKey, k -> {
+            log.info("创建共享流式模型: {}", k);
+            // 流式回调（含工具执行与下一轮请求）运行在 HTTP 执行器上，由包装把本次请求的监控上下文带过去
+            return new ContextPropagatingStreamingChatModel(OpenAiStreamingChatModel.builder()
+                    .apiKey(key)
+                    .baseUrl(url)
+                    .modelName(model)
+                    .maxTokens(maxOutputTokens)
+                    .listeners(List.of(aiModelMonitorListener))  // 注册监听器
+                    .timeout(STREAMING_TIMEOUT)
+                    .httpClientBuilder(httpClientBuilder(url))
+                    .build());
+        });
+    }
+
+    // 备用端点未单独配置时使用小模型的端点
+    private boolean secondaryIsSmall() {
+        return hedgingConfig.getSecondaryBaseUrl() == null || hedgingConfig.getSecondaryBaseUrl().isBlank();
+    }
+
+    private String secondaryBaseUrl() {
+        return secondaryIsSmall() ? baseUrlSmall : hedgingConfig.getSecondaryBaseUrl();
+    }
+
+    private String secondaryApiKey() {
+        String key = hedgingConfig.getSecondaryApiKey();
+        if (key != null && !key.isBlank()) {
+            return key;
+        }
+        return secondaryIsSmall() ? apiKeySmall : apiKey;
+    }
+
+    private String secondaryModelName() {
+        String name = hedgingConfig.getSecondaryModelName();
+        if (name != null && !name.isBlank()) {
+            return name;
+        }
+        return secondaryIsSmall() ? modelNameSmall : modelName;
+    }
+
+    /**
+     * 主模型 / 小模型端点（host:port），准入控制按端点限流
+     */
+    public String mainEndpoint() {
+        return InstrumentedHttpClient.endpointOf(baseUrl);
+    }
+
+    public String smallEndpoint() {
+        return InstrumentedHttpClient.endpointOf(baseUrlSmall);
+    }
+
+    public String mainModelName() {
+        return modelName;
+    }
+
+    public String smallModelName() {
+        return modelNameSmall;
+    }
+
+    private ChatModel chatModel(String role, String key, String url, String model) {
+        String cacheKey = role + "|" + url + "|" + model;
+        return chatModels.computeIfAbsent(cacheKey, k -> {
+            log.info("创建共享模型: {}", k);
+            return OpenAiChatModel.builder()
+                    .apiKey(key)
+                    .baseUrl(url)
+                    .modelName(model)
+                    .timeout(Duration.ofMillis(readTimeoutMs))
+                    .httpClientBuilder(httpClientBuilder(url))
+                    .build();
+        });
+    }
+
+    /**
+     * 为指定端点创建 HttpClientBuilder：https 端点可通过 ALPN 协商 HTTP/2，明文端点固定 HTTP/1.1，
+     * 避免向本地 Ollama 之类的服务发送 h2c 升级请求
+     */
+    private InstrumentedHttpClient.SharedBuilder httpClientBuilder(String url) {
+        boolean http2 = http2Enabled && url != null && url.startsWith("https");
+        return new InstrumentedHttpClient.SharedBuilder(readTimeout -> sharedHttpClient(http2, readTimeout));
+    }
+
+    private HttpClient sharedHttpClient(boolean http2, Duration readTimeout) {
+        String key = (http2 ? "h2" : "h1") + "|" + readTimeout;
+        return httpClients.computeIfAbsent(key, k -> {
+            log.info("创建共享 HTTP 客户端: {}", k);
+            java.net.http.HttpClient.Builder jdkBuilder = java.net.http.HttpClient.newBuilder()
+                    .version(http2 ? java.net.http.HttpClient.Version.HTTP_2 : java.net.http.HttpClient.Version.HTTP_1_1)
+                    .followRedirects(java.net.http.HttpClient.Redirect.NORMAL)
+                    .executor(httpExecutor);
+            HttpClient jdkClient = JdkHttpClient.builder()
+                    .httpClientBuilder(jdkBuilder)
+                    .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                    .readTimeout(readTimeout)
+                    .build();
+            return new InstrumentedHttpClient(jdkClient, metricsCollector, httpPermits, Duration.ofMillis(acquireTimeoutMs));
+        });
+    }
+
+    /**
+     * 当前所有共享客户端上在途的模型请求数
+     */
+    public int totalInFlight() {
+        int total = 0;
+        for (InstrumentedHttpClient client : httpClients.values()) {
+            total += client.inFlight();
+        }
+        return total;
+    }
+
+    /**
+     * 预热：提前构建模型并与各端点建立连接（TLS 握手、HTTP/2 协商），
+     * 让第一次真实对话复用已建立的连接。由启动预热阶段调用，各端点并行预热，最多等待 timeout；
+     * 预热失败不影响服务启动。
+     */
+    public void warmup(Duration timeout) throws Exception {
+        mainChatModel();
+        smallChatModel();
+        mainStreamingModel();
+        if (!warmupEnabled) {
+            return;
+        }
+        Set<String> endpoints = new LinkedHashSet<>();
+        endpoints.add(baseUrl);
+        endpoints.add(baseUrlSmall);
+        if (hedgingConfig.isEnabled()) {
+            endpoints.add(secondaryBaseUrl());
+        }
+        CompletableFuture<?>[] futures = endpoints.stream()
+                .map(url -> CompletableFuture.runAsync(() -> warmupEndpoint(url), httpExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void warmupEndpoint(String url) {
+        if (url == null || url.isBlank()) {
+            return;
+        }
+        boolean http2 = http2Enabled && url.startsWith("https");
+        // 预热同步与流式两类客户端各自的连接池
+        for (Duration readTimeout : List.of(Duration.ofMillis(readTimeoutMs), STREAMING_TIMEOUT)) {
+            HttpClient client = sharedHttpClient(http2, readTimeout);
+            Instant start = Instant.now();
+            try {
+                HttpRequest request = HttpRequest.builder()
+                        .method(HttpMethod.GET)
+                        .url(url.endsWith("/") ? url + "models" : url + "/models")
+                        .build();
+                client.execute(request);
+            } catch (Exception e) {
+                // 未带鉴权头通常会返回 401，此时连接已建立，属于预期情况
+                log.debug("预热端点 {} 返回: {}", url, e.getMessage());
+            }
+            Duration cost = Duration.between(start, Instant.now());
+            // 一次完整的 GET /models 往返（含建连、TLS 握手与服务端响应），不是单纯的建连耗时
+            metricsCollector.recordWarmupRoundTrip(InstrumentedHttpClient.endpointOf(url), cost);
+            log.info("预热模型端点 {} 完成，耗时 {}ms", url, cost.toMillis());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (hedgeScheduler != null) {
+            hedgeScheduler.shutdownNow();
+        }
+        if (httpExecutor != null) {
+            httpExecutor.shutdown();
+            try {
+                httpExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
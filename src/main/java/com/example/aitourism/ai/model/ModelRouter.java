@@ -0,0 +1,89 @@
+package com.example.aitourism.ai.model;
+
+import com.example.aitourism.config.ModelRouterConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 按请求复杂度在主模型与小模型之间路由
+ * 规则依次判断（命中即返回）：
+ * - 首轮对话（历史不足）：需要完整的行程规划与工具调用 -> 主模型
+ * - 命中工具 / 规划类关键词 -> 主模型
+ * - 问题超过 maxSmallChars -> 主模型
+ * - 其余请求打分：命中追问 / 闲聊关键词加分，问题越短分越高；分数即判断为简单请求的把握，
+ *   达到 confidenceThreshold 走小模型，否则按“把握不足”回退主模型
+ */
+@Component
+public class ModelRouter {
+
+    public enum Route {
+        MAIN, SMALL;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 路由结果
+     * @param route 目标模型
+     * @param confidence 判断为简单请求的把握（0~1）
+     * @param reason 决策原因：disabled / first_turn / tool / length / low_confidence / simple
+     */
+    public record Decision(Route route, double confidence, String reason) {
+    }
+
+    private final ModelRouterConfig config;
+
+    public ModelRouter(ModelRouterConfig config) {
+        this.config = config;
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * @param message 用户问题
+     * @param historyMessages 记忆中已有的对话消息数（不含系统提示词）
+     */
+    public Decision route(String message, int historyMessages) {
+        if (!config.isEnabled()) {
+            return new Decision(Route.MAIN, 0, "disabled");
+        }
+        String text = message == null ? "" : message.trim();
+        if (historyMessages < config.getMinHistoryMessages()) {
+            return new Decision(Route.MAIN, 0, "first_turn");
+        }
+        if (containsAny(text, config.getMainKeywords())) {
+            return new Decision(Route.MAIN, 0, "tool");
+        }
+        int maxChars = Math.max(1, config.getMaxSmallChars());
+        if (text.length() > maxChars) {
+            return new Decision(Route.MAIN, 0, "length");
+        }
+        double confidence = 0.4 + 0.3 * (1 - (double) text.length() / maxChars);
+        if (containsAny(text, config.getSmallKeywords())) {
+            confidence += 0.3;
+        }
+        confidence = Math.min(1, confidence);
+        if (confidence < config.getConfidenceThreshold()) {
+            return new Decision(Route.MAIN, confidence, "low_confidence");
+        }
+        return new Decision(Route.SMALL, confidence, "simple");
+    }
+
+    private static boolean containsAny(String text, List<String> keywords) {
+        if (keywords == null) {
+            return false;
+        }
+        for (String keyword : keywords) {
+            if (!keyword.isEmpty() && text.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -21,6 +21,7 @@ import java.util.concurrent.TimeUnit;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.example.aitourism.service.AbTestService;
+import com.example.aitourism.service.SingleFlight;
 import com.example.aitourism.monitor.MonitorContextHolder;
 import com.example.aitourism.monitor.MonitorContext;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,8 +42,14 @@ public class WeatherTool extends BaseTool {
     
     @Autowired
     private AbTestService abTestService;
+
+    @Autowired
+    private SingleFlight singleFlight;
     
 
+    // 共享 OkHttpClient（连接池与调度器），不再每次调用都新建；虚拟线程模式下大量并发工具调用也只复用这一套连接
+    private static final OkHttpClient HTTP_CLIENT = new OkHttpClient();
+
     // 使用 Caffeine 做 5 分钟本地缓存，防止同参数重复外调
     private static final Cache<String, String> weatherCache = Caffeine.newBuilder()
             .expireAfterWrite(5, TimeUnit.MINUTES)
@@ -117,87 +124,101 @@ public class WeatherTool extends BaseTool {
         if(dayCount > 16) dayCount=16;
 
         try {
+            // 相同城市与天数的并发查询只请求一次外部接口
+            final int days = dayCount;
+            String resultText = singleFlight.callShared("weather", cityName + "|" + days,
+                    () -> fetchForecast(cityName, days));
+            log.info("获取天气数据成功: {}", resultText);
+            
+            // 只有在使用缓存时才存储到缓存中
+            if (shouldUseCache) {
+                weatherCache.put(cacheKey, resultText);
+            }
+            
+            // 记录缓存未命中性能数据
+            Duration responseTime = Duration.between(startTime, Instant.now());
+            abTestService.recordToolPerformance(userId, sessionId, "weatherForecast", responseTime, false);
+            
+            return resultText;
+        } catch (WeatherUnavailableException e) {
+            return e.getMessage();
+        } catch (Exception e) {
+            log.error("获取天气数据时发生异常: {}", e.getMessage(), e);
+            return "获取天气数据时发生错误，请忽略此错误";
+        }
+    }
 
-            double[] cityLatLon = encode(cityName);  // 获取经纬度
-            if(cityLatLon==null){
-                return "获取经纬度报错。";
+    // 调用外部接口获取天气预报；失败时抛出异常，避免把错误提示作为结果共享给其他调用方
+    private String fetchForecast(String cityName, int dayCount) throws Exception {
+        double[] cityLatLon = encode(cityName);  // 获取经纬度
+        if(cityLatLon==null){
+            throw new WeatherUnavailableException("获取经纬度报错。");
+        }
+
+        // 计算开始与结束日期
+        LocalDate today = LocalDate.now();
+        LocalDate endDate = today.plusDays(dayCount - 1);
+        String startDate = today.toString();
+        String endDateStr = endDate.toString();
+
+        // 构建 API URL
+        String url = String.format(
+                "%s?latitude=%s&longitude=%s&start_date=%s&end_date=%s&daily=temperature_2m_min,temperature_2m_max,temperature_2m_mean,precipitation_sum,snowfall_sum,windspeed_10m_max,windgusts_10m_max,winddirection_10m_dominant&timezone=auto",
+                OPEN_METEO_API_URL, cityLatLon[0], cityLatLon[1], startDate, endDateStr
+        );
+//        System.out.println("请求URL：" + url);
+
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+
+        // 发送HTTP请求
+        try (Response response = HTTP_CLIENT.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                log.error("Open-Meteo API 调用失败："+response);
+                throw new WeatherUnavailableException("暂时无法获取天气数据，请忽略此错误");
             }
 
-            // 计算开始与结束日期
-            LocalDate today = LocalDate.now();
-            LocalDate endDate = today.plusDays(dayCount - 1);
-            String startDate = today.toString();
-            String endDateStr = endDate.toString();
-
-            // 构建 API URL
-            String url = String.format(
-                    "%s?latitude=%s&longitude=%s&start_date=%s&end_date=%s&daily=temperature_2m_min,temperature_2m_max,temperature_2m_mean,precipitation_sum,snowfall_sum,windspeed_10m_max,windgusts_10m_max,winddirection_10m_dominant&timezone=auto",
-                    OPEN_METEO_API_URL, cityLatLon[0], cityLatLon[1], startDate, endDateStr
-            );
-//            System.out.println("请求URL：" + url);
-
-            OkHttpClient client = new OkHttpClient();
-            Request request = new Request.Builder()
-                    .url(url)
-                    .build();
-
-            // 发送HTTP请求
-            try (Response response = client.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    log.error("Open-Meteo API 调用失败："+response);
-                    return "暂时无法获取天气数据，请忽略此错误";
-                }
-
-                // 解析 JSON
-                String jsonStr = response.body().string();
-                JSONObject result = JSONUtil.parseObj(jsonStr);
-                JSONObject daily = result.getJSONObject("daily");
-
-                JSONArray times = daily.getJSONArray("time");
-                JSONArray tMin = daily.getJSONArray("temperature_2m_min");
-                JSONArray tMax = daily.getJSONArray("temperature_2m_max");
-                JSONArray tMean = daily.getJSONArray("temperature_2m_mean");
-                JSONArray precip = daily.getJSONArray("precipitation_sum");
-                JSONArray snow = daily.getJSONArray("snowfall_sum");
-                JSONArray windMax = daily.getJSONArray("windspeed_10m_max");
-                JSONArray gustMax = daily.getJSONArray("windgusts_10m_max");
-                JSONArray windDir = daily.getJSONArray("winddirection_10m_dominant");
-
-                JSONArray resultArray = new JSONArray();
-
-                for (int i = 0; i < times.size(); i++) {
-                    JSONObject dayWeather = new JSONObject();
-                    dayWeather.put("日期", times.getStr(i));
-                    dayWeather.put("最低温(℃)", String.valueOf(tMin.getDouble(i)));
-                    dayWeather.put("最高温(℃)", String.valueOf(tMax.getDouble(i)));
-                    dayWeather.put("平均温(℃)", String.valueOf(tMean.getDouble(i)));
-                    dayWeather.put("降水量(mm)", String.valueOf(precip.getDouble(i)));
-                    dayWeather.put("降雪量(cm)", String.valueOf(snow.getDouble(i)));
-                    dayWeather.put("最大风速(m/s)", String.valueOf(windMax.getDouble(i)));
-                    dayWeather.put("最大阵风(m/s)", String.valueOf(gustMax.getDouble(i)));
-                    dayWeather.put("主导风向(°)", String.valueOf(windDir.getDouble(i)));
-
-                    resultArray.add(dayWeather);
-                }
-
-                String resultText = resultArray.toString();
-                log.info("获取天气数据成功: {}", resultText);
-                
-                // 只有在使用缓存时才存储到缓存中
-                if (shouldUseCache) {
-                    weatherCache.put(cacheKey, resultText);
-                }
-                
-                // 记录缓存未命中性能数据
-                Duration responseTime = Duration.between(startTime, Instant.now());
-                abTestService.recordToolPerformance(userId, sessionId, "weatherForecast", responseTime, false);
-                
-                return resultText;
+            // 解析 JSON
+            String jsonStr = response.body().string();
+            JSONObject result = JSONUtil.parseObj(jsonStr);
+            JSONObject daily = result.getJSONObject("daily");
+
+            JSONArray times = daily.getJSONArray("time");
+            JSONArray tMin = daily.getJSONArray("temperature_2m_min");
+            JSONArray tMax = daily.getJSONArray("temperature_2m_max");
+            JSONArray tMean = daily.getJSONArray("temperature_2m_mean");
+            JSONArray precip = daily.getJSONArray("precipitation_sum");
+            JSONArray snow = daily.getJSONArray("snowfall_sum");
+            JSONArray windMax = daily.getJSONArray("windspeed_10m_max");
+            JSONArray gustMax = daily.getJSONArray("windgusts_10m_max");
+            JSONArray windDir = daily.getJSONArray("winddirection_10m_dominant");
+
+            JSONArray resultArray = new JSONArray();
+
+            for (int i = 0; i < times.size(); i++) {
+                JSONObject dayWeather = new JSONObject();
+                dayWeather.put("日期", times.getStr(i));
+                dayWeather.put("最低温(℃)", String.valueOf(tMin.getDouble(i)));
+                dayWeather.put("最高温(℃)", String.valueOf(tMax.getDouble(i)));
+                dayWeather.put("平均温(℃)", String.valueOf(tMean.getDouble(i)));
+                dayWeather.put("降水量(mm)", String.valueOf(precip.getDouble(i)));
+                dayWeather.put("降雪量(cm)", String.valueOf(snow.getDouble(i)));
+                dayWeather.put("最大风速(m/s)", String.valueOf(windMax.getDouble(i)));
+                dayWeather.put("最大阵风(m/s)", String.valueOf(gustMax.getDouble(i)));
+                dayWeather.put("主导风向(°)", String.valueOf(windDir.getDouble(i)));
+
+                resultArray.add(dayWeather);
             }
 
-        } catch (Exception e) {
-            log.error("获取天气数据时发生异常: {}", e.getMessage(), e);
-            return "获取天气数据时发生错误，请忽略此错误";
+            return resultArray.toString();
+        }
+    }
+
+    // 可直接返回给模型的天气获取失败提示
+    private static class WeatherUnavailableException extends Exception {
+        WeatherUnavailableException(String message) {
+            super(message);
         }
     }
 
@@ -12,9 +12,6 @@ import java.util.regex.Pattern;
 @Slf4j
 public class McpResultTruncator {
     
-    // 用于检测中文字符的正则表达式
-    private static final Pattern CHINESE_PATTERN = Pattern.compile("[\\u4e00-\\u9fa5]");
-    
     // 用于检测自然断点的正则表达式（句号、问号、感叹号、换行符等）
     private static final Pattern NATURAL_BREAK_PATTERN = Pattern.compile("[。！？\\.\\!\\?]");
     
@@ -112,37 +109,6 @@ public class McpResultTruncator {
         }
     }
     
-    /**
-     * 估算文本的token数量（粗略估算）
-     * 中文字符按1个token计算，英文单词按平均长度估算
-     * @param text 文本
-     * @return 估算的token数量
-     */
-    public static int estimateTokenCount(String text) {
-        if (text == null) return 0;
-        
-        int chineseChars = 0;
-        int englishWords = 0;
-        
-        // 统计中文字符
-        for (char c : text.toCharArray()) {
-            if (CHINESE_PATTERN.matcher(String.valueOf(c)).matches()) {
-                chineseChars++;
-            }
-        }
-        
-        // 统计英文单词（简单按空格分割）
-        String[] words = text.replaceAll("[\\u4e00-\\u9fa5]", "").split("\\s+");
-        for (String word : words) {
-            if (!word.trim().isEmpty()) {
-                englishWords++;
-            }
-        }
-        
-        // 粗略估算：中文字符1个token，英文单词平均1.3个token
-        return chineseChars + (int)(englishWords * 1.3);
-    }
-    
     /**
      * 检查文本是否需要裁剪
      * @param text 文本
@@ -1,5 +1,6 @@
 package com.example.aitourism.ai.truncator;
 
+import com.example.aitourism.ai.model.TokenCounter;
 import com.example.aitourism.ai.truncator.McpResultTruncator;
 import com.example.aitourism.service.AbTestService;
 import com.example.aitourism.monitor.MonitorContextHolder;
@@ -83,7 +84,7 @@ public class TruncatingToolProvider implements ToolProvider {
                     
                     if (!shouldTruncate) {
                         // A/B测试：不使用裁剪，记录原始Token数
-                        long originalTokens = estimateTokenCount(text);
+                        long originalTokens = TokenCounter.count(text);
                         if (abTestService != null) {
                             try {
                                 abTestService.recordTruncationPerformance(userId, sessionId, spec.name(), 
@@ -103,8 +104,8 @@ public class TruncatingToolProvider implements ToolProvider {
                     String truncatedText = McpResultTruncator.truncateResult(text, limit);
                     
                     // 记录裁剪效果
-                    long beforeTokens = estimateTokenCount(text);
-                    long afterTokens = estimateTokenCount(truncatedText);
+                    long beforeTokens = TokenCounter.count(text);
+                    long afterTokens = TokenCounter.count(truncatedText);
                     if (abTestService != null) {
                         try {
                             abTestService.recordTruncationPerformance(userId, sessionId, spec.name(), 
@@ -121,21 +122,6 @@ public class TruncatingToolProvider implements ToolProvider {
         return builder.build();
     }
     
-    /**
-     * 估算文本的Token数量（简单估算：1个中文字符≈1.5个Token，1个英文字符≈0.75个Token）
-     */
-    private long estimateTokenCount(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
-        }
-        
-        // 简单估算：中文字符数 * 1.5 + 英文字符数 * 0.75
-        long chineseChars = text.chars().filter(ch -> ch >= 0x4E00 && ch <= 0x9FFF).count();
-        long otherChars = text.length() - chineseChars;
-        
-        return Math.round(chineseChars * 1.5 + otherChars * 0.75);
-    }
-    
     // Setter方法，用于Spring依赖注入
     public void setMcpClients(List<McpClient> mcpClients) {
         this.mcpClients = mcpClients != null ? new ArrayList<>(mcpClients) : new ArrayList<>();
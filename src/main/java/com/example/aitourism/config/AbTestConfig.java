@@ -28,6 +28,11 @@ public class AbTestConfig {
      */
     private TruncationAbTest truncation = new TruncationAbTest();
     
+    /**
+     * 首轮对话响应缓存A/B测试配置
+     */
+    private ResponseCacheAbTest responseCache = new ResponseCacheAbTest();
+    
     @Data
     public static class ToolCacheAbTest {
         /**
@@ -86,5 +91,37 @@ public class AbTestConfig {
          */
         private double noTruncationTestRatio = 0.05;
     }
+    
+    @Data
+    public static class ResponseCacheAbTest {
+        /**
+         * 是否启用首轮对话响应缓存（默认关闭，需显式开启）
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 缓存过期时间（秒）
+         */
+        private long ttlSeconds = 86400;
+        
+        /**
+         * 系统提示词版本号，修改提示词后递增，使旧缓存自动失效
+         */
+        private String systemPromptVersion = "v1";
+        
+        /**
+         * 命中时回放的每帧字符数
+         */
+        private int replayChunkChars = 8;
+        
+        /**
+         * 命中时回放的帧间隔（毫秒）
+         */
+        private long replayIntervalMs = 20;
+        
+        /**
+         * 不使用缓存的测试比例（用于对比命中与未命中的端到端耗时）
+         */
+        private double noCacheTestRatio = 0.0;
+    }
 }
-
@@ -0,0 +1,49 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自适应并发限制配置类
+ * 根据实测的首 token 耗时与模型调用错误自动调整 /chat-stream 的并发上限（梯度 + AIMD），
+ * 上游变慢时收缩上限，超出的请求在写库与标题生成之前直接拒绝
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.adaptive-limit")
+@Data
+public class AdaptiveLimitConfig {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = false;
+
+    /**
+     * 初始 / 最小 / 最大并发上限
+     */
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 200;
+
+    /**
+     * 允许的延迟放大倍数：短期首 token 耗时不超过长期基线的该倍数时不收缩
+     */
+    private double tolerance = 1.5;
+
+    /**
+     * 模型调用出错时上限的乘性下降比例
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 每次调整向新上限靠拢的比例（0~1），越小越平滑
+     */
+    private double smoothing = 0.2;
+
+    /**
+     * 短期 / 长期首 token 耗时的指数平均窗口（样本数）
+     */
+    private int shortWindow = 10;
+    private int longWindow = 600;
+}
@@ -0,0 +1,60 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 对话准入控制配置类
+ * 按模型端点限制同时进行的流式对话数，超出的请求按用户加权公平排队（ROOT 用户权重更高），
+ * 排队时先向前端推送 queued 事件；队列已满或等待超时时拒绝请求
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.admission")
+@Data
+public class AdmissionConfig {
+
+    /**
+     * 是否启用（关闭时不限制并发）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每个模型端点默认的最大并发流式对话数
+     */
+    private int maxConcurrent = 32;
+
+    /**
+     * 按端点（host:port）单独指定的并发上限
+     */
+    private Map<String, Integer> endpointLimits = new HashMap<>();
+
+    /**
+     * 每个端点的排队上限，队列满时直接拒绝
+     */
+    private int queueCapacity = 200;
+
+    /**
+     * 单个用户在同一端点最多排队的请求数
+     */
+    private int perUserQueueLimit = 3;
+
+    /**
+     * 最长排队时间（秒），超时拒绝
+     */
+    private int maxWaitSeconds = 30;
+
+    /**
+     * 普通用户与 ROOT 用户的调度权重，权重越高在公平队列中越靠前
+     */
+    private int defaultWeight = 1;
+    private int rootWeight = 4;
+
+    /**
+     * 用户角色的本地缓存时间（秒）
+     */
+    private int roleCacheSeconds = 60;
+}
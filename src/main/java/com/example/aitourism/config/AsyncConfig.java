@@ -0,0 +1,60 @@
+package com.example.aitourism.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 异步任务线程池配置
+ * 会话标题生成等与主流式对话并发执行的小模型调用，统一使用独立线程池，不再占用 ForkJoin 公共池
+ * 开启 spring.threads.virtual.enabled 后改为每个任务一个虚拟线程，并发数由 virtual-concurrency-limit 约束
+ */
+@Configuration
+@Slf4j
+public class AsyncConfig {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${ai.task-executor.core-size:4}")
+    private int coreSize;
+
+    @Value("${ai.task-executor.max-size:16}")
+    private int maxSize;
+
+    @Value("${ai.task-executor.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${ai.task-executor.virtual-concurrency-limit:200}")
+    private int virtualConcurrencyLimit;
+
+    @Bean(name = "aiTaskExecutor")
+    public TaskExecutor aiTaskExecutor() {
+        if (virtualThreads) {
+            // 虚拟线程无需池化；达到并发上限时提交方会阻塞等待（提交方本身也是虚拟线程，代价很低）
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("ai-task-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(virtualConcurrencyLimit);
+            executor.setTaskTerminationTimeout(10_000);
+            log.info("aiTaskExecutor 使用虚拟线程，并发上限: {}", virtualConcurrencyLimit);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ai-task-");
+        // 队列满时直接拒绝，由调用方降级处理（例如保留占位标题）
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话记忆本地缓存（L1）配置类
+ * 在 Redis 之前缓存反序列化后的消息列表，多节点之间通过 Redis pub/sub 广播失效
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.memory.l1")
+@Data
+public class ChatMemoryCacheConfig {
+
+    /**
+     * 是否启用本地缓存（关闭时每次读取都访问 Redis）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 缓存总权重上限（按消息编码后的字节数计算）
+     */
+    private long maxWeight = 64L * 1024 * 1024;
+
+    /**
+     * 访问后过期时间（秒）
+     */
+    private long expireAfterAccessSeconds = 600;
+
+    /**
+     * 失效广播频道
+     */
+    private String channel = "ai:memory:invalidate";
+
+    /**
+     * 心跳发送间隔（毫秒），节点通过收到自己的心跳确认订阅仍然有效
+     */
+    private long heartbeatIntervalMs = 5000;
+
+    /**
+     * 超过该时间未收到心跳即认为失效通道中断，退化为仅使用 Redis（毫秒）
+     */
+    private long heartbeatTimeoutMs = 15000;
+}
@@ -0,0 +1,30 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话记忆序列化格式配置类
+ * 控制写入 Redis 的每条消息使用 JSON 还是紧凑二进制格式；读取时自动识别两种格式
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.memory.codec")
+@Data
+public class ChatMemoryCodecConfig {
+
+    /**
+     * 写入格式：json（与 LangChain4j 序列化结果一致）或 binary（带版本头的紧凑二进制）
+     */
+    private String format = "json";
+
+    /**
+     * 二进制格式下，消息体超过该字节数时使用 deflate 压缩
+     */
+    private int compressionThreshold = 512;
+
+    /**
+     * deflate 压缩级别（1 最快，9 压缩率最高）
+     */
+    private int compressionLevel = 1;
+}
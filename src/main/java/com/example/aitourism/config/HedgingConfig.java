@@ -0,0 +1,68 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 模型端点对冲请求配置类
+ * 主端点在按其首 token 耗时分位数计算出的期限内没有返回首个 token 时，向备用端点发出对冲请求，
+ * 先产出 token 的一方胜出，另一方的输出被丢弃；主端点报错时直接切换到备用端点
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.hedging")
+@Data
+public class HedgingConfig {
+
+    /**
+     * 是否启用（关闭时只使用主端点）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 备用端点地址，为空时使用小模型（openai-small）的端点
+     */
+    private String secondaryBaseUrl = "";
+
+    /**
+     * 备用端点的 API Key，为空时与备用端点对应的模型配置一致
+     */
+    private String secondaryApiKey = "";
+
+    /**
+     * 备用端点的模型名，为空时与主模型一致（使用小模型端点时为小模型名）
+     */
+    private String secondaryModelName = "";
+
+    /**
+     * 对冲期限取主端点首 token 耗时的该分位数
+     */
+    private double percentile = 0.95;
+
+    /**
+     * 计算分位数使用的最近样本数
+     */
+    private int sampleSize = 200;
+
+    /**
+     * 样本不足时使用的对冲期限（毫秒）
+     */
+    private long initialDelayMs = 3000;
+
+    /**
+     * 对冲期限的下限与上限（毫秒）
+     */
+    private long minDelayMs = 500;
+    private long maxDelayMs = 10000;
+
+    /**
+     * 对冲预算：每个请求积累的额度，发出一次对冲消耗 1，限制对冲请求占总请求的比例
+     */
+    private double budgetRatio = 0.1;
+
+    /**
+     * 连续失败达到该次数的端点在 unhealthySeconds 内降级，不再作为首选端点
+     */
+    private int failureThreshold = 3;
+    private int unhealthySeconds = 30;
+}
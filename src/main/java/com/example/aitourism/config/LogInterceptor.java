@@ -1,5 +1,6 @@
 package com.example.aitourism.config;
 
+import com.example.aitourism.util.RequestUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
@@ -8,7 +9,6 @@ import org.slf4j.MDC;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.util.Enumeration;
 import java.util.UUID;
 
 @Component
@@ -18,13 +18,22 @@ public class LogInterceptor implements HandlerInterceptor {
     // 创建Logger实例，参数为当前类，用于标识日志来源
     // 使用LoggerFactory获取Logger，这是SLF4J的标准做法
     private static final Logger logger = LoggerFactory.getLogger(LogInterceptor.class);
-    private static final ThreadLocal<Long> startTimeThreadLocal = new ThreadLocal<>();
+    // 请求开始时间放在 request 属性中而不是 ThreadLocal：SSE 等异步请求的 afterCompletion 可能在另一个线程执行，
+    // 虚拟线程模式下每个请求一个线程，ThreadLocal 也无法复用
+    private static final String START_TIME_ATTRIBUTE = LogInterceptor.class.getName() + ".startTime";
+
+    // 可信代理列表与限流共用，访问日志中的客户端 IP 与限流主体一致
+    private final RateLimitConfig rateLimitConfig;
+
+    public LogInterceptor(RateLimitConfig rateLimitConfig) {
+        this.rateLimitConfig = rateLimitConfig;
+    }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
 //        System.out.println("Interceptor 日志 -> " + request.getMethod() + " " + request.getRequestURI());
         // 存储请求开始时间
-        startTimeThreadLocal.set(System.currentTimeMillis());
+        request.setAttribute(START_TIME_ATTRIBUTE, System.currentTimeMillis());
 
         // 生成唯一请求ID，用于追踪整个请求链路
         String requestId = UUID.randomUUID().toString();
@@ -38,7 +47,7 @@ public class LogInterceptor implements HandlerInterceptor {
             logger.info("[{}] {}, Client IP: {}",
                     request.getMethod(),
                     request.getRequestURI(),
-                    getClientIp(request));
+                    RequestUtils.getClientIp(request, rateLimitConfig.getTrustedProxies()));
         }
 
         // 返回true表示继续流程，返回false表示中断流程
@@ -48,8 +57,8 @@ public class LogInterceptor implements HandlerInterceptor {
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
 
-        Long startTime = startTimeThreadLocal.get();
-        if (startTime != null) {
+        Object startAttr = request.getAttribute(START_TIME_ATTRIBUTE);
+        if (startAttr instanceof Long startTime) {
             // 计算该请求花费的时间
             long costTime = System.currentTimeMillis() - startTime;
 
@@ -65,37 +74,10 @@ public class LogInterceptor implements HandlerInterceptor {
                 logger.error("请求异常: " + ex.getMessage(), ex);
             }
 
-            // 清理ThreadLocal，防止内存泄漏
-            startTimeThreadLocal.remove();
+            request.removeAttribute(START_TIME_ATTRIBUTE);
             // 清理MDC中的请求ID
             MDC.remove("traceId");
 
         }
     }
-
-    /**
-     * 获取客户端真实IP地址
-     * @param request HttpServletRequest对象
-     * @return 客户端IP地址
-     */
-    private String getClientIp(HttpServletRequest request) {
-        // 尝试从各种可能的请求头中获取客户端真实IP
-        String ip = request.getHeader("X-Forwarded-For");
-        if (ip == null || ip.length() == 0 || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("Proxy-Client-IP");
-        }
-        if (ip == null || ip.length() == 0 || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("WL-Proxy-Client-IP");
-        }
-        if (ip == null || ip.length() == 0 || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_CLIENT_IP");
-        }
-        if (ip == null || ip.length() == 0 || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_X_FORWARDED_FOR");
-        }
-        if (ip == null || ip.length() == 0 || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getRemoteAddr();
-        }
-        return ip;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话记忆预热配置类
+ * 用户登录、查看会话列表或历史时，提前把最近会话的记忆窗口从 MySQL 回填到 Redis 与本地缓存，
+ * 让第一条消息不再在请求路径上回源。预热只使用独立的小线程池，并受速率、冷却时间与在途请求数约束
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.memory.prewarm")
+@Data
+public class MemoryPrewarmConfig {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = false;
+
+    /**
+     * 登录或查看会话列表时预热的最近会话数
+     */
+    private int sessionsPerUser = 3;
+
+    /**
+     * 同一用户、同一会话在冷却时间内只预热一次（秒）
+     */
+    private int cooldownSeconds = 300;
+
+    /**
+     * 预热线程数
+     */
+    private int concurrency = 2;
+
+    /**
+     * 排队等待的预热任务上限，超出时直接丢弃
+     */
+    private int queueCapacity = 200;
+
+    /**
+     * 每秒最多预热的会话数
+     */
+    private int maxSessionsPerSecond = 20;
+
+    /**
+     * 在途的模型请求数达到该值时暂停预热，优先保障实时对话
+     */
+    private int maxLiveInFlight = 32;
+}
@@ -0,0 +1,45 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 聊天消息异步批量写入配置类
+ * 控制 write-behind 写入器的批大小、刷新间隔、队列容量与背压策略
+ */
+@Component
+@ConfigurationProperties(prefix = "message-writer")
+@Data
+public class MessageWriterConfig {
+
+    /**
+     * 是否启用异步批量写入（关闭时每条消息同步单条插入，与原行为一致）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 单批最大条数，攒够即提交
+     */
+    private int batchSize = 50;
+
+    /**
+     * 刷新间隔（毫秒），从批内第一条消息入队开始计时，到期即提交
+     */
+    private long flushIntervalMs = 50;
+
+    /**
+     * 待写入队列容量
+     */
+    private int queueCapacity = 2000;
+
+    /**
+     * 队列满时调用方最多等待的时间（毫秒），超时后退化为在调用线程同步插入
+     */
+    private long offerTimeoutMs = 200;
+
+    /**
+     * 应用关闭时等待队列排空的最长时间（秒）
+     */
+    private int shutdownTimeoutSeconds = 30;
+}
@@ -0,0 +1,52 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 主 / 小模型路由配置类
+ * 按问题长度、是否需要工具、历史轮次与关键词估算请求的复杂度，简单的追问与闲聊交给小模型，
+ * 判断把握不足或小模型在输出首个 token 前失败时回退到主模型
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.router")
+@Data
+public class ModelRouterConfig {
+
+    /**
+     * 是否启用（关闭时全部走主模型）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 交给小模型的问题最大字数
+     */
+    private int maxSmallChars = 40;
+
+    /**
+     * 记忆中至少有多少条对话消息才考虑小模型（首轮规划始终走主模型）
+     */
+    private int minHistoryMessages = 2;
+
+    /**
+     * 判断为简单请求的把握（0~1）达到该值才走小模型
+     */
+    private double confidenceThreshold = 0.7;
+
+    /**
+     * 需要工具或完整规划能力的关键词，命中时走主模型
+     */
+    private List<String> mainKeywords = new ArrayList<>(List.of(
+            "规划", "攻略", "行程", "路线", "几日游", "日游", "天气", "景点", "酒店", "门票", "交通", "预算"));
+
+    /**
+     * 简单追问、修改与闲聊的关键词，命中时倾向小模型
+     */
+    private List<String> smallKeywords = new ArrayList<>(List.of(
+            "换成", "改成", "改为", "替换", "去掉", "删掉", "第一天", "第二天", "第三天", "下雨",
+            "谢谢", "你好", "您好", "好的", "可以", "再见", "怎么样", "为什么"));
+}
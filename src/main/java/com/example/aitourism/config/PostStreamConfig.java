@@ -0,0 +1,55 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 流式结束后处理阶段配置类
+ * 控制AI回复入库、路线结构化抽取所使用的独立线程池、队列、重试与死信
+ */
+@Component
+@ConfigurationProperties(prefix = "post-stream")
+@Data
+public class PostStreamConfig {
+
+    /**
+     * 后处理并发线程数
+     */
+    private int concurrency = 4;
+
+    /**
+     * 等待队列容量，队列满时消息入库交给兜底线程，路线抽取进入死信
+     */
+    private int queueCapacity = 200;
+
+    /**
+     * 路线抽取失败后的最大重试次数（不含首次）
+     */
+    private int routeRetryAttempts = 2;
+
+    /**
+     * 重试退避基数（毫秒），第 n 次重试等待 n * retryBackoffMs
+     */
+    private long retryBackoffMs = 2000;
+
+    /**
+     * 死信队列保留条数（Redis 列表），超出后丢弃最早的记录
+     */
+    private int deadLetterCapacity = 100;
+
+    /**
+     * 定期重放死信的间隔（毫秒），每次最多取出 deadLetterCapacity 条
+     */
+    private long deadLetterReplayIntervalMs = 600000;
+
+    /**
+     * 单条死信最多重放次数，超出后丢弃
+     */
+    private int deadLetterReplayLimit = 3;
+
+    /**
+     * 应用关闭时等待队列排空的最长时间（秒）
+     */
+    private int shutdownTimeoutSeconds = 30;
+}
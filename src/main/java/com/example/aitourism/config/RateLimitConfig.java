@@ -0,0 +1,80 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 接口限流配置类
+ * 基于 Redis 令牌桶（一次 Lua 往返完成补充与扣减）按用户限流，未登录的请求按客户端 IP 限流；
+ * 每个规则对应一个接口路径，可按角色单独指定容量与补充速率
+ */
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+@Data
+public class RateLimitConfig {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = false;
+
+    /**
+     * 令牌桶在 Redis 中的键前缀
+     */
+    private String keyPrefix = "ai:rate-limit:";
+
+    /**
+     * 本地预取令牌的有效期（毫秒），过期未用完的令牌作废，限制多节点下的偏差
+     */
+    private long prefetchTtlMs = 1000;
+
+    /**
+     * 可信反向代理的 IP 或 CIDR 网段；只有请求来自这些地址时才从 X-Forwarded-For 解析客户端 IP，
+     * 为空时一律使用 TCP 对端地址（访问日志同样使用这一列表）
+     */
+    private List<String> trustedProxies = new ArrayList<>();
+
+    /**
+     * 规则名 -> 规则
+     */
+    private Map<String, Rule> rules = new LinkedHashMap<>();
+
+    @Data
+    public static class Limit {
+
+        /**
+         * 桶容量（允许的突发请求数）
+         */
+        private int capacity = 10;
+
+        /**
+         * 每分钟补充的令牌数
+         */
+        private double refillPerMinute = 20;
+
+        /**
+         * 每次访问 Redis 预取的令牌数，多出的令牌留在本地，后续请求不再访问 Redis（1 表示不预取）
+         */
+        private int prefetch = 1;
+    }
+
+    @Data
+    public static class Rule extends Limit {
+
+        /**
+         * 接口路径（精确匹配）
+         */
+        private String path;
+
+        /**
+         * 按角色覆盖的限额，用户具有多个角色时取第一个匹配的
+         */
+        private Map<String, Limit> roles = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.aitourism.config;
+
+import cn.dev33.satoken.stp.StpUtil;
+import com.example.aitourism.dto.BaseResponse;
+import com.example.aitourism.service.RateLimiter;
+import com.example.aitourism.util.Constants;
+import com.example.aitourism.util.RequestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 接口限流拦截器
+ * 已登录用户按用户ID限流，未登录的请求（登录、注册）按客户端 IP 限流（只在来自可信代理时采信 X-Forwarded-For）；
+ * 超出限额时返回 HTTP 429 与统一响应体，并通过 Retry-After 告知重试等待时间
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimiter rateLimiter;
+    private final RateLimitConfig config;
+    private final ObjectMapper objectMapper;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter, RateLimitConfig config, ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.config = config;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Object loginId = StpUtil.getLoginIdDefaultNull();
+        RateLimiter.Decision decision = rateLimiter.check(path,
+                loginId == null ? null : String.valueOf(loginId),
+                RequestUtils.getClientIp(request, config.getTrustedProxies()));
+        if (decision.allowed()) {
+            return true;
+        }
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, (decision.retryAfterMs() + 999) / 1000)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getWriter(),
+                BaseResponse.error(Constants.ERROR_CODE_TOO_MANY_REQUESTS, "请求过于频繁，请稍后重试"));
+        return false;
+    }
+}
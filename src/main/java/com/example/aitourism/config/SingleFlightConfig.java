@@ -0,0 +1,53 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 相同请求合并（single-flight）配置类
+ * 同一时刻指纹相同的昂贵调用只发起一次，其余调用方共享结果；可选通过 Redis 锁跨节点合并
+ */
+@Component
+@ConfigurationProperties(prefix = "single-flight")
+@Data
+public class SingleFlightConfig {
+
+    /**
+     * 是否启用请求合并（关闭时每次调用都直接执行）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 同步合并时等待在途调用结果的最长时间（毫秒），超时后调用方自行执行，避免执行者卡住时所有调用方一起挂起
+     */
+    private long waitTimeoutMs = 60000;
+
+    /**
+     * 跨节点合并配置
+     */
+    private Redis redis = new Redis();
+
+    @Data
+    public static class Redis {
+        /**
+         * 是否通过 Redis 锁跨节点合并（仅对返回字符串的调用生效）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 锁过期时间（毫秒），应大于单次调用的最长耗时
+         */
+        private long lockTtlMs = 60000;
+
+        /**
+         * 结果保留时间（毫秒），供其他节点上等待的调用方读取
+         */
+        private long resultTtlMs = 10000;
+
+        /**
+         * 等待其他节点结果时的轮询间隔（毫秒）
+         */
+        private long pollIntervalMs = 100;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * SSE token 合并配置类
+ * 控制是否把相邻的模型 token 合并进同一个 SSE 帧，以减少小包写入与代理开销
+ */
+@Component
+@ConfigurationProperties(prefix = "sse.coalescing")
+@Data
+public class SseCoalescingConfig {
+
+    /**
+     * 是否启用 token 合并（关闭时每个 token 独立成帧，与原行为一致）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 合并时间窗口（毫秒），窗口内到达的 token 合并为一帧；建议 20~50
+     */
+    private long windowMs = 30;
+
+    /**
+     * 单帧最大字节数（UTF-8），待发送内容达到该值时立即发送，不再等待窗口结束
+     */
+    private int maxBytes = 512;
+}
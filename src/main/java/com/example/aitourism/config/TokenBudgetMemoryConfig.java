@@ -0,0 +1,36 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按 Token 预算管理的对话记忆配置类
+ * 免费 API 的输入上限为 4096 token，记忆按 token 而不是按条数控制；
+ * 超出预算时把最早的若干轮对话交给小模型异步折叠为滚动摘要
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.memory.token-budget")
+@Data
+public class TokenBudgetMemoryConfig {
+
+    /**
+     * 是否启用（关闭时使用按条数滑动的 MessageWindowChatMemory）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 记忆（含系统提示词与摘要）的 token 预算，需为输出、工具定义与本轮工具结果留出余量
+     */
+    private int maxTokens = 2500;
+
+    /**
+     * 是否把被淘汰的对话折叠为摘要（关闭时直接丢弃）
+     */
+    private boolean summaryEnabled = true;
+
+    /**
+     * 摘要的最大字数
+     */
+    private int summaryMaxChars = 300;
+}
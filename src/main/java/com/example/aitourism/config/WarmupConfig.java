@@ -0,0 +1,46 @@
+package com.example.aitourism.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动预热配置类
+ * 服务报告就绪前依次预热模型端点、AI 服务、工具端点、热点代码路径与连接池/缓存，
+ * 就绪状态通过 actuator 的 warmup 健康指标暴露，负载均衡只把流量转发到已预热的节点
+ */
+@Component
+@ConfigurationProperties(prefix = "warmup")
+@Data
+public class WarmupConfig {
+
+    /**
+     * 是否启用（关闭时启动后立即就绪）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 预热整体的最长等待时间（秒），超时后不再阻塞就绪，剩余步骤在后台继续
+     */
+    private int timeoutSeconds = 60;
+
+    /**
+     * 单个外部端点（模型、MCP）的预热超时时间（秒）
+     */
+    private int endpointTimeoutSeconds = 10;
+
+    /**
+     * 是否预热 MCP 工具端点
+     */
+    private boolean toolEndpointsEnabled = true;
+
+    /**
+     * 热点代码（SSE 编码、记忆编解码、token 计数）的预热迭代次数，用于触发 JIT 编译
+     */
+    private int jitIterations = 5000;
+
+    /**
+     * 预先回填记忆的最近活跃会话数
+     */
+    private int recentSessions = 20;
+}
@@ -8,10 +8,12 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class WebConfig implements WebMvcConfigurer {
 
     private final LogInterceptor logInterceptor;
+    private final RateLimitInterceptor rateLimitInterceptor;
 
     // 通过构造器注入拦截器
-    public WebConfig(LogInterceptor logInterceptor) {
+    public WebConfig(LogInterceptor logInterceptor, RateLimitInterceptor rateLimitInterceptor) {
         this.logInterceptor = logInterceptor;
+        this.rateLimitInterceptor = rateLimitInterceptor;
     }
 
     @Override
@@ -20,6 +22,10 @@ public class WebConfig implements WebMvcConfigurer {
         registry.addInterceptor(logInterceptor)
                 .addPathPatterns("/**"); // 拦截所有路径
 
+        // 注册限流拦截器（在日志拦截器之后，被拒绝的请求同样有访问日志），按规则中的路径限流
+        registry.addInterceptor(rateLimitInterceptor)
+                .addPathPatterns("/**");
+
         // 如果您还有其他拦截器，可以继续添加
         // registry.addInterceptor(otherInterceptor)...
     }
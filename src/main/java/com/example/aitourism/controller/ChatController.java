@@ -2,11 +2,14 @@ package com.example.aitourism.controller;
 
 import com.example.aitourism.dto.*;
 import com.example.aitourism.dto.chat.*;
+import com.example.aitourism.exception.AdmissionRejectedException;
 import com.example.aitourism.exception.InputValidationException;
 import com.example.aitourism.service.ChatService;
 import com.example.aitourism.service.impl.MemoryChatServiceImpl;
+import com.example.aitourism.sse.SseFrameEncoder;
 import com.example.aitourism.util.Constants;
 
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import lombok.extern.slf4j.Slf4j;
 import cn.dev33.satoken.annotation.SaCheckLogin;
@@ -19,10 +22,12 @@ import reactor.core.publisher.Flux;
 public class ChatController {
 
     private final ChatService chatService;
+    private final SseFrameEncoder sseFrameEncoder;
 
 
-    public ChatController(MemoryChatServiceImpl chatService) {
+    public ChatController(MemoryChatServiceImpl chatService, SseFrameEncoder sseFrameEncoder) {
         this.chatService = chatService;
+        this.sseFrameEncoder = sseFrameEncoder;
     }
 
     /**
@@ -69,36 +74,35 @@ public class ChatController {
 
     /**
      * 发起流式对话（SSE）
+     * 服务层输出编码好的帧，这里转换为 ServerSentEvent，使 title、queued 等具名事件带有真正的 event 字段
      */
     @SaCheckLogin
     @SaCheckPermission("ai:chat")
     @PostMapping(value = "/chat-stream", produces = "text/event-stream")
-    public Flux<String> chat_stream(@RequestBody ChatRequest request) {
+    public Flux<ServerSentEvent<String>> chat_stream(@RequestBody ChatRequest request) {
+        return frames(request).map(SseFrameEncoder::toServerSentEvent);
+    }
+
+    private Flux<String> frames(ChatRequest request) {
         // 简单的参数校验（不可为空）
         if(request.getSessionId()==null){
-            return Flux.just("data: {\"choices\":[{\"index\":0,\"text\":\"缺少session_id\",\"finish_reason\":\"stop\",\"model\":\"gpt-4o-mini\"}]}\n\n");
+            return Flux.just(sseFrameEncoder.textFrame("缺少session_id"));
         }
         if(request.getMessages()==null){
-            return Flux.just("data: {\"choices\":[{\"index\":0,\"text\":\"缺少messages\",\"finish_reason\":\"stop\",\"model\":\"gpt-4o-mini\"}]}\n\n");
+            return Flux.just(sseFrameEncoder.textFrame("缺少messages"));
         }
         if(request.getUserId()==null){
-            return Flux.just("data: {\"choices\":[{\"index\":0,\"text\":\"缺少user_id\",\"finish_reason\":\"stop\",\"model\":\"gpt-4o-mini\"}]}\n\n");
+            return Flux.just(sseFrameEncoder.textFrame("缺少user_id"));
         }
         try {
             return chatService.chat(request.getSessionId(), request.getMessages(), request.getUserId(), true);
         } catch (InputValidationException e) {
-            String errEvent = String.format(
-                "data: {\"choices\":[{\"index\":0,\"text\":\"%s\",\"finish_reason\":\"%s\",\"model\":\"%s\"}]}\n\n",
-                "输入含不当内容，请修改后重试", "stop", "gpt-4o-mini"
-            );
-            return Flux.just(errEvent);
+            return Flux.just(sseFrameEncoder.textFrame("输入含不当内容，请修改后重试"));
+        } catch (AdmissionRejectedException e) {
+            return Flux.just(sseFrameEncoder.textFrame(e.getMessage()));
         } catch (Exception e) {
             log.error("聊天服务异常: {}", e.getMessage(), e);
-            String errEvent = String.format(
-                "data: {\"choices\":[{\"index\":0,\"text\":\"%s\",\"finish_reason\":\"%s\",\"model\":\"%s\"}]}\n\n",
-                "内部服务器出错，请稍后重试", "stop", "gpt-4o-mini"
-            );
-            return Flux.just(errEvent);
+            return Flux.just(sseFrameEncoder.textFrame("内部服务器出错，请稍后重试"));
         }
     }
 
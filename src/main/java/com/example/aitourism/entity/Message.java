@@ -18,6 +18,8 @@ public class Message {
     private String title;
     private LocalDateTime createTime;
     private LocalDateTime modifyTime;
+    // 自增列，同一毫秒内消息的落库顺序
+    private Long seq;
 
 
 
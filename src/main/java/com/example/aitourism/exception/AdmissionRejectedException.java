@@ -0,0 +1,11 @@
+package com.example.aitourism.exception;
+
+/**
+ * 准入拒绝异常：模型并发已满且排队队列已满或排队超时时抛出，提示用户稍后重试。
+ * 共享 HTTP 客户端等待在途名额超时时同样抛出该异常，属于可重试的繁忙，而不是服务故障。
+ */
+public class AdmissionRejectedException extends RuntimeException {
+    public AdmissionRejectedException(String message) {
+        super(message);
+    }
+}
@@ -3,6 +3,7 @@ package com.example.aitourism.mapper;
 import com.example.aitourism.entity.Message;
 import org.apache.ibatis.annotations.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -12,9 +13,35 @@ public interface ChatMessageMapper {
             "VALUES(#{msgId}, #{sessionId}, #{userName}, #{role}, #{content}, #{title})")
     int insert(Message message);
 
-    @Select("SELECT * FROM t_ai_assistant_chat_messages WHERE session_id = #{sessionId} ORDER BY create_time ASC")
+    // 显式写入创建时间：异步批量写入时以入队时间为准，消息顺序不受落库时机影响
+    // create_time 为毫秒精度（datetime(3)），同一毫秒内的消息再按自增列 seq（落库顺序）排序
+    @Insert("INSERT INTO t_ai_assistant_chat_messages(msg_id, session_id, user_name, role, content, title, create_time) " +
+            "VALUES(#{msgId}, #{sessionId}, #{userName}, #{role}, #{content}, #{title}, #{createTime})")
+    int insertWithCreateTime(Message message);
+
+    @Select("SELECT * FROM t_ai_assistant_chat_messages WHERE session_id = #{sessionId} ORDER BY create_time ASC, seq ASC")
     List<Message> findBySessionId(String sessionId);
 
+    // 只取会话最近的 limit 条消息（按时间正序返回），用于回填记忆窗口，依赖 (session_id, create_time, seq) 索引
+    @Select("SELECT * FROM (SELECT * FROM t_ai_assistant_chat_messages WHERE session_id = #{sessionId} " +
+            "ORDER BY create_time DESC, seq DESC LIMIT #{limit}) recent ORDER BY create_time ASC, seq ASC")
+    List<Message> findRecentBySessionId(@Param("sessionId") String sessionId, @Param("limit") int limit);
+
+    // 摘要折叠的分界：before 之前（含）从最近往前数第 offset+1 条用户消息，即折叠后保留的最早一轮的起点
+    @Select("SELECT * FROM t_ai_assistant_chat_messages WHERE session_id = #{sessionId} AND role = 'user' " +
+            "AND create_time <= #{before} ORDER BY create_time DESC, seq DESC LIMIT 1 OFFSET #{offset}")
+    Message findUserTurnBefore(@Param("sessionId") String sessionId, @Param("before") LocalDateTime before,
+                               @Param("offset") int offset);
+
+    // 与 findRecentBySessionId 相同，但只取分界 (fromTime, fromSeq) 及之后的消息，跳过已折叠进摘要的对话
+    @Select("SELECT * FROM (SELECT * FROM t_ai_assistant_chat_messages WHERE session_id = #{sessionId} " +
+            "AND (create_time > #{fromTime} OR (create_time = #{fromTime} AND seq >= #{fromSeq})) " +
+            "ORDER BY create_time DESC, seq DESC LIMIT #{limit}) recent ORDER BY create_time ASC, seq ASC")
+    List<Message> findRecentBySessionIdSince(@Param("sessionId") String sessionId,
+                                             @Param("fromTime") LocalDateTime fromTime,
+                                             @Param("fromSeq") long fromSeq,
+                                             @Param("limit") int limit);
+
     // 新增删除方法
     @Delete("DELETE FROM t_ai_assistant_chat_messages WHERE session_id = #{sessionId}")
     int deleteBySessionId(String sessionId);
@@ -2,13 +2,18 @@ package com.example.aitourism.monitor;
 
 import org.springframework.stereotype.Component;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.time.Duration;
+import java.util.function.Supplier;
 
 // 指标收集器
 @Component
@@ -30,6 +35,63 @@ public class AiModelMetricsCollector {
     private final ConcurrentMap<String, Timer> toolResponseTimersCache = new ConcurrentHashMap<>();  // 工具调用，在有无缓存的情况下，的响应时间
     private final ConcurrentMap<String, Timer> serviceCreationTimersCache = new ConcurrentHashMap<>();  // AI服务实例，在有无缓存下的情况下，的创建时间
     private final ConcurrentMap<String, Counter> truncationCountersCache = new ConcurrentHashMap<>();  // TODO 这个待更新
+    private final ConcurrentMap<String, Timer> assistantAcquisitionTimersCache = new ConcurrentHashMap<>();  // 获取 AI 服务实例的耗时（按模式区分）
+    private final ConcurrentMap<String, Timer> warmupStepTimersCache = new ConcurrentHashMap<>();  // 启动预热各步骤的耗时
+
+    // 主 / 小模型路由
+    private final ConcurrentMap<String, Counter> routerDecisionCountersCache = new ConcurrentHashMap<>();  // 按路由与原因区分
+    private final ConcurrentMap<String, Counter> routerFallbackCountersCache = new ConcurrentHashMap<>();  // 小模型回退主模型（按原因区分）
+    private final ConcurrentMap<String, Timer> routerLatencyTimersCache = new ConcurrentHashMap<>();  // 按最终路由区分的整轮耗时
+    private final ConcurrentMap<String, DistributionSummary> routerTokensCache = new ConcurrentHashMap<>();  // 按最终路由区分的输出 token 数
+
+    // 共享 HTTP 栈相关指标缓存
+    private final ConcurrentMap<String, Timer> rateLimitTimersCache = new ConcurrentHashMap<>();  // 按规则、结果与决策来源区分的限流决策耗时
+    private final ConcurrentMap<String, Timer> admissionWaitTimersCache = new ConcurrentHashMap<>();  // 按端点区分的排队等待时间
+    private final ConcurrentMap<String, Counter> admissionRejectedCache = new ConcurrentHashMap<>();  // 按端点与原因区分的拒绝次数
+    private final ConcurrentMap<String, Counter> hedgeCountersCache = new ConcurrentHashMap<>();  // 对冲 / 故障切换 / 预算耗尽次数
+    private final ConcurrentMap<String, Counter> hedgeWinCountersCache = new ConcurrentHashMap<>();  // 发生对冲时胜出的一方
+    private final ConcurrentMap<String, Timer> warmupRoundTripTimersCache = new ConcurrentHashMap<>();  // 启动预热时对模型端点的一次往返耗时
+    private final ConcurrentMap<String, Timer> httpHeaderTimersCache = new ConcurrentHashMap<>();  // 发出请求到收到响应头的耗时
+
+    // 流式结束后处理阶段指标缓存
+    private final ConcurrentMap<String, Timer> postStreamTimersCache = new ConcurrentHashMap<>();  // 各阶段从入队到完成的耗时
+    private final ConcurrentMap<String, Counter> postStreamCountersCache = new ConcurrentHashMap<>();  // 各阶段的执行结果计数
+
+    // 对话首 token 耗时（TTFT）指标缓存
+    private final ConcurrentMap<String, Timer> firstTokenTimersCache = new ConcurrentHashMap<>();  // 按是否首轮对话区分
+
+    // SSE 帧指标缓存（按是否启用 token 合并区分）
+    private final ConcurrentMap<String, Counter> sseFrameCountersCache = new ConcurrentHashMap<>();  // 发送的帧数，rate() 即帧/秒
+    private final ConcurrentMap<String, DistributionSummary> sseFrameBytesCache = new ConcurrentHashMap<>();  // 每帧文本字节数
+    private final ConcurrentMap<String, DistributionSummary> sseFrameTokensCache = new ConcurrentHashMap<>();  // 每帧合并的 token 数
+
+    // 消息异步批量写入指标缓存
+    private final ConcurrentMap<String, Timer> messageBatchTimersCache = new ConcurrentHashMap<>();  // 每批提交耗时（按结果区分）
+    private final ConcurrentMap<String, Counter> messageWriteFallbackCache = new ConcurrentHashMap<>();  // 退化为同步写入的次数（按原因区分）
+
+    // 首轮对话响应缓存指标缓存
+    private final ConcurrentMap<String, Counter> responseCacheCountersCache = new ConcurrentHashMap<>();  // 命中/未命中次数
+
+    // 相同请求合并（single-flight）指标缓存
+    private final ConcurrentMap<String, Counter> singleFlightCountersCache = new ConcurrentHashMap<>();  // 按调用类型与角色区分
+
+    // 虚拟线程钉住指标缓存
+    private final ConcurrentMap<String, Timer> pinnedTimersCache = new ConcurrentHashMap<>();  // 按发生位置区分
+
+    // 对话记忆本地缓存（L1）
+    private final ConcurrentMap<String, Counter> memoryL1InvalidationCache = new ConcurrentHashMap<>();  // 按失效原因区分
+
+    // 对话记忆回填（MySQL -> 记忆存储）
+    private final ConcurrentMap<String, Timer> memoryHydrationTimersCache = new ConcurrentHashMap<>();  // 按回填结果区分
+
+    // 对话记忆存储访问 Redis 的耗时
+    private final ConcurrentMap<String, Timer> memoryRedisTimersCache = new ConcurrentHashMap<>();  // 按操作区分
+
+    // 对话记忆 token 预算与滚动摘要
+    private final ConcurrentMap<String, Timer> memorySummaryTimersCache = new ConcurrentHashMap<>();  // 按生成结果区分
+
+    // 对话记忆预热
+    private final ConcurrentMap<String, Counter> memoryPrewarmCountersCache = new ConcurrentHashMap<>();  // 按预热结果区分
 
     /**
      * 记录请求次数
@@ -181,4 +243,562 @@ public class AiModelMetricsCollector {
         );
         counter.increment(beforeTokens - afterTokens);
     }
+
+    /**
+     * 注册共享 HTTP 连接池的利用率指标
+     * @param inFlight 当前在途请求数
+     * @param maxConnections 在途请求上限
+     */
+    public void registerHttpPoolGauges(Supplier<Number> inFlight, int maxConnections) {
+        Gauge.builder("ai_http_pool_in_flight", inFlight)
+                .description("模型HTTP客户端在途请求数")
+                .register(meterRegistry);
+        Gauge.builder("ai_http_pool_max_connections", () -> maxConnections)
+                .description("模型HTTP客户端连接池上限")
+                .register(meterRegistry);
+        Gauge.builder("ai_http_pool_utilisation", () -> maxConnections <= 0 ? 0.0 : inFlight.get().doubleValue() / maxConnections)
+                .description("模型HTTP客户端连接池利用率")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次限流决策：outcome 为 allowed / rejected / error，source 为 local（本地预取令牌）或 redis
+     * 计数即 ai_rate_limit_decision_seconds_count，按 outcome=rejected 过滤即拒绝次数
+     */
+    public void recordRateLimitDecision(String rule, String outcome, String source, Duration duration) {
+        String key = rule + "_" + outcome + "_" + source;
+        Timer timer = rateLimitTimersCache.computeIfAbsent(key, k ->
+                Timer.builder("ai_rate_limit_decision_seconds")
+                        .description("接口限流决策耗时")
+                        .tag("rule", rule)
+                        .tag("outcome", outcome)
+                        .tag("source", source)
+                        .publishPercentiles(0.5, 0.99)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 注册自适应并发限制的当前上限与在途请求数指标
+     */
+    public void registerAdaptiveLimitGauges(Supplier<Number> limit, Supplier<Number> inFlight) {
+        Gauge.builder("ai_adaptive_limit", limit)
+                .description("自适应并发限制的当前上限")
+                .register(meterRegistry);
+        Gauge.builder("ai_adaptive_in_flight", inFlight)
+                .description("自适应并发限制下的在途对话数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次因超出自适应并发上限而被拒绝的请求
+     */
+    public void recordAdaptiveShed() {
+        Counter counter = admissionRejectedCache.computeIfAbsent("adaptive_shed", k ->
+                Counter.builder("ai_adaptive_shed_total")
+                        .description("超出自适应并发上限被拒绝的对话请求数")
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 注册准入通道的排队深度与在途对话数指标
+     */
+    public void registerAdmissionGauges(String endpoint, Supplier<Number> queueDepth, Supplier<Number> inFlight) {
+        Gauge.builder("ai_admission_queue_depth", queueDepth)
+                .description("准入通道排队中的对话请求数")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("ai_admission_in_flight", inFlight)
+                .description("准入通道进行中的流式对话数")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录对话请求从申请到放行的等待时间（无需排队时为 0）
+     */
+    public void recordAdmissionWait(String endpoint, Duration duration) {
+        Timer timer = admissionWaitTimersCache.computeIfAbsent(endpoint, k ->
+                Timer.builder("ai_admission_wait_seconds")
+                        .description("对话请求的排队等待时间")
+                        .tag("endpoint", endpoint)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 记录一次准入拒绝：queue_full（队列已满）、user_queue_full（用户排队数超限）、timeout（排队超时）、
+     * http_permit_timeout（等待共享 HTTP 客户端在途名额超时）
+     */
+    public void recordAdmissionRejected(String endpoint, String reason) {
+        String key = endpoint + "_" + reason;
+        Counter counter = admissionRejectedCache.computeIfAbsent(key, k ->
+                Counter.builder("ai_admission_rejected_total")
+                        .description("准入控制拒绝的对话请求数")
+                        .tag("endpoint", endpoint)
+                        .tag("reason", reason)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录一次对冲事件：fired（超过期限发出对冲）、failover（主端点报错切换）、budget_exhausted（预算不足未对冲）
+     */
+    public void recordHedge(String event) {
+        Counter counter = hedgeCountersCache.computeIfAbsent(event, k ->
+                Counter.builder("ai_hedge_total")
+                        .description("模型端点对冲事件次数")
+                        .tag("event", event)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录发生对冲的请求中胜出的一方（primary / hedge）
+     */
+    public void recordHedgeWin(String winner) {
+        Counter counter = hedgeWinCountersCache.computeIfAbsent(winner, k ->
+                Counter.builder("ai_hedge_wins_total")
+                        .description("对冲请求中先产出内容的一方")
+                        .tag("winner", winner)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录对冲落败方产出后被丢弃的 token 数
+     */
+    public void recordHedgeWastedTokens(long tokens) {
+        Counter counter = hedgeCountersCache.computeIfAbsent("wasted_tokens", k ->
+                Counter.builder("ai_hedge_wasted_tokens_total")
+                        .description("对冲落败方被丢弃的输出 token 数")
+                        .register(meterRegistry)
+        );
+        counter.increment(tokens);
+    }
+
+    /**
+     * 注册当前对冲期限的指标
+     */
+    public void registerHedgeDeadlineGauge(Supplier<Number> deadlineMs) {
+        Gauge.builder("ai_hedge_deadline_ms", deadlineMs)
+                .description("当前主端点的对冲期限（毫秒）")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录启动预热时对模型端点的一次 GET /models 往返耗时（含建连、握手与服务端处理，不等同于建连耗时）
+     */
+    public void recordWarmupRoundTrip(String endpoint, Duration duration) {
+        Timer timer = warmupRoundTripTimersCache.computeIfAbsent(endpoint, k ->
+                Timer.builder("ai_http_warmup_round_trip_seconds")
+                        .description("启动预热时模型端点的往返耗时")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 记录模型请求从发出到收到响应头的耗时
+     */
+    public void recordHttpTimeToHeaders(String endpoint, Duration duration) {
+        Timer timer = httpHeaderTimersCache.computeIfAbsent(endpoint, k ->
+                Timer.builder("ai_http_time_to_headers_seconds")
+                        .description("模型请求首包（响应头）耗时")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 注册流式结束后处理阶段的队列指标
+     */
+    public void registerPostStreamGauges(Supplier<Number> queueDepth, Supplier<Number> activeWorkers, Supplier<Number> deadLetters) {
+        Gauge.builder("ai_post_stream_queue_depth", queueDepth)
+                .description("后处理队列积压任务数")
+                .register(meterRegistry);
+        Gauge.builder("ai_post_stream_active_workers", activeWorkers)
+                .description("后处理正在执行的任务数")
+                .register(meterRegistry);
+        Gauge.builder("ai_post_stream_dead_letters", deadLetters)
+                .description("后处理死信队列中的任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录后处理阶段耗时（从入队开始计算，包含排队与重试等待）
+     */
+    public void recordPostStreamLatency(String stage, Duration duration) {
+        Timer timer = postStreamTimersCache.computeIfAbsent(stage, k ->
+                Timer.builder("ai_post_stream_stage_duration_seconds")
+                        .description("后处理阶段耗时")
+                        .tag("stage", stage)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 记录后处理阶段的执行结果（success / retry / dead_letter / error 等）
+     */
+    public void recordPostStreamOutcome(String stage, String outcome) {
+        String key = String.format("%s_%s", stage, outcome);
+        Counter counter = postStreamCountersCache.computeIfAbsent(key, k ->
+                Counter.builder("ai_post_stream_tasks_total")
+                        .description("后处理任务执行结果次数")
+                        .tag("stage", stage)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录对话首 token 耗时（从收到请求到第一个 token 输出）
+     * @param firstTurn 是否为会话的第一轮对话（需要新建会话并生成标题）
+     */
+    public void recordFirstTokenLatency(boolean firstTurn, Duration duration) {
+        String key = String.valueOf(firstTurn);
+        Timer timer = firstTokenTimersCache.computeIfAbsent(key, k ->
+                Timer.builder("ai_chat_first_token_duration_seconds")
+                        .description("对话首 token 耗时")
+                        .tag("first_turn", key)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 记录一次 SSE 帧发送
+     * @param coalesced 是否启用了 token 合并
+     * @param bytes 帧内文本的 UTF-8 字节数
+     * @param tokens 帧内合并的 token 数
+     */
+    public void recordSseFrame(boolean coalesced, int bytes, int tokens) {
+        String key = String.valueOf(coalesced);
+        sseFrameCountersCache.computeIfAbsent(key, k ->
+                Counter.builder("ai_sse_frames_total")
+                        .description("SSE 帧发送次数")
+                        .tag("coalesced", key)
+                        .register(meterRegistry)
+        ).increment();
+        sseFrameBytesCache.computeIfAbsent(key, k ->
+                DistributionSummary.builder("ai_sse_frame_bytes")
+                        .description("每个 SSE 帧的文本字节数")
+                        .baseUnit("bytes")
+                        .tag("coalesced", key)
+                        .register(meterRegistry)
+        ).record(bytes);
+        sseFrameTokensCache.computeIfAbsent(key, k ->
+                DistributionSummary.builder("ai_sse_frame_tokens")
+                        .description("每个 SSE 帧合并的 token 数")
+                        .tag("coalesced", key)
+                        .register(meterRegistry)
+        ).record(tokens);
+    }
+
+    /**
+     * 注册消息写入队列深度指标
+     */
+    public void registerMessageWriterGauges(Supplier<Number> queueDepth) {
+        Gauge.builder("ai_message_writer_queue_depth", queueDepth)
+                .description("等待批量写入的消息数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次批量提交
+     * @param size 批内消息数
+     * @param success 是否整批提交成功（失败时会逐条重试）
+     */
+    public void recordMessageBatch(int size, Duration duration, boolean success) {
+        String outcome = success ? "success" : "error";
+        Timer timer = messageBatchTimersCache.computeIfAbsent(outcome, k ->
+                Timer.builder("ai_message_writer_batch_duration_seconds")
+                        .description("消息批量提交耗时")
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+        DistributionSummary.builder("ai_message_writer_batch_size")
+                .description("每批提交的消息数")
+                .register(meterRegistry)
+                .record(size);
+    }
+
+    /**
+     * 记录退化为同步写入（queue_full / shutdown）
+     */
+    public void recordMessageWriteFallback(String reason) {
+        Counter counter = messageWriteFallbackCache.computeIfAbsent(reason, k ->
+                Counter.builder("ai_message_writer_sync_fallback_total")
+                        .description("消息退化为同步写入的次数")
+                        .tag("reason", reason)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录首轮对话响应缓存查询结果
+     */
+    public void recordResponseCacheLookup(boolean hit) {
+        String result = hit ? "hit" : "miss";
+        Counter counter = responseCacheCountersCache.computeIfAbsent(result, k ->
+                Counter.builder("ai_response_cache_requests_total")
+                        .description("首轮对话响应缓存查询次数")
+                        .tag("result", result)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录响应缓存命中所节省的输出Token数
+     */
+    public void recordResponseCacheTokensSaved(long tokens) {
+        Counter counter = responseCacheCountersCache.computeIfAbsent("tokens_saved", k ->
+                Counter.builder("ai_response_cache_tokens_saved_total")
+                        .description("响应缓存命中节省的输出Token数")
+                        .register(meterRegistry)
+        );
+        counter.increment(tokens);
+    }
+
+    /**
+     * 记录一次 single-flight 调用
+     * @param flight 调用类型（title / daily_routes / weather 等）
+     * @param role origin：实际发起调用；coalesced：复用本节点在途调用；remote：复用其他节点的结果
+     */
+    public void recordSingleFlight(String flight, String role) {
+        String key = String.format("%s_%s", flight, role);
+        Counter counter = singleFlightCountersCache.computeIfAbsent(key, k ->
+                Counter.builder("ai_single_flight_calls_total")
+                        .description("相同请求合并调用次数")
+                        .tag("flight", flight)
+                        .tag("role", role)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录一次虚拟线程钉住事件
+     * @param site 发生位置（类名.方法名）
+     */
+    public void recordVirtualThreadPinned(String site, Duration duration) {
+        Timer timer = pinnedTimersCache.computeIfAbsent(site, k ->
+                Timer.builder("ai_virtual_thread_pinned_seconds")
+                        .description("虚拟线程被钉住在载体线程上的时长")
+                        .tag("site", site)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 注册 Caffeine 缓存指标（命中率、淘汰数、权重等，缓存需开启 recordStats）
+     */
+    public void registerCaffeineCache(Cache<?, ?> cache, String cacheName) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName);
+    }
+
+    /**
+     * 注册对话记忆本地缓存状态指标：1 表示正常使用，0 表示失效通道中断、已退化为仅使用 Redis
+     */
+    public void registerMemoryL1Gauge(Supplier<Number> active) {
+        Gauge.builder("ai_memory_l1_active", active)
+                .description("对话记忆本地缓存是否生效")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录对话记忆本地缓存失效
+     * @param reason remote：其他节点广播；channel_lost：失效通道中断后清空
+     */
+    public void recordMemoryL1Invalidation(String reason) {
+        Counter counter = memoryL1InvalidationCache.computeIfAbsent(reason, k ->
+                Counter.builder("ai_memory_l1_invalidations_total")
+                        .description("对话记忆本地缓存失效次数")
+                        .tag("reason", reason)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录一次对话记忆回填
+     * @param outcome hydrated：从数据库回填；skipped：记忆存储中已有有效窗口；empty：数据库无历史；
+     *                store_fallback：读取时发现记忆存储已过期，由存储自行回源；error：回填失败
+     *                （每次回填只记录其中一种结果）
+     * @param messages 写入记忆的消息数
+     */
+    public void recordMemoryHydration(String outcome, int messages, Duration duration) {
+        Timer timer = memoryHydrationTimersCache.computeIfAbsent(outcome, k ->
+                Timer.builder("ai_memory_hydration_seconds")
+                        .description("对话记忆回填耗时")
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+        if (messages > 0) {
+            DistributionSummary.builder("ai_memory_hydration_messages")
+                    .description("每次回填写入记忆的消息数")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(messages);
+        }
+    }
+
+    /**
+     * 记录记忆存储一次操作访问 Redis 的耗时（每个操作的全部命令在一次往返内完成）
+     * @param op read / write / delete / probe
+     */
+    public void recordMemoryRedisLatency(String op, Duration duration) {
+        Timer timer = memoryRedisTimersCache.computeIfAbsent(op, k ->
+                Timer.builder("ai_memory_redis_seconds")
+                        .description("对话记忆存储单次操作访问 Redis 的耗时")
+                        .tag("op", op)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 记录一次记忆摘要生成
+     * @param outcome success / error / rejected（线程池繁忙未执行）
+     */
+    public void recordMemorySummary(String outcome, Duration duration) {
+        Timer timer = memorySummaryTimersCache.computeIfAbsent(outcome, k ->
+                Timer.builder("ai_memory_summary_duration_seconds")
+                        .description("小模型折叠记忆摘要的耗时")
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 记录一次获取 AI 服务实例的耗时（含缓存未命中时的创建）
+     * @param mode per_session：按会话缓存实例；blueprint：共享单实例
+     */
+    public void recordAssistantAcquisition(String mode, Duration duration) {
+        Timer timer = assistantAcquisitionTimersCache.computeIfAbsent(mode, k ->
+                Timer.builder("ai_assistant_acquisition_seconds")
+                        .description("获取 AI 服务实例的耗时")
+                        .tag("mode", mode)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 记录一个启动预热步骤的耗时
+     * @param step 步骤名
+     * @param outcome success / error / timeout
+     */
+    public void recordWarmupStep(String step, String outcome, Duration duration) {
+        Timer timer = warmupStepTimersCache.computeIfAbsent(step + "|" + outcome, k ->
+                Timer.builder("ai_warmup_step_seconds")
+                        .description("启动预热各步骤的耗时")
+                        .tag("step", step)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+    }
+
+    /**
+     * 记录一次模型路由决策
+     * @param route main / small
+     * @param reason disabled / first_turn / tool / length / low_confidence / simple
+     */
+    public void recordRouterDecision(String route, String reason) {
+        Counter counter = routerDecisionCountersCache.computeIfAbsent(route + "|" + reason, k ->
+                Counter.builder("ai_router_requests_total")
+                        .description("模型路由决策次数")
+                        .tag("route", route)
+                        .tag("reason", reason)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录一次回退到主模型：把握不足（low_confidence）或小模型在首个 token 前报错（error）
+     * 回退率 = sum(ai_router_fallback_total) / sum(ai_router_requests_total)
+     */
+    public void recordRouterFallback(String reason) {
+        Counter counter = routerFallbackCountersCache.computeIfAbsent(reason, k ->
+                Counter.builder("ai_router_fallback_total")
+                        .description("回退到主模型的次数")
+                        .tag("reason", reason)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
+
+    /**
+     * 记录一轮路由后的对话：从发起到流结束的耗时与输出 token 数
+     * @param route 实际完成回复的模型：main / small / fallback（小模型失败后由主模型完成）
+     */
+    public void recordRouterCompletion(String route, Duration duration, long outputTokens) {
+        Timer timer = routerLatencyTimersCache.computeIfAbsent(route, k ->
+                Timer.builder("ai_router_latency_seconds")
+                        .description("按路由区分的整轮对话耗时")
+                        .tag("route", route)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry)
+        );
+        timer.record(duration);
+        DistributionSummary summary = routerTokensCache.computeIfAbsent(route, k ->
+                DistributionSummary.builder("ai_router_output_tokens")
+                        .description("按路由区分的每轮输出 token 数")
+                        .tag("route", route)
+                        .register(meterRegistry)
+        );
+        summary.record(outputTokens);
+    }
+
+    /**
+     * 记录一次超出 token 预算的记忆淘汰
+     * @param messages 本次淘汰的消息数
+     */
+    public void recordMemoryEviction(int messages) {
+        DistributionSummary.builder("ai_memory_budget_evicted_messages")
+                .description("超出 token 预算时每次淘汰的消息数")
+                .register(meterRegistry)
+                .record(messages);
+    }
+
+    /**
+     * 记录一次记忆预热
+     * @param outcome hydrated / skipped（已是热数据）/ empty / error：执行结果；
+     *                cooldown：冷却时间内重复触发；busy：实时请求较多暂停；throttled：超出每秒上限；rejected：队列已满
+     */
+    public void recordMemoryPrewarm(String outcome) {
+        Counter counter = memoryPrewarmCountersCache.computeIfAbsent(outcome, k ->
+                Counter.builder("ai_memory_prewarm_total")
+                        .description("对话记忆预热次数")
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+        );
+        counter.increment();
+    }
 }
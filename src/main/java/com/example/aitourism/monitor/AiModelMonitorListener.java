@@ -5,6 +5,7 @@ import dev.langchain4j.model.chat.listener.ChatModelListener;
 import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
 import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
 import dev.langchain4j.model.output.TokenUsage;
+import com.example.aitourism.service.AdaptiveConcurrencyLimiter;
 import jakarta.annotation.Resource;
 import org.springframework.stereotype.Component;
 import lombok.extern.slf4j.Slf4j;
@@ -22,14 +23,23 @@ public class AiModelMonitorListener implements ChatModelListener {
     private static final String REQUEST_START_TIME_KEY = "request_start_time";
     // 用于监控上下文传递（因为请求和响应事件的触发不是同一个线程）
     private static final String MONITOR_CONTEXT_KEY = "monitor_context";
+    // 对冲请求中的一路尝试（由 HedgingStreamingChatModel 在发起调用时设置）
+    private static final String MODEL_ATTEMPT_KEY = "model_attempt";
     
     @Resource
     private AiModelMetricsCollector aiModelMetricsCollector;
 
+    @Resource
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
     @Override
     public void onRequest(ChatModelRequestContext requestContext) {
         // 记录请求开始时间
         requestContext.attributes().put(REQUEST_START_TIME_KEY, Instant.now());
+        ModelAttempt attempt = MonitorContextHolder.getAttempt();
+        if (attempt != null) {
+            requestContext.attributes().put(MODEL_ATTEMPT_KEY, attempt);
+        }
         // 从监控上下文中获取信息
         MonitorContext context = MonitorContextHolder.getContext();
         if (context == null) {
@@ -54,9 +64,6 @@ public class AiModelMonitorListener implements ChatModelListener {
         if (context == null) {
             context = MonitorContextHolder.getContext();
         }
-        if (context == null) {
-            context = MonitorContextHolder.pollFallbackContext();
-        }
         if (context == null) {
             log.warn("MonitorContext is null in onResponse; skip metrics for this response");
             return;
@@ -65,6 +72,11 @@ public class AiModelMonitorListener implements ChatModelListener {
         String sessionId = context.getSessionId();
         // 获取模型名称
         String modelName = responseContext.chatResponse().modelName();
+        // 被对冲淘汰的一路：只记录结果，不计入响应时间与 token 用量
+        if (superseded(attributes)) {
+            aiModelMetricsCollector.recordRequest(userId, sessionId, modelName, "superseded");
+            return;
+        }
         // 记录成功请求
         aiModelMetricsCollector.recordRequest(userId, sessionId, modelName, "success");
         // 记录响应时间
@@ -75,15 +87,17 @@ public class AiModelMonitorListener implements ChatModelListener {
 
     @Override
     public void onError(ChatModelErrorContext errorContext) {
-        // 优先从属性或线程上下文中获取信息
         Map<Object, Object> attributes = errorContext.attributes();
+        boolean superseded = superseded(attributes);
+        // 模型过载时收缩自适应并发上限（另一路已胜出时请求并未失败，不收缩；客户端错误由限制器忽略）
+        if (!superseded) {
+            adaptiveConcurrencyLimiter.onModelError(errorContext.error());
+        }
+        // 优先从属性或线程上下文中获取信息
         MonitorContext context = attributes != null ? (MonitorContext) attributes.get(MONITOR_CONTEXT_KEY) : null;
         if (context == null) {
             context = MonitorContextHolder.getContext();
         }
-        if (context == null) {
-            context = MonitorContextHolder.pollFallbackContext();
-        }
         if (context == null) {
             log.warn("MonitorContext is null in onError; skip metrics for this error");
             return;
@@ -93,6 +107,10 @@ public class AiModelMonitorListener implements ChatModelListener {
         // 获取模型名称和错误类型
         String modelName = errorContext.chatRequest().modelName();
         String errorMessage = errorContext.error().getMessage();
+        if (superseded) {
+            aiModelMetricsCollector.recordRequest(userId, sessionId, modelName, "superseded");
+            return;
+        }
         // 记录失败请求
         aiModelMetricsCollector.recordRequest(userId, sessionId, modelName, "error");
         aiModelMetricsCollector.recordError(userId, sessionId, modelName, errorMessage);
@@ -101,6 +119,11 @@ public class AiModelMonitorListener implements ChatModelListener {
     }
 
 
+    private static boolean superseded(Map<Object, Object> attributes) {
+        return attributes != null && attributes.get(MODEL_ATTEMPT_KEY) instanceof ModelAttempt attempt
+                && attempt.superseded();
+    }
+
     /**
      * 记录响应时间
      */
@@ -0,0 +1,14 @@
+package com.example.aitourism.monitor;
+
+/**
+ * 一次模型调用尝试（对冲请求中的一路）
+ * 发起调用时经 MonitorContextHolder 交给监听器；被另一路胜出的尝试，其 token 用量与错误
+ * 不计入模型指标，也不收缩自适应并发上限（浪费的 token 由对冲指标单独记录）
+ */
+public interface ModelAttempt {
+
+    /**
+     * 是否已被另一路尝试胜出
+     */
+    boolean superseded();
+}
@@ -3,19 +3,27 @@ package com.example.aitourism.monitor;
 import lombok.extern.slf4j.Slf4j;
 
 
+/**
+ * 监控上下文持有者
+ * 上下文只在发起模型请求的线程上短暂存在（chatStream 中设置、finally 中清除），
+ * 虚拟线程模式下同样适用：不要在长生命周期线程上设置而不清除，避免大量虚拟线程各自持有副本。
+ * 上下文随请求自身传递，不借助全局变量：
+ * - 延迟订阅时，chatStream 返回的 Flux 在订阅期间把上下文设置到订阅线程上
+ * - 监听器的 onRequest 把上下文存入本次请求的 attributes，onResponse / onError 从中读取
+ * - 流式回调线程上的工具执行与下一轮请求，由 ContextPropagatingStreamingChatModel 在回调期间设置
+ */
 @Slf4j
 public class MonitorContextHolder {
 
     private static final ThreadLocal<MonitorContext> CONTEXT_HOLDER = new ThreadLocal<>();
-    // 当回调在线程池的其他线程执行时，ThreadLocal 无法传递；提供一次性全局后备以便监听器读取
-    private static volatile MonitorContext TEMP_FALLBACK_CONTEXT;
+    // 当前线程正在发起的对冲尝试，只在调用 StreamingChatModel.chat 期间存在（监听器的 onRequest 同步执行）
+    private static final ThreadLocal<ModelAttempt> ATTEMPT_HOLDER = new ThreadLocal<>();
 
     /**
      * 设置监控上下文
      */
     public static void setContext(MonitorContext context) {
         CONTEXT_HOLDER.set(context);
-        TEMP_FALLBACK_CONTEXT = context;
     }
 
     /**
@@ -26,18 +34,30 @@ public class MonitorContextHolder {
     }
 
     /**
-     * 获取一次性全局后备上下文，并清空该后备，避免串扰
+     * 清除监控上下文
      */
-    public static MonitorContext pollFallbackContext() {
-        MonitorContext ctx = TEMP_FALLBACK_CONTEXT;
-        TEMP_FALLBACK_CONTEXT = null;
-        return ctx;
+    public static void clearContext() {
+        CONTEXT_HOLDER.remove();
     }
 
     /**
-     * 清除监控上下文
+     * 设置当前线程正在发起的模型调用尝试
      */
-    public static void clearContext() {
-        CONTEXT_HOLDER.remove();
+    public static void setAttempt(ModelAttempt attempt) {
+        ATTEMPT_HOLDER.set(attempt);
+    }
+
+    /**
+     * 获取当前线程正在发起的模型调用尝试（非对冲调用时为 null）
+     */
+    public static ModelAttempt getAttempt() {
+        return ATTEMPT_HOLDER.get();
+    }
+
+    /**
+     * 清除模型调用尝试
+     */
+    public static void clearAttempt() {
+        ATTEMPT_HOLDER.remove();
     }
 }
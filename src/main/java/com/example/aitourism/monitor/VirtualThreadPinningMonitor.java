@@ -0,0 +1,79 @@
+package com.example.aitourism.monitor;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 虚拟线程钉住（pinning）监控
+ * 虚拟线程在 synchronized 块或本地方法中阻塞时无法从载体线程卸载，会退化为占用平台线程。
+ * 这里通过 JFR 的 jdk.VirtualThreadPinned 事件持续采集，按发生位置计数并打印告警，便于定位需要改造的同步代码。
+ * 仅在开启 spring.threads.virtual.enabled 时生效。
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    @Resource
+    private AiModelMetricsCollector metricsCollector;
+
+    // 只记录持续时间超过该阈值的钉住事件
+    @Value("${monitor.virtual-thread-pinned-threshold-ms:20}")
+    private long thresholdMs;
+
+    private RecordingStream recordingStream;
+
+    @PostConstruct
+    public void start() {
+        try {
+            recordingStream = new RecordingStream();
+            recordingStream.enable("jdk.VirtualThreadPinned")
+                    .withThreshold(Duration.ofMillis(thresholdMs))
+                    .withStackTrace();
+            recordingStream.onEvent("jdk.VirtualThreadPinned", event -> {
+                String site = pinnedSite(event.getStackTrace());
+                metricsCollector.recordVirtualThreadPinned(site, event.getDuration());
+                log.warn("虚拟线程被钉住 {}ms，位置: {}", event.getDuration().toMillis(), site);
+            });
+            recordingStream.startAsync();
+            log.info("虚拟线程钉住监控已启动，阈值: {}ms", thresholdMs);
+        } catch (Exception e) {
+            // JFR 不可用（如裁剪过的运行时）时不影响服务启动
+            log.warn("虚拟线程钉住监控启动失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 取第一个非 JDK 的栈帧作为发生位置；全部为 JDK 栈帧时取栈顶
+     */
+    private String pinnedSite(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "unknown";
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String className = frame.getMethod().getType().getName();
+            if (!className.startsWith("java.") && !className.startsWith("jdk.") && !className.startsWith("sun.")) {
+                return className + "." + frame.getMethod().getName();
+            }
+        }
+        RecordedFrame top = stackTrace.getFrames().get(0);
+        return top.getMethod().getType().getName() + "." + top.getMethod().getName();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.aitourism.monitor;
+
+import com.example.aitourism.service.WarmupService;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动预热健康指标（/actuator/health/warmup）
+ * 预热结束前为 OUT_OF_SERVICE，结束后为 UP，明细中给出各步骤耗时或失败原因；
+ * 已加入 readiness 分组，负载均衡按 /actuator/health/readiness 判断节点是否可以接收流量
+ */
+@Component("warmup")
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    private final WarmupService warmupService;
+
+    public WarmupHealthIndicator(WarmupService warmupService) {
+        this.warmupService = warmupService;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = warmupService.isReady() ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("timedOut", warmupService.isTimedOut())
+                .withDetails(warmupService.steps())
+                .build();
+    }
+}
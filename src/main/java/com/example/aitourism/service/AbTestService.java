@@ -83,6 +83,34 @@ public class AbTestService {
         return true;
     }
     
+    /**
+     * 判断是否应该使用首轮对话响应缓存
+     * @param userId 用户ID
+     * @param sessionId 会话ID
+     * @return true表示查询/写入缓存，false表示直接请求大模型
+     */
+    public boolean shouldUseResponseCache(String userId, String sessionId) {
+        AbTestConfig.ResponseCacheAbTest config = abTestConfig.getResponseCache();
+        if (!config.isEnabled()) {
+            return false;
+        }
+        boolean useCache = random.nextDouble() >= config.getNoCacheTestRatio();
+        log.debug("响应缓存A/B测试 - 用户: {}, 会话: {}, 使用缓存: {}", userId, sessionId, useCache);
+        return useCache;
+    }
+    
+    /**
+     * 记录首轮对话响应缓存的命中情况
+     * @param hit 是否命中
+     * @param tokensSaved 命中时节省的输出Token数（未命中传0）
+     */
+    public void recordResponseCache(boolean hit, long tokensSaved) {
+        metricsCollector.recordResponseCacheLookup(hit);
+        if (hit && tokensSaved > 0) {
+            metricsCollector.recordResponseCacheTokensSaved(tokensSaved);
+        }
+    }
+    
     /**
      * 记录工具调用性能对比数据
      * @param userId 用户ID
@@ -0,0 +1,180 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.AdaptiveLimitConfig;
+import com.example.aitourism.exception.AdmissionRejectedException;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.InternalServerException;
+import dev.langchain4j.exception.RateLimitException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发限制（/chat-stream）
+ * 在准入调度的静态上限之上，按模型的实际表现自动调整整体并发上限：
+ * - 首 token 耗时：维护短期与长期两个指数平均，梯度 = tolerance × 长期 / 短期（限制在 0.5~1 之间），
+ *   新上限 = 当前上限 × 梯度 + √当前上限；上游变慢时梯度小于 1，上限收缩，恢复后按 √上限 逐步增长
+ * - 模型调用的过载错误（由 AiModelMonitorListener 上报；429、5xx、超时）：上限乘以 backoffRatio，
+ *   输入超长、参数错误、鉴权失败等客户端错误与负载无关，不收缩
+ * - 在途请求不足上限一半时不增长，避免空闲时上限无限膨胀
+ * 超出上限的请求在入口处直接拒绝，不再写库、不再调用小模型生成标题。
+ */
+@Service
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private final AdaptiveLimitConfig config;
+    private final AiModelMetricsCollector metricsCollector;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // 以下状态在 this 上同步
+    private double limit;
+    private double shortTtftMs;
+    private double longTtftMs;
+
+    public AdaptiveConcurrencyLimiter(AdaptiveLimitConfig config, AiModelMetricsCollector metricsCollector) {
+        this.config = config;
+        this.metricsCollector = metricsCollector;
+    }
+
+    @PostConstruct
+    public void init() {
+        limit = config.getInitialLimit();
+        if (config.isEnabled()) {
+            metricsCollector.registerAdaptiveLimitGauges(this::currentLimit, inFlight::get);
+            log.info("自适应并发限制初始化完成，初始上限: {}，范围: [{}, {}]",
+                    config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit());
+        }
+    }
+
+    /**
+     * 申请一个并发名额，超出当前上限时返回 null（请求应被拒绝）
+     */
+    public Permit tryAcquire() {
+        if (!config.isEnabled()) {
+            return new Permit(false);
+        }
+        int current = inFlight.incrementAndGet();
+        if (current > currentLimit()) {
+            inFlight.decrementAndGet();
+            metricsCollector.recordAdaptiveShed();
+            return null;
+        }
+        return new Permit(true);
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * 模型调用出错：过载信号乘性下降，其他错误忽略
+     */
+    public void onModelError(Throwable error) {
+        if (!config.isEnabled() || !isOverload(error)) {
+            return;
+        }
+        synchronized (this) {
+            limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+        }
+        log.debug("模型调用过载（{}），并发上限降至 {}", error.getClass().getSimpleName(), currentLimit());
+    }
+
+    /**
+     * 是否为上游过载：429、5xx、各类超时，以及等待模型请求名额超时（本地在途请求已满）。
+     * 模型客户端可能把原始异常包装一层，沿 cause 链判断
+     */
+    static boolean isOverload(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitException
+                    || cause instanceof InternalServerException
+                    || cause instanceof dev.langchain4j.exception.TimeoutException
+                    || cause instanceof TimeoutException
+                    || cause instanceof HttpTimeoutException
+                    || cause instanceof SocketTimeoutException
+                    || cause instanceof AdmissionRejectedException) {
+                return true;
+            }
+            if (cause instanceof HttpException http) {
+                return http.statusCode() == 429 || http.statusCode() >= 500;
+            }
+        }
+        return false;
+    }
+
+    // 首 token 耗时样本：梯度调整
+    private void onFirstToken(long ttftMs, int inFlightAtSample) {
+        synchronized (this) {
+            double shortAlpha = 2.0 / (Math.max(1, config.getShortWindow()) + 1);
+            double longAlpha = 2.0 / (Math.max(1, config.getLongWindow()) + 1);
+            if (longTtftMs == 0) {
+                shortTtftMs = ttftMs;
+                longTtftMs = ttftMs;
+                return;
+            }
+            shortTtftMs += shortAlpha * (ttftMs - shortTtftMs);
+            longTtftMs += longAlpha * (ttftMs - longTtftMs);
+            // 长期基线明显高于短期时（上游已恢复）让基线更快回落，避免长期偏高导致上限迟迟不收缩
+            if (longTtftMs > 2 * shortTtftMs) {
+                longTtftMs *= 0.95;
+            }
+            // 在途请求不足上限一半：负载不足，无法判断上限是否还能提高
+            if (inFlightAtSample < limit / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, config.getTolerance() * longTtftMs / shortTtftMs));
+            double target = limit * gradient + Math.sqrt(limit);
+            double smoothing = Math.max(0.01, Math.min(1.0, config.getSmoothing()));
+            limit = Math.max(config.getMinLimit(),
+                    Math.min(config.getMaxLimit(), limit * (1 - smoothing) + target * smoothing));
+        }
+    }
+
+    /**
+     * 一个并发名额：对话结束（完成、出错或断开）时释放
+     */
+    public final class Permit {
+
+        private final boolean counted;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(boolean counted) {
+            this.counted = counted;
+        }
+
+        /**
+         * 观察模型输出：从订阅到第一个 token 的耗时作为一个样本（不含排队与写库时间）
+         */
+        public Flux<String> observe(Flux<String> tokens) {
+            if (!counted) {
+                return tokens;
+            }
+            return Flux.defer(() -> {
+                long start = System.nanoTime();
+                AtomicBoolean first = new AtomicBoolean(true);
+                return tokens.doOnNext(token -> {
+                    if (first.compareAndSet(true, false)) {
+                        onFirstToken((System.nanoTime() - start) / 1_000_000, inFlight.get());
+                    }
+                });
+            });
+        }
+
+        public void release() {
+            if (counted && released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.AdmissionConfig;
+import com.example.aitourism.exception.AdmissionRejectedException;
+import com.example.aitourism.mapper.RoleMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对话准入调度
+ * 每个模型端点一条通道，限制同时进行的流式对话数；超出上限的请求进入加权公平队列（WFQ）：
+ * 每个请求的虚拟完成时间 = max(通道虚拟时间, 该用户上一个请求的虚拟完成时间) + 1/权重，
+ * 总是先放行虚拟完成时间最小的请求，因此单个用户的突发请求只会排在自己前面的请求之后，
+ * 不会挤占其他用户；ROOT 用户权重更高，排队时更靠前。
+ * 队列满、单用户排队数超限时立即拒绝，排队超过 maxWaitSeconds 时以超时拒绝。
+ */
+@Service
+@Slf4j
+public class AdmissionScheduler {
+
+    private static final String ROOT_ROLE = "ROOT";
+    // 虚拟时间的放大倍数，1/权重 以整数表示
+    private static final long VIRTUAL_SCALE = 1_000;
+
+    private static final int WAITING = 0;
+    private static final int ADMITTED = 1;
+    private static final int CANCELLED = 2;
+    private static final int RELEASED = 3;
+
+    private final AdmissionConfig config;
+    private final RoleMapper roleMapper;
+    private final AiModelMetricsCollector metricsCollector;
+
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private Cache<String, Boolean> rootUsers;
+
+    public AdmissionScheduler(AdmissionConfig config, RoleMapper roleMapper, AiModelMetricsCollector metricsCollector) {
+        this.config = config;
+        this.roleMapper = roleMapper;
+        this.metricsCollector = metricsCollector;
+    }
+
+    @PostConstruct
+    public void init() {
+        rootUsers = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, config.getRoleCacheSeconds())))
+                .build();
+    }
+
+    /**
+     * 申请在指定端点上发起一次流式对话
+     * 有空闲名额时返回已放行的票据；否则进入公平队列，返回排队中的票据。
+     * 调用方在对话结束（完成、出错或取消）时必须调用 {@link Ticket#release()}。
+     *
+     * @throws AdmissionRejectedException 队列已满或该用户排队数超限
+     */
+    public Ticket enqueue(String endpoint, String userId) {
+        if (!config.isEnabled()) {
+            Ticket ticket = new Ticket(null, userId, 0);
+            ticket.state.set(ADMITTED);
+            return ticket;
+        }
+        Lane lane = lanes.computeIfAbsent(endpoint, this::newLane);
+        return lane.enqueue(userId == null ? "" : userId, weightOf(userId));
+    }
+
+    /**
+     * 最长排队时间（秒），随 queued 事件告知前端
+     */
+    public int maxWaitSeconds() {
+        return config.getMaxWaitSeconds();
+    }
+
+    private Lane newLane(String endpoint) {
+        int limit = config.getEndpointLimits().getOrDefault(endpoint, config.getMaxConcurrent());
+        Lane lane = new Lane(endpoint, Math.max(1, limit));
+        metricsCollector.registerAdmissionGauges(endpoint, lane::queueDepth, lane::inFlight);
+        log.info("创建准入通道: {}，并发上限 {}", endpoint, lane.limit);
+        return lane;
+    }
+
+    private int weightOf(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return Math.max(1, config.getDefaultWeight());
+        }
+        boolean root = rootUsers.get(userId, id -> {
+            try {
+                return roleMapper.findRoleCodesByUserId(id).contains(ROOT_ROLE);
+            } catch (Exception e) {
+                log.warn("查询用户 {} 的角色失败，按普通用户排队: {}", id, e.getMessage());
+                return false;
+            }
+        });
+        return Math.max(1, root ? config.getRootWeight() : config.getDefaultWeight());
+    }
+
+    /**
+     * 一次准入申请
+     */
+    public final class Ticket {
+
+        private final Lane lane;
+        private final String userId;
+        private final long enqueuedAt = System.nanoTime();
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private final CompletableFuture<Void> admission = new CompletableFuture<>();
+        private final long sequence;
+        private long virtualFinish;
+        private int position;
+
+        private Ticket(Lane lane, String userId, long sequence) {
+            this.lane = lane;
+            this.userId = userId;
+            this.sequence = sequence;
+        }
+
+        /**
+         * 是否需要排队（创建时没有空闲名额）
+         */
+        public boolean queued() {
+            return position > 0;
+        }
+
+        /**
+         * 入队时的排队位置（公平队列会按权重调整实际顺序，仅供前端展示）
+         */
+        public int position() {
+            return position;
+        }
+
+        /**
+         * 等待放行：已放行时立即完成；排队超时以 AdmissionRejectedException 结束，订阅取消时退出队列
+         */
+        public Mono<Void> admitted() {
+            if (state.get() == ADMITTED) {
+                return Mono.empty();
+            }
+            return Mono.fromFuture(admission, true)
+                    .timeout(Duration.ofSeconds(Math.max(1, config.getMaxWaitSeconds())))
+                    .onErrorMap(TimeoutException.class, e -> {
+                        if (cancel()) {
+                            metricsCollector.recordAdmissionRejected(lane.endpoint, "timeout");
+                        }
+                        return new AdmissionRejectedException("当前使用人数较多，排队超时，请稍后重试");
+                    })
+                    .doOnCancel(this::cancel);
+        }
+
+        /**
+         * 归还名额（对话结束时调用，可重复调用）；仍在排队时退出队列
+         */
+        public void release() {
+            cancel();
+        }
+
+        // 退出队列；已被放行则归还名额。返回是否从队列中移除
+        private boolean cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                lane.remove(this);
+                return true;
+            }
+            if (state.compareAndSet(ADMITTED, RELEASED) && lane != null) {
+                lane.release();
+            }
+            return false;
+        }
+
+        // 被调度放行（在通道锁内调用），返回 false 表示已取消
+        private boolean admit() {
+            return state.compareAndSet(WAITING, ADMITTED);
+        }
+
+        // 通知等待方（在通道锁外调用，等待方的后续处理不占用锁）
+        private void signal() {
+            metricsCollector.recordAdmissionWait(lane.endpoint, Duration.ofNanos(System.nanoTime() - enqueuedAt));
+            admission.complete(null);
+        }
+    }
+
+    /**
+     * 单个端点的准入通道
+     */
+    private final class Lane {
+
+        private final String endpoint;
+        private final int limit;
+        private final PriorityQueue<Ticket> queue = new PriorityQueue<>(
+                Comparator.<Ticket>comparingLong(t -> t.virtualFinish).thenComparingLong(t -> t.sequence));
+        // 用户 -> 该用户最后一个排队请求的虚拟完成时间 / 排队中的请求数
+        private final Map<String, Long> lastFinish = new HashMap<>();
+        private final Map<String, Integer> queuedPerUser = new HashMap<>();
+        private int inFlight;
+        private long virtualTime;
+        private long sequence;
+
+        Lane(String endpoint, int limit) {
+            this.endpoint = endpoint;
+            this.limit = limit;
+        }
+
+        Ticket enqueue(String userId, int weight) {
+            Ticket ticket;
+            synchronized (this) {
+                ticket = new Ticket(this, userId, sequence++);
+                if (inFlight < limit && queue.isEmpty()) {
+                    inFlight++;
+                    ticket.state.set(ADMITTED);
+                } else {
+                    if (queue.size() >= config.getQueueCapacity()) {
+                        metricsCollector.recordAdmissionRejected(endpoint, "queue_full");
+                        throw new AdmissionRejectedException("当前使用人数较多，请稍后重试");
+                    }
+                    if (queuedPerUser.getOrDefault(userId, 0) >= config.getPerUserQueueLimit()) {
+                        metricsCollector.recordAdmissionRejected(endpoint, "user_queue_full");
+                        throw new AdmissionRejectedException("您的对话请求过多，请等待当前回复完成后再试");
+                    }
+                    long start = Math.max(virtualTime, lastFinish.getOrDefault(userId, 0L));
+                    ticket.virtualFinish = start + VIRTUAL_SCALE / weight;
+                    lastFinish.put(userId, ticket.virtualFinish);
+                    queuedPerUser.merge(userId, 1, Integer::sum);
+                    queue.add(ticket);
+                    ticket.position = queue.size();
+                }
+            }
+            if (!ticket.queued()) {
+                metricsCollector.recordAdmissionWait(endpoint, Duration.ZERO);
+            }
+            return ticket;
+        }
+
+        void release() {
+            List<Ticket> admitted = new ArrayList<>();
+            synchronized (this) {
+                inFlight--;
+                while (inFlight < limit && !queue.isEmpty()) {
+                    Ticket next = queue.poll();
+                    dequeued(next);
+                    virtualTime = Math.max(virtualTime, next.virtualFinish);
+                    if (next.admit()) {
+                        inFlight++;
+                        admitted.add(next);
+                    }
+                }
+            }
+            admitted.forEach(Ticket::signal);
+        }
+
+        synchronized void remove(Ticket ticket) {
+            if (queue.remove(ticket)) {
+                dequeued(ticket);
+            }
+        }
+
+        // 用户没有排队中的请求时清除其虚拟时间，下次按通道当前的虚拟时间重新开始
+        private void dequeued(Ticket ticket) {
+            if (queuedPerUser.merge(ticket.userId, -1, Integer::sum) <= 0) {
+                queuedPerUser.remove(ticket.userId);
+                lastFinish.remove(ticket.userId);
+            }
+        }
+
+        synchronized int queueDepth() {
+            return queue.size();
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+    }
+}
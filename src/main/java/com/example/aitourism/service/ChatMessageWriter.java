@@ -0,0 +1,263 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.MessageWriterConfig;
+import com.example.aitourism.entity.Message;
+import com.example.aitourism.mapper.ChatMessageMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天消息异步批量写入器（write-behind）
+ * 用户消息、AI回复不再在请求线程上逐条同步插入，而是先进入有界队列，由后台线程攒批后
+ * 通过 MyBatis BATCH 执行器在一个事务内提交（按条数或时间刷新），把 N 次往返 + N 次提交合并为一次。
+ * - 背压：队列满时调用方最多等待 offerTimeoutMs，仍无法入队则在调用线程同步插入
+ * - 读己之写：尚未落库的消息按会话保留在待写缓冲中，getHistory 时与数据库结果合并
+ * - 关闭时停止接收并排空队列
+ */
+@Service
+@Slf4j
+public class ChatMessageWriter {
+
+    private final MessageWriterConfig config;
+    private final ChatMessageMapper chatMessageMapper;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final AiModelMetricsCollector metricsCollector;
+
+    private BlockingQueue<Message> queue;
+    // 待写缓冲：sessionId -> 已入队但尚未提交成功的消息
+    private final ConcurrentMap<String, Queue<Message>> pending = new ConcurrentHashMap<>();
+    private Thread worker;
+    private volatile boolean running;
+
+    public ChatMessageWriter(MessageWriterConfig config,
+                             ChatMessageMapper chatMessageMapper,
+                             SqlSessionFactory sqlSessionFactory,
+                             TransactionTemplate transactionTemplate,
+                             AiModelMetricsCollector metricsCollector) {
+        this.config = config;
+        this.chatMessageMapper = chatMessageMapper;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.transactionTemplate = transactionTemplate;
+        this.metricsCollector = metricsCollector;
+    }
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+        running = true;
+        worker = new Thread(this::runLoop, "message-writer");
+        worker.setDaemon(true);
+        worker.start();
+        metricsCollector.registerMessageWriterGauges(() -> queue.size());
+        log.info("消息批量写入器初始化完成，batchSize: {}, flushInterval: {}ms, 队列容量: {}",
+                config.getBatchSize(), config.getFlushIntervalMs(), config.getQueueCapacity());
+    }
+
+    /**
+     * 写入一条消息：正常情况下仅入队立即返回，队列满且等待超时则同步插入
+     */
+    public void write(Message message) {
+        if (message.getCreateTime() == null) {
+            message.setCreateTime(LocalDateTime.now());
+        }
+        if (!config.isEnabled()) {
+            // 未开启批量写入：直接插入，这是正常路径而非退化，不计入 fallback 指标
+            chatMessageMapper.insertWithCreateTime(message);
+            return;
+        }
+        if (!running) {
+            insertNow(message, "shutdown");
+            return;
+        }
+        Queue<Message> sessionPending = pending.computeIfAbsent(message.getSessionId(), k -> new ConcurrentLinkedQueue<>());
+        sessionPending.add(message);
+        boolean accepted;
+        try {
+            accepted = queue.offer(message, config.getOfferTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            // 背压：MySQL 跟不上时由调用方承担写入，避免无限堆积
+            log.warn("消息写入队列已满，会话 {} 的消息改为同步写入", message.getSessionId());
+            try {
+                insertNow(message, "queue_full");
+            } finally {
+                removePending(message);
+            }
+        }
+    }
+
+    /**
+     * 获取某会话尚未落库的消息（按创建时间排序），用于读己之写
+     */
+    public List<Message> pendingFor(String sessionId) {
+        Queue<Message> sessionPending = pending.get(sessionId);
+        if (sessionPending == null || sessionPending.isEmpty()) {
+            return List.of();
+        }
+        List<Message> result = new ArrayList<>(sessionPending);
+        result.sort(Comparator.comparing(Message::getCreateTime));
+        return result;
+    }
+
+    /**
+     * 把数据库中的消息与待写缓冲合并（按 msgId 去重，待写消息追加在后）
+     */
+    public List<Message> mergePending(String sessionId, List<Message> persisted) {
+        List<Message> unflushed = pendingFor(sessionId);
+        if (unflushed.isEmpty()) {
+            return persisted;
+        }
+        List<Message> merged = new ArrayList<>(persisted.size() + unflushed.size());
+        merged.addAll(persisted);
+        for (Message m : unflushed) {
+            boolean exists = persisted.stream().anyMatch(p -> m.getMsgId().equals(p.getMsgId()));
+            if (!exists) {
+                merged.add(m);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 丢弃某会话尚未落库的消息（删除会话前调用，避免删除后消息又被写回）
+     */
+    public void discard(String sessionId) {
+        queue.removeIf(m -> sessionId.equals(m.getSessionId()));
+        pending.remove(sessionId);
+    }
+
+    private void runLoop() {
+        int batchSize = Math.max(1, config.getBatchSize());
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 以第一条消息为起点，在刷新间隔内尽量攒满一批
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMs());
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // 关闭时被中断：继续循环把剩余消息写完
+                running = false;
+            } catch (Exception e) {
+                log.error("消息批量写入线程异常: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Message> batch) {
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+                    ChatMessageMapper batchMapper = session.getMapper(ChatMessageMapper.class);
+                    for (Message m : batch) {
+                        batchMapper.insertWithCreateTime(m);
+                    }
+                    session.flushStatements();
+                }
+            });
+            metricsCollector.recordMessageBatch(batch.size(), Duration.ofNanos(System.nanoTime() - start), true);
+            log.debug("批量写入 {} 条消息，耗时 {}ms", batch.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            metricsCollector.recordMessageBatch(batch.size(), Duration.ofNanos(System.nanoTime() - start), false);
+            log.warn("批量写入 {} 条消息失败，改为逐条写入: {}", batch.size(), e.getMessage());
+            // 整批回滚后逐条重试，隔离出有问题的消息（如会话已被删除导致外键约束失败）
+            for (Message m : batch) {
+                try {
+                    chatMessageMapper.insertWithCreateTime(m);
+                } catch (Exception ex) {
+                    log.error("消息 {}（会话 {}）写入失败: {}", m.getMsgId(), m.getSessionId(), ex.getMessage());
+                }
+            }
+        } finally {
+            for (Message m : batch) {
+                removePending(m);
+            }
+        }
+    }
+
+    private void insertNow(Message message, String reason) {
+        metricsCollector.recordMessageWriteFallback(reason);
+        chatMessageMapper.insertWithCreateTime(message);
+    }
+
+    private void removePending(Message message) {
+        pending.computeIfPresent(message.getSessionId(), (k, q) -> {
+            q.remove(message);
+            return q.isEmpty() ? null : q;
+        });
+    }
+
+    /**
+     * 关闭时停止接收新消息（之后的写入退化为同步插入），并等待队列排空
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(config.getShutdownTimeoutSeconds()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            log.warn("消息写入队列未能在 {}s 内排空，剩余 {} 条", config.getShutdownTimeoutSeconds(), queue.size());
+            worker.interrupt();
+            return;
+        }
+        // 与关闭并发入队、未被后台线程取走的消息，在这里同步补写
+        Message leftover;
+        while ((leftover = queue.poll()) != null) {
+            try {
+                insertNow(leftover, "shutdown");
+            } catch (Exception e) {
+                log.error("关闭时补写消息 {} 失败: {}", leftover.getMsgId(), e.getMessage());
+            } finally {
+                removePending(leftover);
+            }
+        }
+    }
+}
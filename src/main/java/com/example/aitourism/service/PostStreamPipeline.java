@@ -0,0 +1,297 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.PostStreamConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 流式结束后处理流水线
+ * 将AI回复入库、路线结构化抽取从流式线程中剥离，交给独立的有界线程池执行，
+ * 避免在 doOnComplete 中阻塞 Reactor/Servlet 线程，也不再占用 ForkJoin 公共池。
+ * - 有界队列：队列满时消息入库交给独立的兜底线程（无界队列、单线程，入库不能丢），路线抽取直接进入死信；
+ *   调用方是 Reactor 的 doOnComplete，任何分支都不在调用线程上访问数据库或 Redis
+ * - 重试：路线抽取抛出异常时按退避重试
+ * - 死信：重试耗尽或被拒绝的路线抽取连同回复文本写入 Redis 列表（保留 deadLetterCapacity 条，重启不丢），
+ *   由 takeDeadLetters / retry 重放，重放次数超过 deadLetterReplayLimit 后丢弃
+ */
+@Service
+@Slf4j
+public class PostStreamPipeline {
+
+    static final String DEAD_LETTER_KEY = "ai:post-stream:dead-letters";
+
+    private final PostStreamConfig config;
+    private final AiModelMetricsCollector metricsCollector;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    private ThreadPoolExecutor executor;
+    // 队列满时的入库兜底与死信写入，不占用调用线程
+    private ExecutorService fallbackExecutor;
+    private ScheduledExecutorService retryScheduler;
+    // Redis 中死信条数的近似值（最近一次写入或取出时的列表长度），供监控展示
+    private final AtomicInteger deadLetterCount = new AtomicInteger();
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    public PostStreamPipeline(PostStreamConfig config, AiModelMetricsCollector metricsCollector,
+                              StringRedisTemplate stringRedisTemplate, ObjectMapper objectMapper) {
+        this.config = config;
+        this.metricsCollector = metricsCollector;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 死信记录：保存回复文本以便重新抽取路线，replays 为已重放次数
+     */
+    public record DeadLetter(String sessionId, String reply, String reason, int attempts, int replays, LocalDateTime time) {
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        // 虚拟线程模式下工作线程换成虚拟线程，线程池仍保留，用于约束并发数与有界队列的背压语义
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("post-stream-", 1).factory()
+                : r -> new Thread(r, "post-stream-" + seq.incrementAndGet());
+        executor = new ThreadPoolExecutor(
+                config.getConcurrency(),
+                config.getConcurrency(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity())),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        fallbackExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "post-stream-fallback");
+            t.setDaemon(true);
+            return t;
+        });
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "post-stream-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        metricsCollector.registerPostStreamGauges(
+                () -> executor.getQueue().size(),
+                () -> executor.getActiveCount(),
+                deadLetterCount::get
+        );
+        log.info("后处理流水线初始化完成，并发: {}, 队列容量: {}", config.getConcurrency(), config.getQueueCapacity());
+    }
+
+    /**
+     * 提交一次流式结束后的处理任务
+     * @param sessionId 会话ID
+     * @param reply AI 回复文本（路线抽取进入死信时随之保存，用于重放）
+     * @param persistence 消息入库动作（必须执行，队列满时交给兜底线程执行）
+     * @param routeExtraction 路线抽取（可能较慢，失败时重试）
+     * @param routeSink 路线抽取成功后的处理（校验并写库）
+     */
+    public void submit(String sessionId, String reply, Runnable persistence,
+                       Callable<String> routeExtraction, Consumer<String> routeSink) {
+        RouteTask task = new RouteTask(sessionId, reply, 0, routeExtraction, routeSink, System.nanoTime());
+        try {
+            executor.execute(() -> {
+                runPersistence(sessionId, persistence, task.enqueuedAt());
+                runRouteExtraction(task, 0);
+            });
+        } catch (RejectedExecutionException e) {
+            // 背压：队列已满，入库不能丢，交给兜底线程完成；路线抽取放弃并记入死信
+            log.warn("后处理队列已满，会话 {} 的入库交给兜底线程，路线抽取进入死信", sessionId);
+            try {
+                fallbackExecutor.execute(() -> runPersistence(sessionId, persistence, task.enqueuedAt()));
+            } catch (RejectedExecutionException shuttingDown) {
+                // 应用正在关闭，兜底线程不再接收任务，只能在调用线程完成入库
+                runPersistence(sessionId, persistence, task.enqueuedAt());
+            }
+            deadLetter(task, "queue full", 0);
+        }
+    }
+
+    /**
+     * 重放一条死信：重新抽取路线，再次失败时以 replays + 1 重新记入死信
+     */
+    public void retry(DeadLetter letter, Callable<String> routeExtraction, Consumer<String> routeSink) {
+        RouteTask task = new RouteTask(letter.sessionId(), letter.reply(), letter.replays() + 1,
+                routeExtraction, routeSink, System.nanoTime());
+        try {
+            executor.execute(() -> runRouteExtraction(task, 0));
+        } catch (RejectedExecutionException e) {
+            deadLetter(task, "queue full on replay", 0);
+        }
+    }
+
+    /**
+     * 从 Redis 中取出当前的死信（最早的在前，最多 deadLetterCapacity 条，取出即移除）；
+     * 重放次数已达上限的记录直接丢弃。会访问 Redis，不要在 Reactor 线程上调用
+     */
+    public List<DeadLetter> takeDeadLetters() {
+        List<DeadLetter> letters = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(1, config.getDeadLetterCapacity()); i++) {
+                String json = stringRedisTemplate.opsForList().leftPop(DEAD_LETTER_KEY);
+                if (json == null) {
+                    break;
+                }
+                DeadLetter letter = objectMapper.readValue(json, DeadLetter.class);
+                if (letter.replays() >= config.getDeadLetterReplayLimit()) {
+                    log.error("会话 {} 的路线抽取已重放 {} 次仍失败，丢弃死信: {}", letter.sessionId(), letter.replays(), letter.reason());
+                    metricsCollector.recordPostStreamOutcome("route", "dead_letter_dropped");
+                    continue;
+                }
+                letters.add(letter);
+            }
+            Long size = stringRedisTemplate.opsForList().size(DEAD_LETTER_KEY);
+            deadLetterCount.set(size == null ? 0 : size.intValue());
+        } catch (Exception e) {
+            log.warn("读取后处理死信失败: {}", e.getMessage());
+        }
+        return letters;
+    }
+
+    private void runPersistence(String sessionId, Runnable persistence, long enqueuedAt) {
+        try {
+            persistence.run();
+            metricsCollector.recordPostStreamOutcome("persist", "success");
+        } catch (Exception e) {
+            log.error("会话 {} 的AI回复入库失败: {}", sessionId, e.getMessage(), e);
+            metricsCollector.recordPostStreamOutcome("persist", "error");
+        } finally {
+            metricsCollector.recordPostStreamLatency("persist", Duration.ofNanos(System.nanoTime() - enqueuedAt));
+        }
+    }
+
+    private void runRouteExtraction(RouteTask task, int attempt) {
+        String sessionId = task.sessionId();
+        try {
+            String routes = task.extraction().call();
+            task.sink().accept(routes);
+            metricsCollector.recordPostStreamOutcome("route", attempt == 0 && task.replays() == 0 ? "success" : "retried_success");
+            metricsCollector.recordPostStreamLatency("route", Duration.ofNanos(System.nanoTime() - task.enqueuedAt()));
+        } catch (Exception e) {
+            if (attempt < config.getRouteRetryAttempts()) {
+                int next = attempt + 1;
+                long delay = next * config.getRetryBackoffMs();
+                log.warn("会话 {} 路线抽取失败（第 {} 次），{}ms 后重试: {}", sessionId, next, delay, e.getMessage());
+                metricsCollector.recordPostStreamOutcome("route", "retry");
+                scheduleRetry(task, next, delay);
+            } else {
+                log.error("会话 {} 路线抽取重试耗尽: {}", sessionId, e.getMessage());
+                metricsCollector.recordPostStreamLatency("route", Duration.ofNanos(System.nanoTime() - task.enqueuedAt()));
+                deadLetter(task, String.valueOf(e.getMessage()), attempt + 1);
+            }
+        }
+    }
+
+    private void scheduleRetry(RouteTask task, int attempt, long delayMs) {
+        try {
+            retryScheduler.schedule(() -> {
+                try {
+                    executor.execute(() -> runRouteExtraction(task, attempt));
+                } catch (RejectedExecutionException e) {
+                    deadLetter(task, "queue full on retry", attempt);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            deadLetter(task, "shutting down", attempt);
+        }
+    }
+
+    // 死信写入 Redis 在兜底线程上执行，调用方可能是 Reactor 线程或重试定时器
+    private void deadLetter(RouteTask task, String reason, int attempts) {
+        metricsCollector.recordPostStreamOutcome("route", "dead_letter");
+        DeadLetter letter = new DeadLetter(task.sessionId(), task.reply(), reason, attempts, task.replays(), LocalDateTime.now());
+        try {
+            fallbackExecutor.execute(() -> persistDeadLetter(letter));
+        } catch (RejectedExecutionException e) {
+            persistDeadLetter(letter);
+        }
+    }
+
+    private void persistDeadLetter(DeadLetter letter) {
+        try {
+            Long size = stringRedisTemplate.opsForList().rightPush(DEAD_LETTER_KEY, objectMapper.writeValueAsString(letter));
+            int capacity = Math.max(1, config.getDeadLetterCapacity());
+            if (size != null && size > capacity) {
+                // 超出容量时丢弃最早的记录
+                stringRedisTemplate.opsForList().trim(DEAD_LETTER_KEY, -capacity, -1);
+            }
+            deadLetterCount.set(size == null ? 0 : (int) Math.min(size, capacity));
+        } catch (Exception e) {
+            log.error("会话 {} 的路线抽取死信写入 Redis 失败（{}），原因: {}", letter.sessionId(), e.getMessage(), letter.reason());
+        }
+    }
+
+    /**
+     * 获取当前死信记录（最早的在前，不移除）
+     */
+    public List<DeadLetter> getDeadLetters() {
+        List<DeadLetter> letters = new ArrayList<>();
+        try {
+            List<String> values = stringRedisTemplate.opsForList().range(DEAD_LETTER_KEY, 0, -1);
+            if (values != null) {
+                for (String json : values) {
+                    letters.add(objectMapper.readValue(json, DeadLetter.class));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取后处理死信失败: {}", e.getMessage());
+        }
+        return letters;
+    }
+
+    // 一次路线抽取任务，重试与写入死信时沿用
+    private record RouteTask(String sessionId, String reply, int replays,
+                             Callable<String> extraction, Consumer<String> sink, long enqueuedAt) {
+    }
+
+    /**
+     * 关闭时停止接收新任务，并等待已入队的任务执行完毕
+     */
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(config.getShutdownTimeoutSeconds(), TimeUnit.SECONDS)) {
+                log.warn("后处理队列未能在 {}s 内排空，剩余 {} 个任务", config.getShutdownTimeoutSeconds(), executor.getQueue().size());
+                executor.shutdownNow();
+            }
+            // 兜底线程上是必须完成的入库与死信写入，在主线程池之后关闭
+            fallbackExecutor.shutdown();
+            if (!fallbackExecutor.awaitTermination(config.getShutdownTimeoutSeconds(), TimeUnit.SECONDS)) {
+                log.warn("后处理兜底线程未能在 {}s 内完成", config.getShutdownTimeoutSeconds());
+                fallbackExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            fallbackExecutor.shutdownNow();
+        }
+    }
+}
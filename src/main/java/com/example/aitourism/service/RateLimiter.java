@@ -0,0 +1,175 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.RateLimitConfig;
+import com.example.aitourism.mapper.RoleMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分布式令牌桶限流
+ * 令牌桶状态保存在 Redis 哈希中（tokens、ts），补充与扣减在一个 Lua 脚本内完成，每次检查只有一次往返；
+ * 时间取 Redis 服务器时间，多节点之间不受本机时钟偏差影响。
+ * 本地预取：访问 Redis 时一次取出 prefetch 个令牌，多出的令牌留在本地，在 prefetchTtlMs 内的后续请求直接扣减本地令牌，
+ * 不再访问 Redis。预取的令牌已从全局桶中扣除，多节点下不会超发，只会在令牌过期作废时略微偏严。
+ * Redis 不可用时放行（限流只是保护措施，不应成为单点故障）。
+ */
+@Service
+@Slf4j
+public class RateLimiter {
+
+    // 返回 {本次取得的令牌数, 取不到令牌时建议的重试等待毫秒数}
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>(
+            "local capacity = tonumber(ARGV[1]) "
+                    + "local rate = tonumber(ARGV[2]) "
+                    + "local requested = tonumber(ARGV[3]) "
+                    + "local t = redis.call('TIME') "
+                    + "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) "
+                    + "local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts') "
+                    + "local tokens = tonumber(state[1]) "
+                    + "local ts = tonumber(state[2]) "
+                    + "if tokens == nil or ts == nil then tokens = capacity ts = now end "
+                    + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate) "
+                    + "local granted = math.min(requested, math.floor(tokens)) "
+                    + "tokens = tokens - granted "
+                    + "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now) "
+                    + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000) "
+                    + "local retry = 0 "
+                    + "if granted == 0 then retry = math.ceil((1 - tokens) / rate) end "
+                    + "return {granted, retry}",
+            List.class);
+
+    private final RateLimitConfig config;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RoleMapper roleMapper;
+    private final AiModelMetricsCollector metricsCollector;
+
+    // 路径 -> 规则名
+    private final Map<String, String> rulesByPath = new HashMap<>();
+    // 桶键 -> 本地预取的剩余令牌
+    private Cache<String, AtomicInteger> localTokens;
+    private Cache<String, List<String>> userRoles;
+
+    public RateLimiter(RateLimitConfig config, StringRedisTemplate stringRedisTemplate,
+                       RoleMapper roleMapper, AiModelMetricsCollector metricsCollector) {
+        this.config = config;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.roleMapper = roleMapper;
+        this.metricsCollector = metricsCollector;
+    }
+
+    @PostConstruct
+    public void init() {
+        config.getRules().forEach((name, rule) -> {
+            if (rule.getPath() != null) {
+                rulesByPath.put(rule.getPath(), name);
+            }
+        });
+        localTokens = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofMillis(Math.max(1, config.getPrefetchTtlMs())))
+                .build();
+        userRoles = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(60))
+                .build();
+        if (config.isEnabled()) {
+            log.info("接口限流初始化完成，规则: {}", rulesByPath);
+        }
+    }
+
+    /**
+     * 限流结果
+     *
+     * @param allowed 是否放行
+     * @param retryAfterMs 被拒绝时建议的重试等待时间（毫秒）
+     */
+    public record Decision(boolean allowed, long retryAfterMs) {
+        static final Decision ALLOWED = new Decision(true, 0);
+    }
+
+    /**
+     * 检查一次请求
+     *
+     * @param path 请求路径（不含 context-path）
+     * @param userId 已登录用户ID，未登录时为 null
+     * @param clientIp 客户端 IP，未登录时作为限流主体
+     */
+    public Decision check(String path, String userId, String clientIp) {
+        String ruleName = config.isEnabled() ? rulesByPath.get(path) : null;
+        if (ruleName == null) {
+            return Decision.ALLOWED;
+        }
+        long start = System.nanoTime();
+        RateLimitConfig.Rule rule = config.getRules().get(ruleName);
+        String role = userId == null ? null : matchRole(rule, userId);
+        RateLimitConfig.Limit limit = role == null ? rule : rule.getRoles().get(role);
+        String subject = userId != null ? "u:" + userId : "ip:" + clientIp;
+        String key = config.getKeyPrefix() + ruleName + ":" + (role == null ? "default" : role) + ":" + subject;
+
+        // 优先扣减本地预取的令牌
+        AtomicInteger local = localTokens.getIfPresent(key);
+        if (local != null && local.getAndDecrement() > 0) {
+            metricsCollector.recordRateLimitDecision(ruleName, "allowed", "local", Duration.ofNanos(System.nanoTime() - start));
+            return Decision.ALLOWED;
+        }
+
+        int capacity = Math.max(1, limit.getCapacity());
+        int prefetch = Math.max(1, Math.min(limit.getPrefetch(), capacity));
+        double ratePerMs = Math.max(1e-9, limit.getRefillPerMinute() / 60_000.0);
+        try {
+            List<?> result = stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, List.of(key),
+                    String.valueOf(capacity), String.valueOf(ratePerMs), String.valueOf(prefetch));
+            long granted = result == null || result.isEmpty() ? 0 : ((Number) result.get(0)).longValue();
+            long retryAfterMs = result == null || result.size() < 2 ? 1000 : ((Number) result.get(1)).longValue();
+            Duration cost = Duration.ofNanos(System.nanoTime() - start);
+            if (granted <= 0) {
+                metricsCollector.recordRateLimitDecision(ruleName, "rejected", "redis", cost);
+                log.info("限流拒绝：规则 {}，主体 {}，{}ms 后可重试", ruleName, subject, retryAfterMs);
+                return new Decision(false, retryAfterMs);
+            }
+            if (granted > 1) {
+                localTokens.put(key, new AtomicInteger((int) granted - 1));
+            }
+            metricsCollector.recordRateLimitDecision(ruleName, "allowed", "redis", cost);
+            return Decision.ALLOWED;
+        } catch (Exception e) {
+            metricsCollector.recordRateLimitDecision(ruleName, "error", "redis", Duration.ofNanos(System.nanoTime() - start));
+            log.warn("限流检查失败，放行本次请求: {}", e.getMessage());
+            return Decision.ALLOWED;
+        }
+    }
+
+    // 用户具有的第一个配置了单独限额的角色
+    private String matchRole(RateLimitConfig.Rule rule, String userId) {
+        if (rule.getRoles().isEmpty()) {
+            return null;
+        }
+        List<String> roles = userRoles.get(userId, id -> {
+            try {
+                return roleMapper.findRoleCodesByUserId(id);
+            } catch (Exception e) {
+                log.warn("查询用户 {} 的角色失败，按默认限额限流: {}", id, e.getMessage());
+                return List.of();
+            }
+        });
+        for (String role : rule.getRoles().keySet()) {
+            if (roles.contains(role)) {
+                return role;
+            }
+        }
+        return null;
+    }
+}
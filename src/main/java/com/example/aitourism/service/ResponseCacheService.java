@@ -0,0 +1,166 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.ai.model.TokenCounter;
+import com.example.aitourism.config.AbTestConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * 首轮对话响应缓存
+ * 针对没有历史记忆的首轮提问（如“请为我规划北京市3日旅游攻略”），按
+ * 归一化后的问题 + 模型名 + 系统提示词版本 精确匹配，缓存最终回复与路线结构体（dailyRoutes）。
+ * 命中时按固定节奏分段回放，前端看到的仍是正常的流式输出，但不再调用大模型与路线抽取。
+ */
+@Service
+@Slf4j
+public class ResponseCacheService {
+
+    private static final String KEY_PREFIX = "ai:resp-cache:";
+    private static final String SYSTEM_PROMPT_RESOURCE = "prompt/tour-route-planning-system-prompt.txt";
+
+    // 归一化：合并空白，去掉句尾标点
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[。．.！!？?~～\\s]+$");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AbTestConfig abTestConfig;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${openai.model-name}")
+    private String modelName;
+
+    // 系统提示词内容摘要，提示词文件变化时缓存键随之变化
+    private String systemPromptDigest = "";
+
+    /**
+     * 缓存内容
+     * @param reply 完整回复
+     * @param dailyRoutes 路线结构体 JSON
+     * @param outputTokens 回复的估算输出Token数（命中时计为节省量）
+     */
+    public record CachedResponse(String reply, String dailyRoutes, long outputTokens) {
+    }
+
+    public ResponseCacheService(StringRedisTemplate stringRedisTemplate, AbTestConfig abTestConfig) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.abTestConfig = abTestConfig;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            byte[] prompt = new ClassPathResource(SYSTEM_PROMPT_RESOURCE).getContentAsByteArray();
+            systemPromptDigest = sha256(new String(prompt, StandardCharsets.UTF_8)).substring(0, 16);
+        } catch (Exception e) {
+            log.warn("读取系统提示词失败，响应缓存键仅使用版本号: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 查询缓存；Redis 不可用时按未命中处理
+     */
+    public Optional<CachedResponse> lookup(String prompt) {
+        try {
+            String json = stringRedisTemplate.opsForValue().get(buildKey(prompt));
+            if (json == null) {
+                return Optional.empty();
+            }
+            JsonNode node = objectMapper.readTree(json);
+            return Optional.of(new CachedResponse(
+                    node.path("reply").asText(),
+                    node.path("daily_routes").asText(),
+                    node.path("output_tokens").asLong()
+            ));
+        } catch (Exception e) {
+            log.warn("读取响应缓存失败: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 写入缓存（仅在回复完整且路线结构体校验通过后调用）
+     */
+    public void store(String prompt, String reply, String dailyRoutes) {
+        try {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("reply", reply);
+            node.put("daily_routes", dailyRoutes);
+            node.put("output_tokens", TokenCounter.count(reply));
+            long ttl = abTestConfig.getResponseCache().getTtlSeconds();
+            stringRedisTemplate.opsForValue().set(buildKey(prompt), objectMapper.writeValueAsString(node), Duration.ofSeconds(ttl));
+            log.info("写入首轮对话响应缓存，TTL {}s", ttl);
+        } catch (Exception e) {
+            log.warn("写入响应缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将缓存的回复切分为若干段，按固定间隔回放（第一段立即发送）
+     */
+    public Flux<String> replay(CachedResponse cached) {
+        AbTestConfig.ResponseCacheAbTest config = abTestConfig.getResponseCache();
+        int chunkChars = Math.max(1, config.getReplayChunkChars());
+        String reply = cached.reply();
+        List<String> chunks = new ArrayList<>(reply.length() / chunkChars + 1);
+        int i = 0;
+        while (i < reply.length()) {
+            int end = Math.min(reply.length(), i + chunkChars);
+            // 不把代理对拆到两帧
+            if (end < reply.length() && Character.isHighSurrogate(reply.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(reply.substring(i, end));
+            i = end;
+        }
+        if (chunks.isEmpty()) {
+            return Flux.empty();
+        }
+        Duration interval = Duration.ofMillis(Math.max(0, config.getReplayIntervalMs()));
+        Flux<String> rest = Flux.fromIterable(chunks.subList(1, chunks.size()));
+        return Flux.just(chunks.get(0)).concatWith(interval.isZero() ? rest : rest.delayElements(interval));
+    }
+
+    private String buildKey(String prompt) {
+        String version = abTestConfig.getResponseCache().getSystemPromptVersion();
+        return KEY_PREFIX + sha256(normalize(prompt) + "|" + modelName + "|" + version + "|" + systemPromptDigest);
+    }
+
+    /**
+     * 问题归一化：全角转半角（NFKC）、小写、合并空白、去掉句尾标点
+     */
+    static String normalize(String prompt) {
+        if (prompt == null) {
+            return "";
+        }
+        String s = Normalizer.normalize(prompt, Normalizer.Form.NFKC).toLowerCase().trim();
+        s = WHITESPACE.matcher(s).replaceAll(" ");
+        return TRAILING_PUNCTUATION.matcher(s).replaceAll("");
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.SingleFlightConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 相同请求合并（single-flight）
+ * 以 调用类型 + 请求指纹 为键，同一时刻只允许一个调用真正执行，其余并发调用方等待并共享同一结果，
+ * 用于标题生成、路线结构体抽取、天气查询等在流量高峰时容易被重复触发的昂贵调用。
+ * - 本节点内：共享同一个在途 CompletableFuture，调用完成后立即移除，不做结果缓存
+ * - 跨节点（可选）：通过 Redis SET NX 锁选出唯一执行者，执行结果短暂写入 Redis 供其他节点读取
+ */
+@Component
+@Slf4j
+public class SingleFlight {
+
+    private static final String LOCK_PREFIX = "ai:single-flight:lock:";
+    private static final String RESULT_PREFIX = "ai:single-flight:result:";
+
+    // 仅在锁仍属于自己时删除，避免误删其他节点在锁过期后重新获取的锁
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final SingleFlightConfig config;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AiModelMetricsCollector metricsCollector;
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    // 本节点标识，作为 Redis 锁的值
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public SingleFlight(SingleFlightConfig config, StringRedisTemplate stringRedisTemplate,
+                        AiModelMetricsCollector metricsCollector) {
+        this.config = config;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.metricsCollector = metricsCollector;
+    }
+
+    /**
+     * 异步调用合并：并发调用方共享 origin 返回的同一个 Future
+     * 返回给每个调用方的是独立的派生 Future，调用方取消或追加处理不会影响其他调用方
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String flight, String key, Supplier<CompletableFuture<T>> origin) {
+        if (!config.isEnabled()) {
+            return origin.get();
+        }
+        String flightKey = flightKey(flight, key);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, mine);
+        if (existing != null) {
+            metricsCollector.recordSingleFlight(flight, "coalesced");
+            return existing.thenApply(v -> (T) v);
+        }
+        metricsCollector.recordSingleFlight(flight, "origin");
+        CompletableFuture<T> upstream;
+        try {
+            upstream = origin.get();
+        } catch (Throwable e) {
+            inFlight.remove(flightKey, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        upstream.whenComplete((value, error) -> {
+            // 先移除再完成，完成之后到达的调用会重新发起
+            inFlight.remove(flightKey, mine);
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete(value);
+            }
+        });
+        return mine.thenApply(v -> (T) v);
+    }
+
+    /**
+     * 同步调用合并：第一个到达的调用方在自己的线程上执行，其余调用方阻塞等待同一结果
+     * 等待超过 waitTimeoutMs 的调用方不再等待，改为自行执行
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String flight, String key, Callable<T> work) throws Exception {
+        if (!config.isEnabled()) {
+            return work.call();
+        }
+        String flightKey = flightKey(flight, key);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, mine);
+        if (existing != null) {
+            metricsCollector.recordSingleFlight(flight, "coalesced");
+            try {
+                return (T) existing.get(Math.max(1, config.getWaitTimeoutMs()), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
+            } catch (TimeoutException e) {
+                metricsCollector.recordSingleFlight(flight, "wait_timeout");
+                log.warn("等待在途的 {} 调用超过 {}ms，本调用自行执行", flight, config.getWaitTimeoutMs());
+                return work.call();
+            }
+        }
+        metricsCollector.recordSingleFlight(flight, "origin");
+        T value;
+        try {
+            value = work.call();
+        } catch (Throwable e) {
+            // Error 也要移除在途记录并通知等待方，否则该键之后的调用会一直等待一个永远不会完成的 Future
+            inFlight.remove(flightKey, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(flightKey, mine);
+        mine.complete(value);
+        return value;
+    }
+
+    /**
+     * 同步调用合并，并在开启时通过 Redis 跨节点合并（结果需为字符串，以便跨节点共享）
+     * 指标中 origin 为本节点实际发起的次数，其中复用了其他节点结果的部分另计为 remote
+     */
+    public String callShared(String flight, String key, Callable<String> work) throws Exception {
+        if (!config.isEnabled() || !config.getRedis().isEnabled()) {
+            return call(flight, key, work);
+        }
+        return call(flight, key, () -> callAcrossNodes(flight, key, work));
+    }
+
+    private String callAcrossNodes(String flight, String key, Callable<String> work) throws Exception {
+        SingleFlightConfig.Redis redis = config.getRedis();
+        String fingerprint = flight + ":" + fingerprint(key);
+        String lockKey = LOCK_PREFIX + fingerprint;
+        String resultKey = RESULT_PREFIX + fingerprint;
+        boolean leader;
+        try {
+            String ready = stringRedisTemplate.opsForValue().get(resultKey);
+            if (ready != null) {
+                metricsCollector.recordSingleFlight(flight, "remote");
+                return ready;
+            }
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(lockKey, nodeId, Duration.ofMillis(redis.getLockTtlMs()));
+            leader = Boolean.TRUE.equals(acquired);
+            if (!leader) {
+                String remote = awaitRemote(lockKey, resultKey, redis);
+                if (remote != null) {
+                    metricsCollector.recordSingleFlight(flight, "remote");
+                    return remote;
+                }
+                // 其他节点失败或超时，由本节点自行执行
+                log.debug("等待其他节点的 {} 结果超时，本节点自行执行", flight);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (Exception e) {
+            // Redis 不可用时退化为仅本节点合并
+            log.warn("single-flight 跨节点协调失败，退化为本节点执行: {}", e.getMessage());
+            leader = false;
+        }
+        if (!leader) {
+            return work.call();
+        }
+
+        try {
+            String value = work.call();
+            if (value != null) {
+                try {
+                    stringRedisTemplate.opsForValue().set(resultKey, value, Duration.ofMillis(redis.getResultTtlMs()));
+                } catch (Exception e) {
+                    log.warn("写入 single-flight 结果失败: {}", e.getMessage());
+                }
+            }
+            return value;
+        } finally {
+            try {
+                stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey), nodeId);
+            } catch (Exception e) {
+                log.warn("释放 single-flight 锁失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    // 轮询等待持锁节点写入结果；锁消失但没有结果（对方失败）或超过锁有效期时返回 null
+    private String awaitRemote(String lockKey, String resultKey, SingleFlightConfig.Redis redis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + redis.getLockTtlMs();
+        long pollInterval = Math.max(10, redis.getPollIntervalMs());
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(pollInterval);
+            String value = stringRedisTemplate.opsForValue().get(resultKey);
+            if (value != null) {
+                return value;
+            }
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(lockKey))) {
+                return stringRedisTemplate.opsForValue().get(resultKey);
+            }
+        }
+        return null;
+    }
+
+    private static String flightKey(String flight, String key) {
+        // 键可能是完整的回复文本，统一转为定长指纹，避免长字符串常驻内存
+        return flight + ":" + fingerprint(key);
+    }
+
+    private static String fingerprint(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(String.valueOf(key).getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private static Exception unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof Exception e) {
+            return e;
+        }
+        return new RuntimeException(cause);
+    }
+}
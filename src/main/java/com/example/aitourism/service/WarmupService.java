@@ -0,0 +1,205 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.ai.MemoryAssistantServiceFactory;
+import com.example.aitourism.ai.mcp.McpClientService;
+import com.example.aitourism.ai.memory.ChatMemoryCodec;
+import com.example.aitourism.ai.model.ModelClientRegistry;
+import com.example.aitourism.ai.model.TokenCounter;
+import com.example.aitourism.config.WarmupConfig;
+import com.example.aitourism.entity.Session;
+import com.example.aitourism.mapper.SessionMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.example.aitourism.sse.SseFrameEncoder;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 启动预热
+ * 部署后的第一次对话要承担 JIT 编译、AiServices 代理生成、工具规格反射、与模型端点建立连接、
+ * MySQL/Redis 连接池扩容等一次性开销。这里在 ApplicationRunner 阶段（服务报告就绪之前）依次完成：
+ * 1) models：构建模型并与主模型、小模型端点建立连接
+ * 2) assistant：构建 AI 服务（蓝图模式下已构建）
+ * 3) tools：探测 MCP 工具端点
+ * 4) hot_paths：反复执行 SSE 编码、记忆编解码与 token 计数，触发 JIT 编译
+ * 5) stores：走一遍记忆读取（Redis）与历史查询（MySQL），建立连接
+ * 6) recent_sessions：回填最近活跃会话的记忆
+ * 每一步失败只记录、不中断；整体超过 timeoutSeconds 时不再阻塞就绪，剩余步骤在后台继续。
+ */
+@Service
+@Slf4j
+public class WarmupService implements ApplicationRunner {
+
+    private static final String WARMUP_MEMORY_ID = "__warmup__";
+
+    private final WarmupConfig config;
+    private final ModelClientRegistry modelClientRegistry;
+    private final MemoryAssistantServiceFactory assistantServiceFactory;
+    private final McpClientService mcpClientService;
+    private final SseFrameEncoder sseFrameEncoder;
+    private final ChatMemoryCodec chatMemoryCodec;
+    private final ChatMemoryStore chatMemoryStore;
+    private final SessionMapper sessionMapper;
+    private final AiModelMetricsCollector metricsCollector;
+
+    private volatile boolean ready;
+    private volatile boolean timedOut;
+    // 步骤名 -> 结果（耗时或失败原因），按执行顺序
+    private final Map<String, String> steps = new LinkedHashMap<>();
+
+    public WarmupService(WarmupConfig config,
+                         ModelClientRegistry modelClientRegistry,
+                         MemoryAssistantServiceFactory assistantServiceFactory,
+                         McpClientService mcpClientService,
+                         SseFrameEncoder sseFrameEncoder,
+                         ChatMemoryCodec chatMemoryCodec,
+                         ChatMemoryStore chatMemoryStore,
+                         SessionMapper sessionMapper,
+                         AiModelMetricsCollector metricsCollector) {
+        this.config = config;
+        this.modelClientRegistry = modelClientRegistry;
+        this.assistantServiceFactory = assistantServiceFactory;
+        this.mcpClientService = mcpClientService;
+        this.sseFrameEncoder = sseFrameEncoder;
+        this.chatMemoryCodec = chatMemoryCodec;
+        this.chatMemoryStore = chatMemoryStore;
+        this.sessionMapper = sessionMapper;
+        this.metricsCollector = metricsCollector;
+    }
+
+    /**
+     * 预热是否已结束（完成或超时），供健康检查使用
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * 各步骤的执行结果
+     */
+    public Map<String, String> steps() {
+        synchronized (steps) {
+            return new LinkedHashMap<>(steps);
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!config.isEnabled()) {
+            ready = true;
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> warmup = new CompletableFuture<>();
+        Thread worker = new Thread(() -> {
+            try {
+                runSteps();
+                warmup.complete(null);
+            } catch (Throwable t) {
+                warmup.completeExceptionally(t);
+            }
+        }, "warmup");
+        worker.setDaemon(true);
+        worker.start();
+        try {
+            warmup.get(config.getTimeoutSeconds(), TimeUnit.SECONDS);
+            log.info("启动预热完成，耗时 {}ms: {}", (System.nanoTime() - start) / 1_000_000, steps());
+        } catch (TimeoutException e) {
+            timedOut = true;
+            log.warn("启动预热超过 {}s 未完成，不再阻塞就绪，剩余步骤在后台继续: {}", config.getTimeoutSeconds(), steps());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("启动预热异常结束: {}", e.getMessage());
+        } finally {
+            ready = true;
+        }
+    }
+
+    private void runSteps() {
+        Duration endpointTimeout = Duration.ofSeconds(config.getEndpointTimeoutSeconds());
+        step("models", () -> modelClientRegistry.warmup(endpointTimeout));
+        step("assistant", assistantServiceFactory::warmup);
+        if (config.isToolEndpointsEnabled()) {
+            step("tools", () -> {
+                if (!mcpClientService.pingAny(config.getEndpointTimeoutSeconds())) {
+                    throw new IllegalStateException("MCP 端点均不可达");
+                }
+            });
+        }
+        step("hot_paths", this::warmupHotPaths);
+        step("stores", () -> chatMemoryStore.getMessages(WARMUP_MEMORY_ID));
+        step("recent_sessions", () -> {
+            List<Session> sessions = sessionMapper.findAll(0, config.getRecentSessions());
+            for (Session session : sessions) {
+                assistantServiceFactory.prewarmMemory(session.getSessionId());
+            }
+        });
+    }
+
+    // 反复执行对话请求路径上的纯 CPU 代码，使其在真实流量到来前完成 JIT 编译
+    private void warmupHotPaths() {
+        List<ChatMessage> samples = List.of(
+                SystemMessage.from("你是一名专业的旅游路线规划助手，需要根据用户需求给出按天划分的行程安排。"),
+                UserMessage.from("请为我规划杭州市3日旅游攻略，预算适中，喜欢博物馆和当地美食"),
+                AiMessage.from(ToolExecutionRequest.builder()
+                        .id("warmup").name("getWeather").arguments("{\"cityName\":\"杭州\",\"dayCount\":3}").build()),
+                ToolExecutionResultMessage.from("warmup", "getWeather",
+                        "{\"city\":\"杭州\",\"forecasts\":[{\"date\":\"2025-10-01\",\"dayweather\":\"多云\",\"daytemp\":\"25\"}]}"),
+                AiMessage.from("# 杭州3日旅游攻略\n## 第1天\n- 上午：游览西湖，从断桥出发沿白堤步行至孤山。\n"));
+        long sink = 0;
+        for (int i = 0; i < config.getJitIterations(); i++) {
+            for (ChatMessage message : samples) {
+                sink += chatMemoryCodec.decode(chatMemoryCodec.encode(message)).hashCode();
+            }
+            sink += sseFrameEncoder.textFrame("第" + i + "天：\"西湖\"\n").length();
+            sink += sseFrameEncoder.eventFrame("title", Map.of("session_id", "warmup", "title", "杭州三日游")).length();
+            sink += TokenCounter.count(samples.get(3).toString());
+        }
+        log.debug("热点代码预热完成: {}", sink);
+    }
+
+    private void step(String name, WarmupStep step) {
+        long start = System.nanoTime();
+        String outcome = "success";
+        String result;
+        try {
+            step.run();
+            result = (System.nanoTime() - start) / 1_000_000 + "ms";
+        } catch (Exception e) {
+            outcome = e instanceof TimeoutException ? "timeout" : "error";
+            result = outcome + ": " + e.getMessage();
+            log.warn("启动预热步骤 {} 失败: {}", name, e.getMessage());
+        }
+        Duration cost = Duration.ofNanos(System.nanoTime() - start);
+        metricsCollector.recordWarmupStep(name, outcome, cost);
+        synchronized (steps) {
+            steps.put(name, result);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WarmupStep {
+        void run() throws Exception;
+    }
+}
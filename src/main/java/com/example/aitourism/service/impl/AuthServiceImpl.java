@@ -1,5 +1,6 @@
 package com.example.aitourism.service.impl;
 
+import com.example.aitourism.ai.memory.MemoryPrewarmer;
 import com.example.aitourism.dto.user.LoginResponse;
 import com.example.aitourism.dto.user.RefreshTokenResponse;
 import com.example.aitourism.dto.user.UserInfoResponse;
@@ -26,12 +27,15 @@ public class AuthServiceImpl implements AuthService {
     private final UserMapper userMapper;
     private final RoleMapper roleMapper;
     private final RefreshTokenMapper refreshTokenMapper;
+    private final MemoryPrewarmer memoryPrewarmer;
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
-    public AuthServiceImpl(UserMapper userMapper, RoleMapper roleMapper, RefreshTokenMapper refreshTokenMapper) {
+    public AuthServiceImpl(UserMapper userMapper, RoleMapper roleMapper, RefreshTokenMapper refreshTokenMapper,
+                           MemoryPrewarmer memoryPrewarmer) {
         this.userMapper = userMapper;
         this.roleMapper = roleMapper;
         this.refreshTokenMapper = refreshTokenMapper;
+        this.memoryPrewarmer = memoryPrewarmer;
     }
 
     @Override
@@ -66,6 +70,9 @@ public class AuthServiceImpl implements AuthService {
         response.setRefresh_token(rt.getRefreshToken());
         response.setRefresh_expires_in(2592000L);
         response.setUser(userInfo);
+
+        // 异步预热最近会话的对话记忆，用户进入会话后的第一条消息无需回源
+        memoryPrewarmer.prewarmUser(user.getUserId());
         
         log.info("登陆成功，返回：" + response);
         return response;
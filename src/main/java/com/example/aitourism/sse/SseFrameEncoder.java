@@ -0,0 +1,185 @@
+package com.example.aitourism.sse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * SSE 帧编码器
+ * 直接把 choices 信封写入线程内复用的 StringBuilder，替代逐 token 的 String.format + replace：
+ * - 不再每个 token 解析一次格式串、产生多次中间字符串拷贝
+ * - 对引号、反斜杠及全部控制字符做完整的 JSON 转义，避免 token 中含 " 或 \ 时帧被截断
+ * 控制器的错误帧与服务层的 token 帧共用同一编码器，模型名取自配置而不是写死。
+ * 服务层输出的是编码好的帧字符串，控制器通过 {@link #toServerSentEvent(String)} 转成 ServerSentEvent 再写出。
+ */
+@Component
+public class SseFrameEncoder {
+
+    /**
+     * 流结束帧（内容固定，直接复用同一个字符串）
+     */
+    public static final String STOP_FRAME = "data: {\"choices\":[{\"finish_reason\":\"stop\"}]}\n\n";
+
+    private static final String FRAME_PREFIX = "data: {\"choices\":[{\"index\":0,\"text\":\"";
+    private static final String FINISH_REASON = "\",\"finish_reason\":\"stop\",\"model\":\"";
+    private static final String FRAME_SUFFIX = "\"}]}\n\n";
+
+    private static final String EVENT_PREFIX = "event: ";
+    private static final String EVENT_DATA = "\ndata: ";
+    private static final String FRAME_END = "\n\n";
+
+    // 缓冲区超过该大小时不再放回线程本地，防止一次超长回复让每个线程长期持有大数组
+    private static final int MAX_RETAINED_CAPACITY = 8 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    // 默认模型名（已转义），与 FINISH_REASON 拼好后缓存，每帧只追加一次
+    private final String defaultModelTail;
+
+    public SseFrameEncoder(@Value("${openai.model-name}") String modelName) {
+        this.defaultModelTail = modelTail(modelName);
+    }
+
+    /**
+     * 编码一个文本帧，使用配置中的默认模型名
+     */
+    public String textFrame(String text) {
+        return encodeText(text, defaultModelTail);
+    }
+
+    /**
+     * 编码一个文本帧，指定模型名（如路由到其他模型时）
+     */
+    public String textFrame(String text, String modelName) {
+        return encodeText(text, modelTail(modelName));
+    }
+
+    /**
+     * 编码一个具名事件帧，data 为扁平的字符串键值 JSON 对象，例如：
+     * event: title
+     * data: {"session_id":"xxx","title":"北京三日游"}
+     */
+    public String eventFrame(String event, Map<String, String> data) {
+        StringBuilder sb = acquire();
+        sb.append("event: ").append(event).append("\ndata: {");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append('"');
+            appendEscaped(sb, entry.getKey());
+            sb.append("\":");
+            if (entry.getValue() == null) {
+                sb.append("null");
+            } else {
+                sb.append('"');
+                appendEscaped(sb, entry.getValue());
+                sb.append('"');
+            }
+        }
+        sb.append("}\n\n");
+        return release(sb);
+    }
+
+    /**
+     * 把编码好的帧转换为 ServerSentEvent，交给 Spring 按 SSE 格式写出
+     * Spring 会把 text/event-stream 响应中的普通字符串元素整体包进 data 字段，
+     * 具名事件帧若直接作为字符串返回，event 行会变成 data 的一部分，前端无法按事件名区分；
+     * 因此具名事件帧拆成事件名与 data 两部分，其余帧原样作为 data（与之前的输出保持一致）。
+     */
+    public static ServerSentEvent<String> toServerSentEvent(String frame) {
+        if (frame != null && frame.startsWith(EVENT_PREFIX)) {
+            int dataStart = frame.indexOf(EVENT_DATA);
+            if (dataStart > 0) {
+                String event = frame.substring(EVENT_PREFIX.length(), dataStart);
+                int dataEnd = frame.endsWith(FRAME_END) ? frame.length() - FRAME_END.length() : frame.length();
+                String data = frame.substring(dataStart + EVENT_DATA.length(), Math.max(dataStart + EVENT_DATA.length(), dataEnd));
+                return ServerSentEvent.builder(data).event(event).build();
+            }
+        }
+        return ServerSentEvent.builder(frame).build();
+    }
+
+    private String encodeText(String text, String modelTail) {
+        StringBuilder sb = acquire();
+        sb.append(FRAME_PREFIX);
+        appendEscaped(sb, text);
+        sb.append(modelTail);
+        return release(sb);
+    }
+
+    private static String modelTail(String modelName) {
+        StringBuilder sb = new StringBuilder(FINISH_REASON.length() + FRAME_SUFFIX.length() + 32);
+        sb.append(FINISH_REASON);
+        appendEscaped(sb, modelName);
+        sb.append(FRAME_SUFFIX);
+        return sb.toString();
+    }
+
+    private static StringBuilder acquire() {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static String release(StringBuilder sb) {
+        String frame = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+        return frame;
+    }
+
+    /**
+     * 按 JSON 字符串规则转义并追加到缓冲区（RFC 8259）
+     * 无需转义的连续片段整段追加，只有遇到需要转义的字符才逐个处理
+     */
+    public static void appendEscaped(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        int len = value.length();
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                // 其余控制字符，以及 JS 中会被当作换行的 U+2028/U+2029，统一输出为 \\u 加四位十六进制
+                if (start < i) {
+                    sb.append(value, start, i);
+                }
+                sb.append('\\').append('u')
+                        .append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+                        .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+                start = i + 1;
+                continue;
+            } else {
+                continue;
+            }
+            if (start < i) {
+                sb.append(value, start, i);
+            }
+            sb.append(replacement);
+            start = i + 1;
+        }
+        if (start < len) {
+            sb.append(value, start, len);
+        }
+    }
+}
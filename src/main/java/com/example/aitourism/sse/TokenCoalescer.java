@@ -0,0 +1,200 @@
+package com.example.aitourism.sse;
+
+import com.example.aitourism.config.SseCoalescingConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 流式 token 合并器
+ * 把模型逐个输出的 token 按时间窗口或字节阈值合并后再交给 SSE 编码，减少帧数与 flush 次数：
+ * - 第一个 token 立即发送，不影响首 token 延迟
+ * - 之后的 token 先缓存，窗口到期或累计字节数达到阈值时合并为一帧发送
+ * - 流结束或出错时先把剩余内容发送出去
+ * 关闭合并时原样透传，每个 token 仍独立成帧。
+ */
+@Component
+public class TokenCoalescer {
+
+    private final SseCoalescingConfig config;
+    private final AiModelMetricsCollector metricsCollector;
+    // 窗口定时器使用 Reactor 共享的 parallel 调度器，不额外创建线程
+    private final Scheduler scheduler = Schedulers.parallel();
+
+    public TokenCoalescer(SseCoalescingConfig config, AiModelMetricsCollector metricsCollector) {
+        this.config = config;
+        this.metricsCollector = metricsCollector;
+    }
+
+    /**
+     * 对 token 流做合并；返回的每个元素对应一个待编码的 SSE 帧
+     */
+    public Flux<String> coalesce(Flux<String> tokens) {
+        if (!config.isEnabled()) {
+            return tokens.doOnNext(token -> metricsCollector.recordSseFrame(false, utf8Length(token), 1));
+        }
+        long windowMs = Math.max(1, config.getWindowMs());
+        int maxBytes = Math.max(1, config.getMaxBytes());
+        return Flux.create(sink -> {
+            Batch batch = new Batch(sink, windowMs, maxBytes);
+            Disposable upstream = tokens.subscribe(batch::onToken, batch::onError, batch::onComplete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                batch.cancelTimer();
+            });
+        });
+    }
+
+    /**
+     * 单个流的合并状态；token 回调与窗口定时器可能在不同线程，统一用锁保证帧的顺序
+     */
+    private final class Batch {
+
+        private final FluxSink<String> sink;
+        private final long windowMs;
+        private final int maxBytes;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final StringBuilder pending = new StringBuilder();
+        private int pendingBytes;
+        private int pendingTokens;
+        private boolean firstSent;
+        private boolean done;
+        private Disposable timer;
+
+        Batch(FluxSink<String> sink, long windowMs, int maxBytes) {
+            this.sink = sink;
+            this.windowMs = windowMs;
+            this.maxBytes = maxBytes;
+        }
+
+        void onToken(String token) {
+            int bytes = utf8Length(token);
+            lock.lock();
+            try {
+                if (done) {
+                    return;
+                }
+                if (!firstSent) {
+                    // 首 token 立即发送
+                    firstSent = true;
+                    emit(token, bytes, 1);
+                    return;
+                }
+                pending.append(token);
+                pendingBytes += bytes;
+                pendingTokens++;
+                if (pendingBytes >= maxBytes) {
+                    flush();
+                } else if (timer == null) {
+                    timer = scheduler.schedule(this::onWindowElapsed, windowMs, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onComplete() {
+            lock.lock();
+            try {
+                if (done) {
+                    return;
+                }
+                done = true;
+                flush();
+            } finally {
+                lock.unlock();
+            }
+            sink.complete();
+        }
+
+        void onError(Throwable error) {
+            lock.lock();
+            try {
+                if (done) {
+                    return;
+                }
+                done = true;
+                flush();
+            } finally {
+                lock.unlock();
+            }
+            sink.error(error);
+        }
+
+        void cancelTimer() {
+            lock.lock();
+            try {
+                done = true;
+                if (timer != null) {
+                    timer.dispose();
+                    timer = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onWindowElapsed() {
+            lock.lock();
+            try {
+                timer = null;
+                if (!done) {
+                    flush();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // 调用方需持有锁
+        private void flush() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+            if (pendingTokens == 0) {
+                return;
+            }
+            String text = pending.toString();
+            int bytes = pendingBytes;
+            int count = pendingTokens;
+            pending.setLength(0);
+            pendingBytes = 0;
+            pendingTokens = 0;
+            emit(text, bytes, count);
+        }
+
+        private void emit(String text, int bytes, int count) {
+            metricsCollector.recordSseFrame(true, bytes, count);
+            sink.next(text);
+        }
+    }
+
+    /**
+     * 计算字符串的 UTF-8 字节数（不实际编码，避免额外分配）
+     */
+    static int utf8Length(String s) {
+        int bytes = 0;
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -14,6 +14,7 @@ public class Constants {
     public static final int ERROR_CODE_ACCOUNT_OR_PASSWORD_INVALID = 1001;
     public static final int ERROR_CODE_TOKEN_EXPIRED = 1101;
     public static final int ERROR_CODE_BAD_REQUEST = 4000;
+    public static final int ERROR_CODE_TOO_MANY_REQUESTS = 4290;
     public static final int ERROR_CODE_SERVER_ERROR = 5000; // Used for generic server errors, also 500
 
     // TODO: Add more specific error codes as identified in the project
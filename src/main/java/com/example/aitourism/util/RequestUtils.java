@@ -0,0 +1,109 @@
+package com.example.aitourism.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class RequestUtils {
+
+    private static final Pattern IPV4 = Pattern.compile(
+            "((25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)\\.){3}(25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)");
+    private static final Pattern IPV6 = Pattern.compile("(?=.*:)[0-9a-fA-F:][0-9a-fA-F:.]*");
+
+    private RequestUtils() {
+    }
+
+    /**
+     * 获取客户端IP地址
+     * 默认取 TCP 对端地址：X-Forwarded-For 等请求头可以由客户端任意填写，直接采信会让限流主体被伪造。
+     * 只有对端是可信代理时才解析 X-Forwarded-For：从右往左跳过可信代理，第一个不可信的地址即客户端地址
+     * （最左侧的值同样可能是客户端自己填写的）。
+     * @param request HttpServletRequest对象
+     * @param trustedProxies 可信代理的 IP 或 CIDR 网段（如 10.0.0.0/8），为空时不采信任何转发头
+     * @return 客户端IP地址
+     */
+    public static String getClientIp(HttpServletRequest request, List<String> trustedProxies) {
+        String remote = request.getRemoteAddr();
+        if (trustedProxies == null || trustedProxies.isEmpty() || !isTrusted(remote, trustedProxies)) {
+            return remote;
+        }
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded == null || forwarded.isBlank()) {
+            return remote;
+        }
+        String client = remote;
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            // 非法值（如 unknown）之前的内容无法判断真伪，取到上一跳为止
+            if (parse(hop) == null) {
+                break;
+            }
+            client = hop;
+            if (!isTrusted(hop, trustedProxies)) {
+                break;
+            }
+        }
+        return client;
+    }
+
+    // 地址是否属于可信代理（精确 IP 或 CIDR 网段）
+    private static boolean isTrusted(String ip, List<String> trustedProxies) {
+        InetAddress address = parse(ip);
+        if (address == null) {
+            return false;
+        }
+        for (String entry : trustedProxies) {
+            int slash = entry.indexOf('/');
+            InetAddress network = parse(slash < 0 ? entry.trim() : entry.substring(0, slash).trim());
+            if (network == null) {
+                continue;
+            }
+            int prefix = network.getAddress().length * 8;
+            if (slash >= 0) {
+                try {
+                    prefix = Integer.parseInt(entry.substring(slash + 1).trim());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+            if (matches(address.getAddress(), network.getAddress(), prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(byte[] address, byte[] network, int prefix) {
+        if (address.length != network.length || prefix < 0 || prefix > address.length * 8) {
+            return false;
+        }
+        int fullBytes = prefix / 8;
+        for (int i = 0; i < fullBytes; i++) {
+            if (address[i] != network[i]) {
+                return false;
+            }
+        }
+        int remainingBits = prefix % 8;
+        if (remainingBits == 0) {
+            return true;
+        }
+        int mask = 0xFF << (8 - remainingBits);
+        return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+    }
+
+    // 只解析 IP 字面量；请求头中的主机名不能交给 InetAddress 解析，否则会触发 DNS 查询
+    private static InetAddress parse(String ip) {
+        if (ip == null || !(IPV4.matcher(ip).matches() || IPV6.matcher(ip).matches())) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(ip);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
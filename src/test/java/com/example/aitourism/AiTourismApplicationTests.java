@@ -3,7 +3,8 @@ package com.example.aitourism;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// 关闭启动预热：上下文加载测试不访问真实的模型、MCP 端点，也不回填最近会话的记忆
+@SpringBootTest(properties = "warmup.enabled=false")
 class AiTourismApplicationTests {
 	@Test
 	void contextLoads() {
@@ -0,0 +1,97 @@
+package com.example.aitourism.ai;
+
+import com.example.aitourism.ai.mcp.McpClientService;
+import com.example.aitourism.ai.memory.ChatHistoryLoader;
+import com.example.aitourism.ai.memory.ChatMemorySummarizer;
+import com.example.aitourism.ai.model.ModelClientRegistry;
+import com.example.aitourism.ai.model.ModelRouter;
+import com.example.aitourism.ai.tool.ToolManager;
+import com.example.aitourism.config.AbTestConfig;
+import com.example.aitourism.config.TokenBudgetMemoryConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.example.aitourism.service.ResponseCacheService;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 响应缓存命中后补写记忆
+ * 回放经 delayElements 运行在 parallel 调度器上；记忆存储与 CustomRedisChatMemoryStore 一样以 block() 等待 Redis，
+ * 在 parallel 线程上调用会抛出 IllegalStateException，补写必须切换到弹性线程。
+ */
+class MemoryAssistantServiceFactoryTest {
+
+    private static final String SESSION = "s1";
+    private static final String QUESTION = "北京三日游怎么安排？";
+    private static final String REPLY = "第一天：故宫、景山公园；第二天：长城；第三天：颐和园。";
+
+    private final BlockingMemoryStore store = new BlockingMemoryStore();
+    private MemoryAssistantServiceFactory factory;
+    private ResponseCacheService responseCacheService;
+
+    @BeforeEach
+    void setUp() {
+        factory = new MemoryAssistantServiceFactory(
+                mock(McpClientService.class),
+                store,
+                mock(ChatHistoryLoader.class),
+                mock(ToolManager.class),
+                mock(ModelClientRegistry.class),
+                mock(AiModelMetricsCollector.class),
+                new TokenBudgetMemoryConfig(),
+                mock(ChatMemorySummarizer.class),
+                mock(ModelRouter.class));
+        AbTestConfig abTestConfig = new AbTestConfig();
+        abTestConfig.getResponseCache().setReplayChunkChars(8);
+        abTestConfig.getResponseCache().setReplayIntervalMs(5);
+        responseCacheService = new ResponseCacheService(mock(StringRedisTemplate.class), abTestConfig);
+    }
+
+    @Test
+    void replayedTurnIsWrittenToMemoryBeforeTheStreamCompletes() {
+        ResponseCacheService.CachedResponse hit = new ResponseCacheService.CachedResponse(REPLY, "{}", 30);
+
+        List<String> chunks = responseCacheService.replay(hit)
+                .concatWith(factory.appendTurnToMemoryAsync(SESSION, QUESTION, REPLY).then(Mono.<String>empty()))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(String.join("", chunks)).isEqualTo(REPLY);
+        assertThat(store.getMessages(SESSION))
+                .containsExactly(UserMessage.from(QUESTION), AiMessage.from(REPLY));
+    }
+
+    // 与 CustomRedisChatMemoryStore 相同，读写都以 block() 等待结果
+    private static final class BlockingMemoryStore implements ChatMemoryStore {
+
+        private final Map<Object, List<ChatMessage>> data = new ConcurrentHashMap<>();
+
+        @Override
+        public List<ChatMessage> getMessages(Object memoryId) {
+            return Mono.fromCallable(() -> data.getOrDefault(memoryId, List.of())).block();
+        }
+
+        @Override
+        public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+            Mono.fromRunnable(() -> data.put(memoryId, List.copyOf(messages))).block();
+        }
+
+        @Override
+        public void deleteMessages(Object memoryId) {
+            data.remove(memoryId);
+        }
+    }
+}
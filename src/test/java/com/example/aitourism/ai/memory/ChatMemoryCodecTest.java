@@ -0,0 +1,169 @@
+package com.example.aitourism.ai.memory;
+
+import com.example.aitourism.config.ChatMemoryCodecConfig;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static dev.langchain4j.data.message.ChatMessageSerializer.messageToJson;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatMemoryCodecTest {
+
+    private static final int NEVER_COMPRESS = Integer.MAX_VALUE;
+
+    private final ChatMemoryCodec json = codec("json", 512);
+    private final ChatMemoryCodec binary = codec("binary", NEVER_COMPRESS);
+    private final ChatMemoryCodec compressing = codec("binary", 0);
+
+    @Test
+    void everyMessageTypeRoundTripsInEveryFormat() {
+        for (ChatMessage message : allMessageTypes()) {
+            for (ChatMemoryCodec codec : List.of(json, binary, compressing)) {
+                assertThat(codec.decode(codec.encode(message))).isEqualTo(message);
+            }
+        }
+    }
+
+    @Test
+    void jsonFormatWritesLangChain4jJson() {
+        UserMessage message = UserMessage.from("北京三日游怎么安排？");
+
+        byte[] encoded = json.encode(message);
+
+        assertThat(new String(encoded, StandardCharsets.UTF_8)).isEqualTo(messageToJson(message));
+    }
+
+    @Test
+    void binaryFormatUsesCompactBodyForPlainMessages() {
+        UserMessage message = UserMessage.from("北京三日游怎么安排？");
+
+        byte[] encoded = binary.encode(message);
+
+        assertThat(encoded[0]).isEqualTo(ChatMemoryCodec.MAGIC);
+        assertThat(encoded[1]).isEqualTo(ChatMemoryCodec.VERSION);
+        assertThat(encoded[2]).isZero();
+        // 类型字节 2 = 用户消息
+        assertThat(encoded[3]).isEqualTo((byte) 2);
+        assertThat(encoded.length).isLessThan(messageToJson(message).getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void messagesThatCannotBeEncodedLosslesslyFallBackToJsonInsideTheBody() {
+        List<ChatMessage> fallbacks = List.of(
+                UserMessage.from("alice", "带名字的用户消息"),
+                UserMessage.from(TextContent.from("看看这张图"), ImageContent.from("https://example.com/a.png")));
+        for (ChatMessage message : fallbacks) {
+            byte[] encoded = binary.encode(message);
+
+            assertThat(encoded[0]).isEqualTo(ChatMemoryCodec.MAGIC);
+            // 类型字节 0 = 消息体内为 JSON
+            assertThat(encoded[3]).isZero();
+            assertThat(binary.decode(encoded)).isEqualTo(message);
+        }
+    }
+
+    @Test
+    void bodiesAboveThresholdAreDeflated() {
+        AiMessage message = AiMessage.from("第一天：故宫、景山公园、南锣鼓巷。".repeat(50));
+
+        byte[] plain = binary.encode(message);
+        byte[] compressed = compressing.encode(message);
+
+        assertThat(plain[2]).isZero();
+        assertThat(compressed[2] & 1).isEqualTo(1);
+        assertThat(compressed.length).isLessThan(plain.length);
+        assertThat(compressing.decode(compressed)).isEqualTo(message);
+        // 关闭压缩的节点也能读取压缩过的消息
+        assertThat(binary.decode(compressed)).isEqualTo(message);
+    }
+
+    @Test
+    void bodyIsKeptUncompressedWhenDeflateDoesNotHelp() {
+        UserMessage message = UserMessage.from("好");
+
+        byte[] encoded = compressing.encode(message);
+
+        assertThat(encoded[2]).isZero();
+        assertThat(compressing.decode(encoded)).isEqualTo(message);
+    }
+
+    @Test
+    void binaryCodecReadsLegacyJson() {
+        for (ChatMessage message : allMessageTypes()) {
+            byte[] legacy = messageToJson(message).getBytes(StandardCharsets.UTF_8);
+
+            assertThat(binary.decode(legacy)).isEqualTo(message);
+        }
+    }
+
+    @Test
+    void jsonCodecReadsBinary() {
+        for (ChatMessage message : allMessageTypes()) {
+            assertThat(json.decode(compressing.encode(message))).isEqualTo(message);
+        }
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        byte[] encoded = binary.encode(UserMessage.from("你好"));
+        encoded[1] = (byte) (ChatMemoryCodec.VERSION + 1);
+
+        assertThatThrownBy(() -> binary.decode(encoded))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("版本");
+    }
+
+    @Test
+    void unknownMessageTypeIsRejected() {
+        byte[] encoded = {ChatMemoryCodec.MAGIC, ChatMemoryCodec.VERSION, 0, 42};
+
+        assertThatThrownBy(() -> binary.decode(encoded))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("类型");
+    }
+
+    @Test
+    void truncatedBodyIsRejected() {
+        byte[] encoded = binary.encode(UserMessage.from("北京三日游怎么安排？"));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+
+        assertThatThrownBy(() -> binary.decode(truncated))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("截断");
+    }
+
+    private static List<ChatMessage> allMessageTypes() {
+        ToolExecutionRequest weather = ToolExecutionRequest.builder()
+                .id("call_1")
+                .name("getWeather")
+                .arguments("{\"city\":\"北京\"}")
+                .build();
+        return List.of(
+                SystemMessage.from("你是一名旅游规划助手"),
+                UserMessage.from("北京三日游怎么安排？"),
+                AiMessage.from("第一天：故宫"),
+                AiMessage.from(List.of(weather)),
+                AiMessage.from("先查一下天气", List.of(weather)),
+                ToolExecutionResultMessage.from(weather, "晴，25℃"),
+                UserMessage.from("带\"引号\"、\\反斜杠\n和换行的消息"));
+    }
+
+    private static ChatMemoryCodec codec(String format, int compressionThreshold) {
+        ChatMemoryCodecConfig config = new ChatMemoryCodecConfig();
+        config.setFormat(format);
+        config.setCompressionThreshold(compressionThreshold);
+        return new ChatMemoryCodec(config);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.aitourism.ai.memory;
+
+import com.example.aitourism.config.ChatMemoryCacheConfig;
+import com.example.aitourism.config.ChatMemoryCodecConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 增量写入：overlap() 的裁剪计算，以及 updateMessages 发给 APPEND_SCRIPT 的参数
+ * 脚本在这里按 Lua 中的语义模拟执行（LLEN 校验、LTRIM、RPUSH、系统消息 set/del/keep），
+ * 验证多轮更新后“Redis”中的列表始终与记忆内容一致。
+ */
+class CustomRedisChatMemoryStoreTest {
+
+    private static final String SESSION = "s1";
+
+    private final ChatMemoryCodec codec = new ChatMemoryCodec(new ChatMemoryCodecConfig());
+
+    // 模拟的 Redis 状态：消息列表与系统消息
+    private final List<byte[]> redisList = new ArrayList<>();
+    private byte[] redisSystem;
+    // 每次脚本调用的参数
+    private final List<List<?>> calls = new ArrayList<>();
+
+    private CustomRedisChatMemoryStore store;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReactiveRedisTemplate<String, byte[]> template = mock(ReactiveRedisTemplate.class);
+        when(template.execute(any(RedisScript.class), anyList(), anyList(),
+                any(RedisElementWriter.class), any(RedisElementReader.class)))
+                .thenAnswer(invocation -> runScript(invocation.getArgument(2)));
+        store = new CustomRedisChatMemoryStore(
+                mock(RedisTemplate.class),
+                mock(StringRedisTemplate.class),
+                mock(ChatHistoryLoader.class),
+                codec,
+                new ChatMemoryCacheConfig(),
+                mock(AiModelMetricsCollector.class),
+                mock(RedisMessageListenerContainer.class),
+                mock(ReactiveRedisConnectionFactory.class));
+        ReflectionTestUtils.setField(store, "reactiveTemplate", template);
+        ReflectionTestUtils.setField(store, "keyPrefix", "ai:memory:");
+        ReflectionTestUtils.setField(store, "ttlSeconds", 1800L);
+        ReflectionTestUtils.setField(store, "commandTimeoutMs", 2000L);
+    }
+
+    @Test
+    void overlapFindsHowManyHeadElementsWereEvicted() {
+        assertThat(CustomRedisChatMemoryStore.overlap(new long[0], new long[]{1, 2})).isZero();
+        assertThat(CustomRedisChatMemoryStore.overlap(new long[]{1, 2}, new long[]{1, 2})).isZero();
+        assertThat(CustomRedisChatMemoryStore.overlap(new long[]{1, 2}, new long[]{1, 2, 3, 4})).isZero();
+        assertThat(CustomRedisChatMemoryStore.overlap(new long[]{1, 2, 3, 4}, new long[]{3, 4, 5, 6})).isEqualTo(2);
+        assertThat(CustomRedisChatMemoryStore.overlap(new long[]{1, 2, 3}, new long[]{3})).isEqualTo(2);
+    }
+
+    @Test
+    void overlapDropsEverythingWhenNoSuffixMatches() {
+        assertThat(CustomRedisChatMemoryStore.overlap(new long[]{1, 2, 3}, new long[]{9, 8})).isEqualTo(3);
+        assertThat(CustomRedisChatMemoryStore.overlap(new long[]{1, 2, 3}, new long[0])).isEqualTo(3);
+        // 中间被改写（不是只在队头淘汰、队尾追加）时不能误判为重叠
+        assertThat(CustomRedisChatMemoryStore.overlap(new long[]{1, 2, 3}, new long[]{1, 9, 3, 4})).isEqualTo(3);
+    }
+
+    @Test
+    void firstWriteRewritesTheWholeList() {
+        List<ChatMessage> messages = List.of(SystemMessage.from("系统提示词"), UserMessage.from("你好"));
+
+        store.updateMessages(SESSION, messages);
+
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0).get(0)).isEqualTo("-1");
+        assertThat(calls.get(0).get(3)).isEqualTo("set");
+        assertRedisHolds(messages);
+    }
+
+    @Test
+    void laterWritesOnlyAppendNewMessages() {
+        List<ChatMessage> messages = new ArrayList<>(List.of(SystemMessage.from("系统提示词"), UserMessage.from("你好")));
+        store.updateMessages(SESSION, messages);
+
+        messages.add(AiMessage.from("你好，想去哪里玩？"));
+        store.updateMessages(SESSION, messages);
+
+        List<?> args = calls.get(1);
+        assertThat(args.get(0)).isEqualTo("1");
+        assertThat(args.get(1)).isEqualTo("0");
+        assertThat(args.get(3)).isEqualTo("keep");
+        assertThat(args).hasSize(8);
+        assertRedisHolds(messages);
+    }
+
+    @Test
+    void windowEvictionTrimsTheHeadInTheSameCall() {
+        List<ChatMessage> messages = new ArrayList<>(List.of(
+                SystemMessage.from("系统提示词"),
+                UserMessage.from("第一问"), AiMessage.from("第一答"),
+                UserMessage.from("第二问"), AiMessage.from("第二答")));
+        store.updateMessages(SESSION, messages);
+
+        // 窗口满：淘汰最早一轮，追加新一轮
+        messages.remove(1);
+        messages.remove(1);
+        messages.add(UserMessage.from("第三问"));
+        messages.add(AiMessage.from("第三答"));
+        store.updateMessages(SESSION, messages);
+
+        List<?> args = calls.get(1);
+        assertThat(args.get(0)).isEqualTo("4");
+        assertThat(args.get(1)).isEqualTo("2");
+        assertThat(args).hasSize(9);
+        assertRedisHolds(messages);
+    }
+
+    @Test
+    void concurrentModificationFallsBackToFullRewrite() {
+        List<ChatMessage> messages = new ArrayList<>(List.of(UserMessage.from("你好")));
+        store.updateMessages(SESSION, messages);
+        // 其他节点在此期间追加了一条，本节点的快照已过期
+        redisList.add(codec.encode(AiMessage.from("其他节点写入")));
+
+        messages.add(AiMessage.from("本节点的回复"));
+        store.updateMessages(SESSION, messages);
+
+        assertThat(calls).hasSize(3);
+        assertThat(calls.get(1).get(0)).isEqualTo("1");
+        assertThat(calls.get(2).get(0)).isEqualTo("-1");
+        assertRedisHolds(messages);
+    }
+
+    @Test
+    void changedOrRemovedSystemMessageIsWrittenOrDeleted() {
+        List<ChatMessage> messages = new ArrayList<>(List.of(SystemMessage.from("旧提示词"), UserMessage.from("你好")));
+        store.updateMessages(SESSION, messages);
+
+        messages.set(0, SystemMessage.from("新提示词"));
+        store.updateMessages(SESSION, messages);
+        assertThat(calls.get(1).get(3)).isEqualTo("set");
+        assertRedisHolds(messages);
+
+        messages.remove(0);
+        store.updateMessages(SESSION, messages);
+        assertThat(calls.get(2).get(3)).isEqualTo("del");
+        assertRedisHolds(messages);
+    }
+
+    // 按 APPEND_SCRIPT 的语义执行一次脚本
+    private Flux<Long> runScript(List<?> args) {
+        calls.add(args);
+        int expected = Integer.parseInt((String) args.get(0));
+        String systemOp = (String) args.get(3);
+        if (expected >= 0) {
+            if (redisList.size() != expected || ("keep".equals(systemOp) && redisSystem == null)) {
+                return Flux.just(-1L);
+            }
+        } else {
+            redisList.clear();
+        }
+        int drop = Integer.parseInt((String) args.get(1));
+        redisList.subList(0, Math.min(drop, redisList.size())).clear();
+        for (int i = 7; i < args.size(); i++) {
+            redisList.add((byte[]) args.get(i));
+        }
+        if ("set".equals(systemOp)) {
+            redisSystem = (byte[]) args.get(4);
+        } else if ("del".equals(systemOp)) {
+            redisSystem = null;
+        }
+        return Flux.just((long) redisList.size());
+    }
+
+    private void assertRedisHolds(List<ChatMessage> messages) {
+        List<ChatMessage> stored = new ArrayList<>();
+        if (redisSystem != null) {
+            stored.add(codec.decode(redisSystem));
+        }
+        redisList.forEach(element -> stored.add(codec.decode(element)));
+        assertThat(stored).containsExactlyElementsOf(messages);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.aitourism.ai.model;
+
+import com.example.aitourism.monitor.MonitorContext;
+import com.example.aitourism.monitor.MonitorContextHolder;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 监控上下文随请求传递到流式回调线程：每个请求只看到自己的上下文，回调结束后回调线程上不留残余
+ */
+class ContextPropagatingStreamingChatModelTest {
+
+    private final ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        callbackExecutor.shutdownNow();
+        MonitorContextHolder.clearContext();
+    }
+
+    @Test
+    void callbacksSeeTheContextOfTheirOwnRequest() throws Exception {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        StreamingChatModel model = new ContextPropagatingStreamingChatModel(asyncModel());
+
+        CompletableFuture<Void> first = chat(model, context("s1"), seen);
+        CompletableFuture<Void> second = chat(model, context("s2"), seen);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertThat(seen).containsExactly("partial:s1", "complete:s1", "partial:s2", "complete:s2");
+        // 回调线程上不残留上下文
+        assertThat(callbackExecutor.submit(MonitorContextHolder::getContext).get(5, TimeUnit.SECONDS)).isNull();
+    }
+
+    @Test
+    void requestsWithoutContextAreLeftUntouched() throws Exception {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        StreamingChatModel model = new ContextPropagatingStreamingChatModel(asyncModel());
+
+        chat(model, null, seen).get(5, TimeUnit.SECONDS);
+
+        assertThat(seen).containsExactly("partial:null", "complete:null");
+    }
+
+    // 在发起请求的线程上设置上下文（与 chatStream 相同），调用返回后立即清除
+    private CompletableFuture<Void> chat(StreamingChatModel model, MonitorContext context, List<String> seen) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (context != null) {
+            MonitorContextHolder.setContext(context);
+        }
+        try {
+            model.chat(ChatRequest.builder().messages(UserMessage.from("你好")).build(), new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    seen.add("partial:" + currentSession());
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    seen.add("complete:" + currentSession());
+                    done.complete(null);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    done.completeExceptionally(error);
+                }
+            });
+        } finally {
+            MonitorContextHolder.clearContext();
+        }
+        return done;
+    }
+
+    // 与 HTTP 执行器一样在另一个线程上回调
+    private StreamingChatModel asyncModel() {
+        return new StreamingChatModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                callbackExecutor.execute(() -> {
+                    handler.onPartialResponse("你好");
+                    handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from("你好")).build());
+                });
+            }
+        };
+    }
+
+    private static String currentSession() {
+        MonitorContext context = MonitorContextHolder.getContext();
+        return context == null ? null : context.getSessionId();
+    }
+
+    private static MonitorContext context(String sessionId) {
+        return MonitorContext.builder().userId("u1").sessionId(sessionId).build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.aitourism.ai.model;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 估算结果与真实分词器对比：o200k / cl100k 的实际计数由 jtokkit（langchain4j-open-ai 的依赖）给出，
+ * 样本为对话中真实出现的较长文本，误差应在 10% 以内
+ */
+class TokenCounterTest {
+
+    private static final EncodingRegistry REGISTRY = Encodings.newDefaultEncodingRegistry();
+
+    static Stream<Arguments> samples() {
+        return Stream.of(
+                Arguments.of("weather json", weatherResult()),
+                Arguments.of("itinerary zh", itinerary()),
+                Arguments.of("question zh", "请为我规划杭州市3日旅游攻略，预算适中，喜欢博物馆和当地美食。我们一家四口，"
+                        + "两个孩子分别是六岁和九岁，希望行程不要太赶，每天下午能回酒店休息一会儿。"
+                        + "另外想顺便去一趟乌镇，住一晚看看夜景，请告诉我从杭州过去怎么坐车比较方便，大概需要多长时间。"),
+                Arguments.of("reply en", "Day 1: Start at West Lake early in the morning and walk from the Broken Bridge "
+                        + "along the Bai Causeway to Solitary Hill. Have lunch at Zhiweiguan and try the West Lake fish "
+                        + "in vinegar sauce. In the afternoon, take bus 7 to Lingyin Temple; the ticket costs 45 yuan. "
+                        + "Day 2: Visit the China National Tea Museum and the Longjing tea plantations, then spend the "
+                        + "evening at Hefang Street for local snacks before taking metro line 1 back to the hotel.")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("samples")
+    void o200kEstimateIsWithinTenPercent(String name, String text) {
+        int actual = REGISTRY.getEncoding(EncodingType.O200K_BASE).countTokens(text);
+
+        assertThat(TokenCounter.count(text, TokenCounter.Profile.O200K)).isCloseTo(actual, within(actual / 10));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("samples")
+    void cl100kEstimateIsWithinTenPercent(String name, String text) {
+        int actual = REGISTRY.getEncoding(EncodingType.CL100K_BASE).countTokens(text);
+
+        assertThat(TokenCounter.count(text, TokenCounter.Profile.CL100K)).isCloseTo(actual, within(actual / 10));
+    }
+
+    @Test
+    void profileFollowsTheModelName() {
+        assertThat(TokenCounter.Profile.forModel("gpt-4o-mini")).isEqualTo(TokenCounter.Profile.O200K);
+        assertThat(TokenCounter.Profile.forModel("gpt-3.5-turbo")).isEqualTo(TokenCounter.Profile.CL100K);
+        assertThat(TokenCounter.Profile.forModel("qwen2.5:7b")).isEqualTo(TokenCounter.Profile.QWEN);
+        assertThat(TokenCounter.Profile.forModel(null)).isEqualTo(TokenCounter.Profile.O200K);
+    }
+
+    private static String weatherResult() {
+        StringBuilder sb = new StringBuilder("{\"city\":\"杭州\",\"forecasts\":[");
+        for (int d = 1; d <= 4; d++) {
+            sb.append("{\"date\":\"2025-10-0").append(d).append("\",\"week\":\"").append(d)
+                    .append("\",\"dayweather\":\"多云\",\"nightweather\":\"晴\",")
+                    .append("\"daytemp\":\"2").append(d).append("\",\"nighttemp\":\"1").append(d)
+                    .append("\",\"daywind\":\"东北\",\"nightwind\":\"东北\",\"daypower\":\"1-3\",\"nightpower\":\"1-3\"}");
+            sb.append(d < 4 ? "," : "]}");
+        }
+        return sb.toString();
+    }
+
+    private static String itinerary() {
+        StringBuilder sb = new StringBuilder("# 杭州3日旅游攻略\n");
+        for (int d = 1; d <= 3; d++) {
+            sb.append("## 第").append(d).append("天\n")
+                    .append("- 上午：游览西湖，从断桥出发沿白堤步行至孤山，建议 8:00 前到达避开人流。\n")
+                    .append("- 中午：在知味观品尝杭帮菜，推荐西湖醋鱼、龙井虾仁，人均约 120 元。\n")
+                    .append("- 下午：乘坐 7 路公交前往灵隐寺，门票 45 元，飞来峰景区另需 45 元。\n")
+                    .append("- 晚上：河坊街夜市体验小吃，乘坐地铁 1 号线返回酒店，全程约 30 分钟。\n");
+        }
+        return sb.append("天气：多云转晴，气温 18~25℃，建议携带薄外套。").toString();
+    }
+}
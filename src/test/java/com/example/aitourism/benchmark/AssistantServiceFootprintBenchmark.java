@@ -0,0 +1,135 @@
+package com.example.aitourism.benchmark;
+
+import com.example.aitourism.ai.AssistantService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.agent.tool.P;
+import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * AI 服务实例：每个会话一个实例（现状，Caffeine 上限 100） vs 蓝图模式（共享单实例 + 按会话缓存 ChatMemory）
+ * - 每个活跃会话的堆占用：分别持有 N 个会话对象，GC 后比较已用堆的增量
+ * - 获取耗时：1000 个会话轮流发言（超过 100 个实例的缓存上限），统计每次获取的 p50/p99
+ * 模型指向本地不存在的端点，只构建不发请求；记忆使用内存存储，排除 Redis 的影响。
+ * 不是单元测试（类名不以 Test 结尾，surefire 不会执行），需要完整的运行时依赖：
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.aitourism.benchmark.AssistantServiceFootprintBenchmark
+ * 结果记录在 doc/benchmarks.md
+ */
+public class AssistantServiceFootprintBenchmark {
+
+    private static final int RETAINED_SESSIONS = 100;
+    private static final int ACTIVE_SESSIONS = 1_000;
+    private static final int ACQUISITIONS = 20_000;
+
+    private static final OpenAiStreamingChatModel MODEL = OpenAiStreamingChatModel.builder()
+            .baseUrl("http://127.0.0.1:9/v1")
+            .apiKey("benchmark")
+            .modelName("gpt-4o-mini")
+            .build();
+    private static final InMemoryChatMemoryStore STORE = new InMemoryChatMemoryStore();
+
+    /**
+     * 与业务工具规模相当的示例工具（两个带参数说明的方法）
+     */
+    public static class SampleTools {
+        @Tool("查询城市未来几天的天气")
+        public String getWeather(@P("城市名称") String cityName, @P("天数") int dayCount) {
+            return cityName + dayCount;
+        }
+
+        @Tool("搜索城市内的景点")
+        public String searchPoi(@P("城市名称") String cityName, @P("关键词") String keyword) {
+            return cityName + keyword;
+        }
+    }
+
+    public static void main(String[] args) {
+        SampleTools tools = new SampleTools();
+        Function<Object, ChatMemory> memory = id -> MessageWindowChatMemory.builder()
+                .id(id).chatMemoryStore(STORE).maxMessages(20).build();
+
+        // 每个会话一个实例
+        long before = usedHeap();
+        List<Object> retained = new ArrayList<>();
+        for (int i = 0; i < RETAINED_SESSIONS; i++) {
+            retained.add(build(tools, memory));
+        }
+        long perSession = (usedHeap() - before) / RETAINED_SESSIONS;
+        retained.clear();
+
+        // 蓝图：共享实例 + 每个会话一个 ChatMemory
+        before = usedHeap();
+        AssistantService shared = build(tools, memory);
+        for (int i = 0; i < RETAINED_SESSIONS; i++) {
+            retained.add(memory.apply("s" + i));
+        }
+        long blueprint = (usedHeap() - before) / RETAINED_SESSIONS;
+        if (shared == null || retained.isEmpty()) {
+            throw new IllegalStateException();
+        }
+        retained.clear();
+
+        System.out.printf("%-12s %18s%n", "mode", "heap B/session");
+        System.out.printf("%-12s %18d%n", "per_session", perSession);
+        System.out.printf("%-12s %18d%n", "blueprint", blueprint);
+
+        // 获取耗时：会话数超过缓存上限时每个实例模式下的获取都可能触发重建
+        Cache<String, AssistantService> services = Caffeine.newBuilder().maximumSize(100).build();
+        Cache<String, ChatMemory> memories = Caffeine.newBuilder().maximumSize(10_000).build();
+        long[] perSessionNanos = new long[ACQUISITIONS];
+        long[] blueprintNanos = new long[ACQUISITIONS];
+        for (int i = 0; i < ACQUISITIONS; i++) {
+            String id = "s" + (i * 7919 % ACTIVE_SESSIONS);
+            long start = System.nanoTime();
+            services.get(id, k -> build(tools, memory));
+            perSessionNanos[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            memories.get(id, memory::apply);
+            blueprintNanos[i] = System.nanoTime() - start;
+        }
+        System.out.printf("%n%-12s %12s %12s%n", "mode", "p50 us", "p99 us");
+        print("per_session", perSessionNanos);
+        print("blueprint", blueprintNanos);
+    }
+
+    private static AssistantService build(SampleTools tools, Function<Object, ChatMemory> memory) {
+        return AiServices.builder(AssistantService.class)
+                .streamingChatModel(MODEL)
+                .tools(tools)
+                .chatMemoryProvider(memory::apply)
+                .maxSequentialToolsInvocations(1)
+                .build();
+    }
+
+    private static void print(String mode, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-12s %12.1f %12.1f%n", mode,
+                sorted[sorted.length / 2] / 1000.0, sorted[(int) (sorted.length * 0.99)] / 1000.0);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
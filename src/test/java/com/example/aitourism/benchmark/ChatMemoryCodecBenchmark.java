@@ -0,0 +1,157 @@
+package com.example.aitourism.benchmark;
+
+import com.example.aitourism.ai.memory.ChatMemoryCodec;
+import com.example.aitourism.config.ChatMemoryCodecConfig;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对话记忆编码：LangChain4j JSON（现状） vs 紧凑二进制 + deflate，比较体积、编解码耗时与 Redis 内存占用
+ * 样本为一个典型会话窗口：系统提示词、用户提问、工具调用请求、天气工具结果、长篇行程回复，共 20 条。
+ * 传入 host:port 时把两种编码分别 RPUSH 到真实 Redis，用 MEMORY USAGE 读取实际占用。
+ * 不是单元测试（类名不以 Test 结尾，surefire 不会执行），需要完整的运行时依赖：
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.aitourism.benchmark.ChatMemoryCodecBenchmark [localhost:6379]
+ * 结果记录在 doc/benchmarks.md
+ */
+public class ChatMemoryCodecBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int MEASURE_ROUNDS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        List<ChatMessage> window = sampleWindow();
+        RedisChatMemoryBenchmark.Resp redis = args.length > 0 ? RedisChatMemoryBenchmark.Resp.connect(args[0]) : null;
+
+        System.out.printf("messages=%d, rounds=%d%n", window.size(), MEASURE_ROUNDS);
+        System.out.printf("%-16s %12s %14s %14s %14s%n", "format", "bytes", "encode us/win", "decode us/win", "redis bytes");
+        for (String format : List.of("json", "binary")) {
+            for (int threshold : format.equals("json") ? new int[]{0} : new int[]{Integer.MAX_VALUE, 512, 128}) {
+                ChatMemoryCodecConfig config = new ChatMemoryCodecConfig();
+                config.setFormat(format);
+                config.setCompressionThreshold(threshold);
+                ChatMemoryCodec codec = new ChatMemoryCodec(config);
+                String label = format.equals("json") ? "json"
+                        : threshold == Integer.MAX_VALUE ? "binary" : "binary+deflate" + threshold;
+                run(label, codec, window, redis);
+            }
+        }
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    private static void run(String label, ChatMemoryCodec codec, List<ChatMessage> window,
+                            RedisChatMemoryBenchmark.Resp redis) throws Exception {
+        List<byte[]> encoded = new ArrayList<>(window.size());
+        long bytes = 0;
+        for (ChatMessage message : window) {
+            byte[] value = codec.encode(message);
+            encoded.add(value);
+            bytes += value.length;
+            if (!codec.decode(value).equals(message)) {
+                throw new IllegalStateException(label + " 编解码结果不一致: " + message.type());
+            }
+        }
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (ChatMessage message : window) {
+                sink += codec.encode(message).length;
+            }
+            for (byte[] value : encoded) {
+                sink += codec.decode(value).hashCode();
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            for (ChatMessage message : window) {
+                sink += codec.encode(message).length;
+            }
+        }
+        double encodeUs = (System.nanoTime() - start) / 1000.0 / MEASURE_ROUNDS;
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            for (byte[] value : encoded) {
+                sink += codec.decode(value).hashCode();
+            }
+        }
+        double decodeUs = (System.nanoTime() - start) / 1000.0 / MEASURE_ROUNDS;
+
+        String redisBytes = "-";
+        if (redis != null) {
+            String key = "bench:codec:" + label;
+            redis.call("DEL", key);
+            byte[][] command = new byte[encoded.size() + 2][];
+            command[0] = "RPUSH".getBytes(StandardCharsets.UTF_8);
+            command[1] = key.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < encoded.size(); i++) {
+                command[i + 2] = encoded.get(i);
+            }
+            redis.send(RedisChatMemoryBenchmark.Resp.encode(command));
+            redisBytes = redis.call("MEMORY", "USAGE", key, "SAMPLES", "0");
+            redis.call("DEL", key);
+        }
+        System.out.printf("%-16s %12d %14.1f %14.1f %14s%n", label, bytes, encodeUs, decodeUs, redisBytes);
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static List<ChatMessage> sampleWindow() throws Exception {
+        List<ChatMessage> window = new ArrayList<>();
+        window.add(SystemMessage.from(systemPrompt()));
+        String[] cities = {"北京", "上海", "杭州", "成都", "西安"};
+        for (int i = 0; window.size() < 20; i++) {
+            String city = cities[i % cities.length];
+            window.add(UserMessage.from("请为我规划" + city + "市3日旅游攻略，预算适中，喜欢博物馆和当地美食"));
+            String id = "call_" + i;
+            window.add(AiMessage.from(ToolExecutionRequest.builder()
+                    .id(id).name("getWeather").arguments("{\"cityName\":\"" + city + "\",\"dayCount\":3}").build()));
+            window.add(ToolExecutionResultMessage.from(id, "getWeather", weatherResult(city)));
+            window.add(AiMessage.from(itinerary(city)));
+        }
+        return window.subList(0, 20);
+    }
+
+    private static String systemPrompt() throws Exception {
+        try (InputStream in = ChatMemoryCodecBenchmark.class.getResourceAsStream("/prompt/tour-route-planning-system-prompt.txt")) {
+            if (in != null) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return "你是一名专业的旅游路线规划助手，需要根据用户需求给出按天划分的行程安排。".repeat(20);
+    }
+
+    private static String weatherResult(String city) {
+        StringBuilder sb = new StringBuilder("{\"city\":\"").append(city).append("\",\"forecasts\":[");
+        for (int d = 1; d <= 3; d++) {
+            sb.append("{\"date\":\"2025-10-0").append(d).append("\",\"dayweather\":\"多云\",\"nightweather\":\"晴\",")
+                    .append("\"daytemp\":\"2").append(d).append("\",\"nighttemp\":\"1").append(d)
+                    .append("\",\"daywind\":\"东北\",\"nightwind\":\"东北\",\"daypower\":\"1-3\",\"nightpower\":\"1-3\"}");
+            sb.append(d < 3 ? "," : "]}");
+        }
+        return sb.toString();
+    }
+
+    private static String itinerary(String city) {
+        StringBuilder sb = new StringBuilder("# ").append(city).append("3日旅游攻略\n");
+        for (int d = 1; d <= 3; d++) {
+            sb.append("## 第").append(d).append("天\n")
+                    .append("- 上午：参观").append(city).append("博物馆，了解城市历史文化，建议提前在官方公众号预约门票。\n")
+                    .append("- 中午：在附近老字号餐馆品尝当地特色菜，人均约80元。\n")
+                    .append("- 下午：游览历史街区与城市公园，步行约2公里，注意防晒补水。\n")
+                    .append("- 晚上：前往夜市体验小吃，乘坐地铁返回酒店，全程约40分钟。\n");
+        }
+        return sb.append("天气：多云转晴，气温适宜，建议携带薄外套。").toString();
+    }
+}
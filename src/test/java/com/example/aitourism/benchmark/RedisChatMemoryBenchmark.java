@@ -0,0 +1,279 @@
+package com.example.aitourism.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 对话记忆存储：整段 JSON 重写（旧） vs Redis List 增量追加（新），每轮对话的传输字节数与耗时
+ * 每轮模拟 MessageWindowChatMemory 的真实调用：追加用户消息、追加 AI 回复各一次，每次都是 先读取全部记忆 再写回；
+ * 窗口已满（历史条数固定为 5 / 20 / 100），每轮在队尾追加 2 条、从队头淘汰 2 条。
+ * - 字节数按 RESP 协议编码后的请求/响应大小计算，读、写分开统计
+ * - 不带参数运行时只统计字节数与客户端编码耗时；传入 host:port 时连接真实 Redis 测量往返耗时
+ * 不是单元测试（类名不以 Test 结尾，surefire 不会执行）：
+ *   java -cp target/test-classes com.example.aitourism.benchmark.RedisChatMemoryBenchmark [localhost:6379]
+ */
+public class RedisChatMemoryBenchmark {
+
+    private static final int[] HISTORY_SIZES = {5, 20, 100};
+    private static final int TURNS = 200;
+    private static final String TTL = "1800";
+
+    // 与 CustomRedisChatMemoryStore 中的脚本一致
+    private static final String APPEND_SCRIPT = """
+            local expected = tonumber(ARGV[1])
+            if expected >= 0 then
+              if redis.call('LLEN', KEYS[1]) ~= expected then return -1 end
+              if ARGV[4] == 'keep' and redis.call('EXISTS', KEYS[2]) == 0 then return -1 end
+            else
+              redis.call('DEL', KEYS[1])
+            end
+            local drop = tonumber(ARGV[2])
+            if drop > 0 then redis.call('LTRIM', KEYS[1], drop, -1) end
+            if #ARGV >= 8 then redis.call('RPUSH', KEYS[1], unpack(ARGV, 8)) end
+            if ARGV[4] == 'set' then redis.call('SET', KEYS[2], ARGV[5], 'EX', ARGV[3])
+            elseif ARGV[4] == 'del' then redis.call('DEL', KEYS[2])
+            else redis.call('EXPIRE', KEYS[2], ARGV[3]) end
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            if ARGV[6] ~= '' then redis.call('PUBLISH', ARGV[6], ARGV[7]) end
+            return redis.call('LLEN', KEYS[1])
+            """;
+
+    public static void main(String[] args) throws Exception {
+        Resp redis = args.length > 0 ? Resp.connect(args[0]) : null;
+        String scriptSha = sha1(APPEND_SCRIPT);
+        if (redis != null) {
+            redis.call("SCRIPT", "LOAD", APPEND_SCRIPT);
+        }
+        System.out.printf("turns=%d, mode=%s%n", TURNS, redis == null ? "offline (bytes + encode only)" : "redis " + args[0]);
+        System.out.printf("%-9s %-12s %14s %14s %14s %12s%n",
+                "history", "store", "read B/turn", "write B/turn", "total B/turn", "us/turn");
+        for (int size : HISTORY_SIZES) {
+            run(size, false, redis, scriptSha);
+            run(size, true, redis, scriptSha);
+        }
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    private static void run(int historySize, boolean incremental, Resp redis, String scriptSha) throws IOException {
+        String systemJson = systemMessage();
+        List<String> window = new ArrayList<>();
+        for (int i = 0; i < historySize; i++) {
+            window.add(i % 2 == 0 ? userMessage(i) : aiMessage(i));
+        }
+        String legacyKey = "bench:memory:" + historySize;
+        String listKey = "bench:memory:{" + historySize + "}:msgs";
+        String systemKey = "bench:memory:{" + historySize + "}:sys";
+        if (redis != null) {
+            redis.call("DEL", legacyKey, listKey, systemKey);
+            if (incremental) {
+                List<String> seed = new ArrayList<>(List.of("EVALSHA", scriptSha, "2", listKey, systemKey, "-1", "0", TTL, "set", systemJson, "", ""));
+                seed.addAll(window);
+                redis.call(seed.toArray(String[]::new));
+            } else {
+                redis.call("SET", legacyKey, legacyJson(systemJson, window), "EX", TTL);
+            }
+        }
+
+        long readBytes = 0;
+        long writeBytes = 0;
+        long start = System.nanoTime();
+        for (int turn = 0; turn < TURNS; turn++) {
+            for (int step = 0; step < 2; step++) {
+                String added = step == 0 ? userMessage(turn) : aiMessage(turn);
+                // 读取：旧方案 GET 整段 JSON；新方案一次往返 LRANGE + GET 系统消息
+                if (incremental) {
+                    byte[] lrange = Resp.encode("LRANGE", listKey, "0", "-1");
+                    byte[] get = Resp.encode("GET", systemKey);
+                    readBytes += lrange.length + get.length + Resp.arrayReplySize(window) + Resp.bulkReplySize(systemJson);
+                    if (redis != null) {
+                        redis.pipeline(lrange, get);
+                    }
+                } else {
+                    byte[] get = Resp.encode("GET", legacyKey);
+                    readBytes += get.length + Resp.bulkReplySize(legacyJson(systemJson, window));
+                    if (redis != null) {
+                        redis.send(get);
+                    }
+                }
+                // 写回：窗口淘汰队头一条、队尾追加一条
+                window.remove(0);
+                window.add(added);
+                byte[] write = incremental
+                        ? Resp.encode("EVALSHA", scriptSha, "2", listKey, systemKey,
+                                String.valueOf(historySize), "1", TTL, "keep", "", "", "", added)
+                        : Resp.encode("SET", legacyKey, legacyJson(systemJson, window), "EX", TTL);
+                writeBytes += write.length + (incremental ? 6 : 5);
+                if (redis != null) {
+                    redis.send(write);
+                }
+            }
+        }
+        long elapsedUs = (System.nanoTime() - start) / 1000;
+        System.out.printf("%-9d %-12s %14d %14d %14d %12.1f%n",
+                historySize, incremental ? "list-append" : "json-rewrite",
+                readBytes / TURNS, writeBytes / TURNS, (readBytes + writeBytes) / TURNS, (double) elapsedUs / TURNS);
+        if (redis != null) {
+            redis.call("DEL", legacyKey, listKey, systemKey);
+        }
+    }
+
+    // 消息 JSON 的格式与 ChatMessageSerializer 的输出一致
+    private static String systemMessage() {
+        return "{\"text\":\"" + "你是一名专业的旅游路线规划助手，需要根据用户需求给出按天划分的行程安排。".repeat(40) + "\",\"type\":\"SYSTEM\"}";
+    }
+
+    private static String userMessage(int i) {
+        return "{\"contents\":[{\"text\":\"第" + i + "轮：请帮我规划北京3日游，偏好博物馆和美食\",\"type\":\"TEXT\"}],\"type\":\"USER\"}";
+    }
+
+    private static String aiMessage(int i) {
+        return "{\"text\":\"第" + i + "轮回复：" + "第一天上午游览故宫博物院，下午前往景山公园俯瞰中轴线，晚上在南锣鼓巷品尝小吃。".repeat(30)
+                + "\",\"toolExecutionRequests\":[],\"type\":\"AI\"}";
+    }
+
+    private static String legacyJson(String systemJson, List<String> window) {
+        StringBuilder sb = new StringBuilder(systemJson.length() + window.size() * 512);
+        sb.append('[').append(systemJson);
+        for (String m : window) {
+            sb.append(',').append(m);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String sha1(String script) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 最小化的 RESP 客户端，只用于基准测试，避免依赖 Spring 容器
+     */
+    static final class Resp {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+
+        private Resp(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+            this.in = new BufferedInputStream(socket.getInputStream());
+        }
+
+        static Resp connect(String hostPort) throws IOException {
+            String[] parts = hostPort.split(":");
+            Socket socket = new Socket(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 6379);
+            socket.setTcpNoDelay(true);
+            return new Resp(socket);
+        }
+
+        static byte[] encode(String... args) {
+            byte[][] raw = new byte[args.length][];
+            for (int i = 0; i < args.length; i++) {
+                raw[i] = args[i].getBytes(StandardCharsets.UTF_8);
+            }
+            return encode(raw);
+        }
+
+        static byte[] encode(byte[]... args) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            writeAscii(buf, "*" + args.length + "\r\n");
+            for (byte[] bytes : args) {
+                writeAscii(buf, "$" + bytes.length + "\r\n");
+                buf.writeBytes(bytes);
+                writeAscii(buf, "\r\n");
+            }
+            return buf.toByteArray();
+        }
+
+        static long bulkReplySize(String value) {
+            int len = value.getBytes(StandardCharsets.UTF_8).length;
+            return 1 + String.valueOf(len).length() + 2 + len + 2;
+        }
+
+        static long arrayReplySize(List<String> values) {
+            long size = 1 + String.valueOf(values.size()).length() + 2;
+            for (String v : values) {
+                size += bulkReplySize(v);
+            }
+            return size;
+        }
+
+        String call(String... args) throws IOException {
+            return send(encode(args));
+        }
+
+        // 返回状态回复或整数回复的内容，其他类型返回 null
+        String send(byte[] command) throws IOException {
+            out.write(command);
+            out.flush();
+            return readReply();
+        }
+
+        void pipeline(byte[]... commands) throws IOException {
+            for (byte[] command : commands) {
+                out.write(command);
+            }
+            out.flush();
+            for (int i = 0; i < commands.length; i++) {
+                readReply();
+            }
+        }
+
+        private String readReply() throws IOException {
+            int type = in.read();
+            String line = readLine();
+            switch (type) {
+                case '-' -> throw new IOException("redis error: " + line);
+                case '$' -> {
+                    int len = Integer.parseInt(line);
+                    if (len >= 0) {
+                        in.readNBytes(len + 2);
+                    }
+                }
+                case '*' -> {
+                    int count = Integer.parseInt(line);
+                    for (int i = 0; i < count; i++) {
+                        readReply();
+                    }
+                }
+                default -> {
+                    // '+' 与 ':' 只有一行
+                    return line;
+                }
+            }
+            return null;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\r') {
+                if (c < 0) {
+                    throw new IOException("connection closed");
+                }
+                sb.append((char) c);
+            }
+            in.read();
+            return sb.toString();
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+
+        private static void writeAscii(ByteArrayOutputStream buf, String s) {
+            buf.writeBytes(s.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.aitourism.benchmark;
+
+import com.example.aitourism.sse.SseFrameEncoder;
+
+/**
+ * SSE 帧编码基准：对比旧的 String.format + replace 与 SseFrameEncoder 的单 token 编码开销
+ * 不是单元测试（类名不以 Test 结尾，surefire 不会执行），手动运行：
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.example.aitourism.benchmark.SseFrameEncoderBenchmark
+ */
+public class SseFrameEncoderBenchmark {
+
+    private static final String MODEL = "gpt-4o-mini";
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 10;
+    private static final int TOKENS_PER_ROUND = 1_000_000;
+
+    // 模拟模型输出的 token：中文短词、Markdown、换行及会破坏旧实现的引号/反斜杠
+    private static final String[] TOKENS = {
+            "请", "稍", "等", "，我", "将", "为", "您", "规划", "\n", "### 第一天",
+            "- **故宫**", "（", "约3小时", "）", "\n\n", "\"颐和园\"", "C:\\path", "\t", "。", "推荐"
+    };
+
+    public static void main(String[] args) {
+        SseFrameEncoder encoder = new SseFrameEncoder(MODEL);
+
+        // 正确性对比：旧实现遇到引号/反斜杠时会生成非法 JSON
+        System.out.println("legacy : " + legacyFrame("\"颐和园\" C:\\path").trim());
+        System.out.println("encoder: " + encoder.textFrame("\"颐和园\" C:\\path").trim());
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runLegacy();
+            runEncoder(encoder);
+        }
+
+        long legacyBest = Long.MAX_VALUE;
+        long encoderBest = Long.MAX_VALUE;
+        long sink = 0;
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += runLegacy();
+            legacyBest = Math.min(legacyBest, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            sink += runEncoder(encoder);
+            encoderBest = Math.min(encoderBest, System.nanoTime() - start);
+        }
+
+        double legacyPerToken = (double) legacyBest / TOKENS_PER_ROUND;
+        double encoderPerToken = (double) encoderBest / TOKENS_PER_ROUND;
+        System.out.printf("String.format + replace : %8.1f ns/token%n", legacyPerToken);
+        System.out.printf("SseFrameEncoder         : %8.1f ns/token%n", encoderPerToken);
+        System.out.printf("speedup                 : %8.2fx%n", legacyPerToken / encoderPerToken);
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static long runLegacy() {
+        long total = 0;
+        for (int i = 0; i < TOKENS_PER_ROUND; i++) {
+            total += legacyFrame(TOKENS[i % TOKENS.length]).length();
+        }
+        return total;
+    }
+
+    private static long runEncoder(SseFrameEncoder encoder) {
+        long total = 0;
+        for (int i = 0; i < TOKENS_PER_ROUND; i++) {
+            total += encoder.textFrame(TOKENS[i % TOKENS.length]).length();
+        }
+        return total;
+    }
+
+    // 旧实现（MemoryChatServiceImpl 中逐 token 的写法）
+    private static String legacyFrame(String token) {
+        return String.format(
+                "data: {\"choices\":[{\"index\":0,\"text\":\"%s\",\"finish_reason\":\"%s\",\"model\":\"%s\"}]}\n\n",
+                token.replace("\n", "\\n"), "stop", MODEL
+        );
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.aitourism.benchmark;
+
+import com.example.aitourism.ai.model.TokenCounter;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * token 估算：旧实现（逐字符正则 / 按字符比例） vs TokenCounter 单次遍历，比较吞吐、每次调用的分配字节数与估算结果
+ * 样本为天气工具结果（JSON）、中文行程回复、中英混排的用户提问。
+ * 不是单元测试（类名不以 Test 结尾，surefire 不会执行），只依赖 JDK：
+ *   java -cp target/test-classes:target/classes com.example.aitourism.benchmark.TokenCounterBenchmark
+ */
+public class TokenCounterBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int MEASURE_ROUNDS = 50_000;
+
+    // 以下两个方法是被替换前的实现，保留在这里作为对照
+    private static final Pattern CHINESE_PATTERN = Pattern.compile("[\\u4e00-\\u9fa5]");
+
+    static long regexEstimate(String text) {
+        int chineseChars = 0;
+        int englishWords = 0;
+        for (char c : text.toCharArray()) {
+            if (CHINESE_PATTERN.matcher(String.valueOf(c)).matches()) {
+                chineseChars++;
+            }
+        }
+        String[] words = text.replaceAll("[\\u4e00-\\u9fa5]", "").split("\\s+");
+        for (String word : words) {
+            if (!word.trim().isEmpty()) {
+                englishWords++;
+            }
+        }
+        return chineseChars + (int) (englishWords * 1.3);
+    }
+
+    static long ratioEstimate(String text) {
+        long chineseChars = text.chars().filter(ch -> ch >= 0x4E00 && ch <= 0x9FFF).count();
+        long otherChars = text.length() - chineseChars;
+        return Math.round(chineseChars * 1.5 + otherChars * 0.75);
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> samples = new LinkedHashMap<>();
+        samples.put("weather-json", weatherResult());
+        samples.put("itinerary-zh", itinerary());
+        samples.put("question-mixed", "帮我规划一下 Shanghai Disneyland 2 日游，预算 3000 元，10 月 1 号出发，带 2 个小孩");
+
+        Map<String, ToLongFunction<String>> estimators = new LinkedHashMap<>();
+        estimators.put("regex (old)", TokenCounterBenchmark::regexEstimate);
+        estimators.put("ratio (old)", TokenCounterBenchmark::ratioEstimate);
+        estimators.put("TokenCounter", TokenCounter::count);
+
+        System.out.printf("%-16s %6s %-14s %10s %12s %12s%n", "sample", "chars", "estimator", "tokens", "ns/call", "B/call");
+        for (Map.Entry<String, String> sample : samples.entrySet()) {
+            for (Map.Entry<String, ToLongFunction<String>> estimator : estimators.entrySet()) {
+                run(sample.getKey(), sample.getValue(), estimator.getKey(), estimator.getValue());
+            }
+        }
+        System.out.println();
+        System.out.printf("%-16s %8s %8s %8s%n", "sample", "o200k", "cl100k", "qwen");
+        for (Map.Entry<String, String> sample : samples.entrySet()) {
+            System.out.printf("%-16s %8d %8d %8d%n", sample.getKey(),
+                    TokenCounter.count(sample.getValue(), TokenCounter.Profile.O200K),
+                    TokenCounter.count(sample.getValue(), TokenCounter.Profile.CL100K),
+                    TokenCounter.count(sample.getValue(), TokenCounter.Profile.QWEN));
+        }
+    }
+
+    private static void run(String sampleName, String text, String name, ToLongFunction<String> estimator) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += estimator.applyAsLong(text);
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            sink += estimator.applyAsLong(text);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.printf("%-16s %6d %-14s %10d %12.0f %12d%n", sampleName, text.length(), name,
+                estimator.applyAsLong(text), (double) elapsed / MEASURE_ROUNDS, allocated / MEASURE_ROUNDS);
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) {
+            return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static String weatherResult() {
+        StringBuilder sb = new StringBuilder("{\"city\":\"杭州\",\"forecasts\":[");
+        for (int d = 1; d <= 4; d++) {
+            sb.append("{\"date\":\"2025-10-0").append(d).append("\",\"week\":\"").append(d)
+                    .append("\",\"dayweather\":\"多云\",\"nightweather\":\"晴\",")
+                    .append("\"daytemp\":\"2").append(d).append("\",\"nighttemp\":\"1").append(d)
+                    .append("\",\"daywind\":\"东北\",\"nightwind\":\"东北\",\"daypower\":\"1-3\",\"nightpower\":\"1-3\"}");
+            sb.append(d < 4 ? "," : "]}");
+        }
+        return sb.toString();
+    }
+
+    private static String itinerary() {
+        StringBuilder sb = new StringBuilder("# 杭州3日旅游攻略\n");
+        for (int d = 1; d <= 3; d++) {
+            sb.append("## 第").append(d).append("天\n")
+                    .append("- 上午：游览西湖，从断桥出发沿白堤步行至孤山，建议 8:00 前到达避开人流。\n")
+                    .append("- 中午：在知味观品尝杭帮菜，推荐西湖醋鱼、龙井虾仁，人均约 120 元。\n")
+                    .append("- 下午：乘坐 7 路公交前往灵隐寺，门票 45 元，飞来峰景区另需 45 元。\n")
+                    .append("- 晚上：河坊街夜市体验小吃，乘坐地铁 1 号线返回酒店，全程约 30 分钟。\n");
+        }
+        return sb.append("天气：多云转晴，气温 18~25℃，建议携带薄外套。").toString();
+    }
+}
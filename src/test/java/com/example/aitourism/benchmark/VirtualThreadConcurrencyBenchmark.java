@@ -0,0 +1,114 @@
+package com.example.aitourism.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 平台线程 vs 虚拟线程：相同堆大小下能同时维持的流式对话数
+ * 每个“流”模拟一次 SSE 对话：阻塞等待上游 token（sleep 模拟读 socket），逐个追加到回复缓冲区。
+ * 按步长逐步增加并发流，直到全部流在规定时间内完成失败、线程创建失败或达到上限。
+ * 不是单元测试（类名不以 Test 结尾，surefire 不会执行），两种模式需分别在独立 JVM 中运行：
+ *   java -Xmx256m -Xss1m -cp target/test-classes com.example.aitourism.benchmark.VirtualThreadConcurrencyBenchmark platform
+ *   java -Xmx256m -Xss1m -cp target/test-classes com.example.aitourism.benchmark.VirtualThreadConcurrencyBenchmark virtual
+ * 参考结果（JDK 21.0.1，1 vCPU / 6GB 容器，-Xmx256m -Xss1m，step=1000）：
+ *   platform：2000 路全部在期限内完成（wall 2528ms）；3000 路时创建线程耗尽时间，2968/3000 完成，判定超时
+ *   virtual ：18000 路全部完成（wall 2848ms，堆峰值约 177MB）；19000 路在 1 个 CPU 上超过 3s 期限
+ */
+public class VirtualThreadConcurrencyBenchmark {
+
+    private static final int TOKENS_PER_STREAM = 40;
+    private static final long TOKEN_INTERVAL_MS = 25;
+    // 单轮允许的最长耗时：理想耗时 1s，超过 3 倍视为调度已跟不上
+    private static final long ROUND_TIMEOUT_MS = TOKENS_PER_STREAM * TOKEN_INTERVAL_MS * 3;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "virtual";
+        int step = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int limit = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        boolean virtual = "virtual".equals(mode);
+
+        System.out.printf("mode=%s, maxHeap=%dMB, step=%d, limit=%d%n",
+                mode, Runtime.getRuntime().maxMemory() / (1024 * 1024), step, limit);
+
+        int maxSustained = 0;
+        for (int streams = step; streams <= limit; streams += step) {
+            RoundResult result = runRound(streams, virtual);
+            System.out.printf("streams=%6d  completed=%6d  wall=%5dms  heapUsed=%4dMB  %s%n",
+                    streams, result.completed, result.wallMs, result.heapUsedMb, result.error == null ? "ok" : result.error);
+            if (result.error != null || result.completed < streams) {
+                break;
+            }
+            maxSustained = streams;
+        }
+        System.out.printf("max concurrent streams (%s): %d%n", mode, maxSustained);
+        System.exit(0);
+    }
+
+    private record RoundResult(int completed, long wallMs, long heapUsedMb, String error) {
+    }
+
+    private static RoundResult runRound(int streams, boolean virtual) throws InterruptedException {
+        System.gc();
+        ExecutorService executor = virtual
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+        CountDownLatch done = new CountDownLatch(streams);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicLong peakHeap = new AtomicLong();
+        String error = null;
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < streams; i++) {
+                executor.execute(() -> {
+                    try {
+                        simulateStream(peakHeap);
+                        completed.incrementAndGet();
+                    } catch (Throwable t) {
+                        // 失败的流也要计数，避免主线程一直等待
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+        } catch (Throwable t) {
+            // 平台线程耗尽时这里会抛出 OutOfMemoryError: unable to create native thread
+            error = t.getClass().getSimpleName() + ": " + t.getMessage();
+            for (long i = done.getCount(); i > completed.get(); i--) {
+                done.countDown();
+            }
+        }
+        // 期限从本轮开始计算：平台线程模式下创建线程本身就可能耗掉大部分时间，不能只算提交之后的等待
+        long remainingMs = ROUND_TIMEOUT_MS - (System.nanoTime() - start) / 1_000_000;
+        boolean finished = remainingMs > 0 && done.await(remainingMs, TimeUnit.MILLISECONDS);
+        long wallMs = (System.nanoTime() - start) / 1_000_000;
+        if (!finished && error == null) {
+            error = "timeout";
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        return new RoundResult(completed.get(), wallMs, peakHeap.get() / (1024 * 1024), error);
+    }
+
+    private static void simulateStream(AtomicLong peakHeap) throws InterruptedException {
+        StringBuilder reply = new StringBuilder(256);
+        List<String> frames = new ArrayList<>(TOKENS_PER_STREAM);
+        for (int t = 0; t < TOKENS_PER_STREAM; t++) {
+            Thread.sleep(TOKEN_INTERVAL_MS);
+            String token = "第" + t + "站";
+            reply.append(token);
+            frames.add("data: {\"choices\":[{\"index\":0,\"text\":\"" + token + "\"}]}\n\n");
+        }
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        peakHeap.accumulateAndGet(used, Math::max);
+        if (frames.size() != TOKENS_PER_STREAM || reply.isEmpty()) {
+            throw new IllegalStateException("stream incomplete");
+        }
+    }
+}
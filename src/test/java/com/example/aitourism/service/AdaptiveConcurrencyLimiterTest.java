@@ -0,0 +1,57 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.AdaptiveLimitConfig;
+import com.example.aitourism.exception.AdmissionRejectedException;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.InternalServerException;
+import dev.langchain4j.exception.InvalidRequestException;
+import dev.langchain4j.exception.RateLimitException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpTimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 错误退避：只有过载信号（429、5xx、超时）收缩并发上限，客户端错误不影响
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private final AdaptiveLimitConfig config = new AdaptiveLimitConfig();
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        config.setEnabled(true);
+        config.setInitialLimit(100);
+        config.setBackoffRatio(0.5);
+        limiter = new AdaptiveConcurrencyLimiter(config, mock(AiModelMetricsCollector.class));
+        limiter.init();
+    }
+
+    @Test
+    void overloadErrorsBackOff() {
+        limiter.onModelError(new RateLimitException("too many requests"));
+        assertThat(limiter.currentLimit()).isEqualTo(50);
+
+        limiter.onModelError(new RuntimeException(new InternalServerException("bad gateway")));
+        limiter.onModelError(new HttpTimeoutException("request timed out"));
+        limiter.onModelError(new HttpException(503, "unavailable"));
+        limiter.onModelError(new AdmissionRejectedException("当前服务繁忙，请稍后重试"));
+        // 50 → 25 → 12.5 → 6.25 → 下限 4
+        assertThat(limiter.currentLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void clientErrorsAreIgnored() {
+        limiter.onModelError(new InvalidRequestException("免费API限制模型输入token小于4096"));
+        limiter.onModelError(new HttpException(400, "bad request"));
+        limiter.onModelError(new HttpException(403, "FORBIDDEN"));
+        limiter.onModelError(new IllegalArgumentException("输入内容过长"));
+
+        assertThat(limiter.currentLimit()).isEqualTo(100);
+    }
+}
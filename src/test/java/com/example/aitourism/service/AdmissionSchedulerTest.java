@@ -0,0 +1,278 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.AdmissionConfig;
+import com.example.aitourism.exception.AdmissionRejectedException;
+import com.example.aitourism.mapper.RoleMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 准入调度：空闲名额直接放行、公平队列的放行顺序、拒绝条件，
+ * 以及取消与放行交错（排队中取消、放行后取消、重复归还、并发交错）时名额不泄漏也不超发
+ */
+class AdmissionSchedulerTest {
+
+    private static final String ENDPOINT = "api.example.com";
+
+    private final AdmissionConfig config = new AdmissionConfig();
+    private final RoleMapper roleMapper = mock(RoleMapper.class);
+    private final AiModelMetricsCollector metricsCollector = mock(AiModelMetricsCollector.class);
+    private AdmissionScheduler scheduler;
+
+    // 通道注册的排队数 / 在途数
+    private Supplier<Number> queueDepth;
+    private Supplier<Number> inFlight;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        config.setEnabled(true);
+        config.setMaxConcurrent(1);
+        config.setQueueCapacity(100);
+        config.setPerUserQueueLimit(3);
+        config.setMaxWaitSeconds(30);
+        when(roleMapper.findRoleCodesByUserId(anyString())).thenReturn(List.of("USER"));
+        when(roleMapper.findRoleCodesByUserId("root")).thenReturn(List.of("ROOT"));
+        doAnswer(invocation -> {
+            queueDepth = invocation.getArgument(1);
+            inFlight = invocation.getArgument(2);
+            return null;
+        }).when(metricsCollector).registerAdmissionGauges(eq(ENDPOINT), any(Supplier.class), any(Supplier.class));
+        scheduler = new AdmissionScheduler(config, roleMapper, metricsCollector);
+        scheduler.init();
+    }
+
+    @Test
+    void admitsImmediatelyWhileUnderTheLimit() {
+        config.setMaxConcurrent(2);
+
+        AdmissionScheduler.Ticket first = scheduler.enqueue(ENDPOINT, "a");
+        AdmissionScheduler.Ticket second = scheduler.enqueue(ENDPOINT, "b");
+        AdmissionScheduler.Ticket third = scheduler.enqueue(ENDPOINT, "c");
+
+        assertThat(first.queued()).isFalse();
+        assertThat(second.queued()).isFalse();
+        assertThat(third.queued()).isTrue();
+        assertThat(third.position()).isEqualTo(1);
+        assertThat(inFlight.get()).isEqualTo(2);
+        assertThat(queueDepth.get()).isEqualTo(1);
+    }
+
+    @Test
+    void burstFromOneUserDoesNotStarveAnother() {
+        AdmissionScheduler.Ticket running = scheduler.enqueue(ENDPOINT, "x");
+        List<String> order = new CopyOnWriteArrayList<>();
+        Map<String, AdmissionScheduler.Ticket> waiting = new LinkedHashMap<>();
+        track(waiting, "a1", scheduler.enqueue(ENDPOINT, "a"), order);
+        track(waiting, "a2", scheduler.enqueue(ENDPOINT, "a"), order);
+        track(waiting, "a3", scheduler.enqueue(ENDPOINT, "a"), order);
+        track(waiting, "b1", scheduler.enqueue(ENDPOINT, "b"), order);
+
+        drain(running, waiting, order);
+
+        // b1 与 a1 的虚拟完成时间相同，按到达顺序排在 a1 之后，但排在 a 的后续请求之前
+        assertThat(order).containsExactly("a1", "b1", "a2", "a3");
+    }
+
+    @Test
+    void rootUsersAreAdmittedAheadOfEarlierRequests() {
+        AdmissionScheduler.Ticket running = scheduler.enqueue(ENDPOINT, "x");
+        List<String> order = new CopyOnWriteArrayList<>();
+        Map<String, AdmissionScheduler.Ticket> waiting = new LinkedHashMap<>();
+        track(waiting, "a1", scheduler.enqueue(ENDPOINT, "a"), order);
+        track(waiting, "b1", scheduler.enqueue(ENDPOINT, "b"), order);
+        track(waiting, "root1", scheduler.enqueue(ENDPOINT, "root"), order);
+
+        drain(running, waiting, order);
+
+        assertThat(order).containsExactly("root1", "a1", "b1");
+    }
+
+    @Test
+    void userVirtualTimeRestartsOnceTheirQueueIsEmpty() {
+        AdmissionScheduler.Ticket running = scheduler.enqueue(ENDPOINT, "x");
+        // a 的排队请求取消后，a 不应带着已累积的虚拟时间排在 b 的后续请求之后
+        scheduler.enqueue(ENDPOINT, "a").release();
+        List<String> order = new CopyOnWriteArrayList<>();
+        Map<String, AdmissionScheduler.Ticket> waiting = new LinkedHashMap<>();
+        track(waiting, "b1", scheduler.enqueue(ENDPOINT, "b"), order);
+        track(waiting, "b2", scheduler.enqueue(ENDPOINT, "b"), order);
+        track(waiting, "a2", scheduler.enqueue(ENDPOINT, "a"), order);
+
+        drain(running, waiting, order);
+
+        assertThat(order).containsExactly("b1", "a2", "b2");
+    }
+
+    @Test
+    void rejectsWhenQueueOrUserQuotaIsFull() {
+        config.setQueueCapacity(3);
+        config.setPerUserQueueLimit(2);
+        scheduler.enqueue(ENDPOINT, "x");
+        scheduler.enqueue(ENDPOINT, "a");
+        scheduler.enqueue(ENDPOINT, "a");
+
+        assertThatThrownBy(() -> scheduler.enqueue(ENDPOINT, "a"))
+                .isInstanceOf(AdmissionRejectedException.class);
+        verify(metricsCollector).recordAdmissionRejected(ENDPOINT, "user_queue_full");
+
+        scheduler.enqueue(ENDPOINT, "b");
+        assertThatThrownBy(() -> scheduler.enqueue(ENDPOINT, "c"))
+                .isInstanceOf(AdmissionRejectedException.class);
+        verify(metricsCollector).recordAdmissionRejected(ENDPOINT, "queue_full");
+        assertThat(queueDepth.get()).isEqualTo(3);
+    }
+
+    @Test
+    void waitingTooLongIsRejectedAndLeavesTheQueue() {
+        config.setMaxWaitSeconds(1);
+        scheduler.enqueue(ENDPOINT, "x");
+        AdmissionScheduler.Ticket waiting = scheduler.enqueue(ENDPOINT, "a");
+
+        assertThatThrownBy(() -> waiting.admitted().block(Duration.ofSeconds(5)))
+                .isInstanceOf(AdmissionRejectedException.class);
+        assertThat(queueDepth.get()).isEqualTo(0);
+        verify(metricsCollector).recordAdmissionRejected(ENDPOINT, "timeout");
+    }
+
+    @Test
+    void unsubscribingWhileQueuedLeavesTheQueueWithoutTakingASlot() {
+        AdmissionScheduler.Ticket running = scheduler.enqueue(ENDPOINT, "x");
+        AdmissionScheduler.Ticket waiting = scheduler.enqueue(ENDPOINT, "a");
+        Disposable subscription = waiting.admitted().subscribe();
+
+        subscription.dispose();
+        assertThat(queueDepth.get()).isEqualTo(0);
+
+        running.release();
+        assertThat(inFlight.get()).isEqualTo(0);
+        assertThat(scheduler.enqueue(ENDPOINT, "b").queued()).isFalse();
+    }
+
+    @Test
+    void cancellingAfterBeingAdmittedReturnsTheSlot() {
+        AdmissionScheduler.Ticket running = scheduler.enqueue(ENDPOINT, "x");
+        AdmissionScheduler.Ticket waiting = scheduler.enqueue(ENDPOINT, "a");
+        CompletableFuture<Void> admitted = waiting.admitted().toFuture();
+
+        running.release();
+        assertThat(admitted).isCompleted();
+        assertThat(inFlight.get()).isEqualTo(1);
+
+        // 放行之后前端断开：取消订阅与 release 都会归还名额，但只归还一次
+        waiting.release();
+        waiting.release();
+        assertThat(inFlight.get()).isEqualTo(0);
+        assertThat(scheduler.enqueue(ENDPOINT, "b").queued()).isFalse();
+        assertThat(scheduler.enqueue(ENDPOINT, "c").queued()).isTrue();
+    }
+
+    @Test
+    void admittedTicketIsReturnedOnlyOnce() {
+        AdmissionScheduler.Ticket running = scheduler.enqueue(ENDPOINT, "x");
+
+        running.release();
+        running.release();
+
+        assertThat(inFlight.get()).isEqualTo(0);
+        assertThat(scheduler.enqueue(ENDPOINT, "a").queued()).isFalse();
+        assertThat(scheduler.enqueue(ENDPOINT, "b").queued()).isTrue();
+    }
+
+    @Test
+    void concurrentCancelAndAdmitNeverLeakOrOversubscribe() throws Exception {
+        config.setMaxConcurrent(4);
+        config.setQueueCapacity(10_000);
+        config.setPerUserQueueLimit(10_000);
+        int threads = 8;
+        int rounds = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String user = "u" + (t % 3);
+            executor.execute(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < rounds; i++) {
+                        AdmissionScheduler.Ticket ticket = scheduler.enqueue(ENDPOINT, user);
+                        if (ticket.queued() && random.nextBoolean()) {
+                            // 排队中放弃：可能与其他线程的放行同时发生
+                            ticket.release();
+                            continue;
+                        }
+                        ticket.admitted().block(Duration.ofSeconds(10));
+                        assertThat(inFlight.get().intValue()).isBetween(1, 4);
+                        ticket.release();
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+        assertThat(failures).isEmpty();
+        assertThat(inFlight.get()).isEqualTo(0);
+        assertThat(queueDepth.get()).isEqualTo(0);
+    }
+
+    @Test
+    void disabledSchedulerAdmitsEverything() {
+        config.setEnabled(false);
+
+        for (int i = 0; i < 10; i++) {
+            AdmissionScheduler.Ticket ticket = scheduler.enqueue(ENDPOINT, "a");
+            assertThat(ticket.queued()).isFalse();
+            assertThat(ticket.admitted().toFuture()).isCompleted();
+        }
+        verify(metricsCollector, never()).registerAdmissionGauges(any(), any(), any());
+    }
+
+    // 订阅放行结果，按放行顺序记录名称
+    private static void track(Map<String, AdmissionScheduler.Ticket> tickets, String name,
+                              AdmissionScheduler.Ticket ticket, List<String> order) {
+        assertThat(ticket.queued()).isTrue();
+        tickets.put(name, ticket);
+        ticket.admitted().subscribe(v -> { }, e -> { }, () -> order.add(name));
+    }
+
+    // 逐个归还名额：每次归还恰好放行一个请求，再由刚放行的请求归还
+    private static void drain(AdmissionScheduler.Ticket running, Map<String, AdmissionScheduler.Ticket> tickets,
+                              List<String> order) {
+        running.release();
+        for (int i = 0; i < tickets.size(); i++) {
+            assertThat(order).hasSize(i + 1);
+            tickets.get(order.get(i)).release();
+        }
+    }
+}
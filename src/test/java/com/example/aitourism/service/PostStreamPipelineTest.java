@@ -0,0 +1,174 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.PostStreamConfig;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 后处理流水线：队列满时入库不在调用线程执行；死信写入 Redis 列表，可取出重放，重放次数有上限
+ */
+class PostStreamPipelineTest {
+
+    private final PostStreamConfig config = new PostStreamConfig();
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    // 模拟的 Redis 列表
+    private final LinkedList<String> list = new LinkedList<>();
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .propertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+            .build();
+    private PostStreamPipeline pipeline;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        config.setConcurrency(1);
+        config.setQueueCapacity(1);
+        config.setRouteRetryAttempts(0);
+        config.setDeadLetterReplayLimit(1);
+
+        ListOperations<String, String> ops = mock(ListOperations.class);
+        when(redis.opsForList()).thenReturn(ops);
+        when(ops.rightPush(anyString(), anyString())).thenAnswer(invocation -> {
+            synchronized (list) {
+                list.addLast(invocation.getArgument(1));
+                return (long) list.size();
+            }
+        });
+        when(ops.leftPop(anyString())).thenAnswer(invocation -> {
+            synchronized (list) {
+                return list.pollFirst();
+            }
+        });
+        when(ops.size(anyString())).thenAnswer(invocation -> {
+            synchronized (list) {
+                return (long) list.size();
+            }
+        });
+        when(ops.range(anyString(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            synchronized (list) {
+                return new ArrayList<>(list);
+            }
+        });
+
+        pipeline = new PostStreamPipeline(config, mock(AiModelMetricsCollector.class), redis, objectMapper);
+        pipeline.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void persistenceIsHandedOffWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // 占满唯一的工作线程与容量为 1 的队列
+        pipeline.submit("busy", "r", awaiting(release), () -> "[]", routes -> { });
+        pipeline.submit("queued", "r", () -> { }, () -> "[]", routes -> { });
+
+        List<String> persistThreads = new CopyOnWriteArrayList<>();
+        CountDownLatch persisted = new CountDownLatch(1);
+        pipeline.submit("overflow", "回复", () -> {
+            persistThreads.add(Thread.currentThread().getName());
+            persisted.countDown();
+        }, () -> "[]", routes -> { });
+
+        assertThat(persisted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(persistThreads).containsExactly("post-stream-fallback");
+        release.countDown();
+
+        awaitDeadLetters(1);
+        PostStreamPipeline.DeadLetter letter = pipeline.getDeadLetters().get(0);
+        assertThat(letter.sessionId()).isEqualTo("overflow");
+        assertThat(letter.reply()).isEqualTo("回复");
+        assertThat(letter.reason()).isEqualTo("queue full");
+    }
+
+    @Test
+    void deadLettersAreReplayedUntilTheLimit() throws Exception {
+        pipeline.submit("s1", "回复", () -> { }, () -> {
+            throw new IllegalStateException("model down");
+        }, routes -> { });
+        awaitDeadLetters(1);
+
+        List<PostStreamPipeline.DeadLetter> letters = pipeline.takeDeadLetters();
+        assertThat(letters).hasSize(1);
+        assertThat(letters.get(0).replays()).isZero();
+        assertThat(pipeline.getDeadLetters()).isEmpty();
+
+        // 重放再次失败：以 replays = 1 重新记入死信
+        pipeline.retry(letters.get(0), () -> {
+            throw new IllegalStateException("still down");
+        }, routes -> { });
+        awaitDeadLetters(1);
+        assertThat(pipeline.getDeadLetters().get(0).replays()).isEqualTo(1);
+
+        // 达到重放上限后丢弃
+        assertThat(pipeline.takeDeadLetters()).isEmpty();
+        assertThat(pipeline.getDeadLetters()).isEmpty();
+    }
+
+    @Test
+    void replayedExtractionReachesTheSink() throws Exception {
+        pipeline.submit("s1", "回复", () -> { }, () -> {
+            throw new IllegalStateException("model down");
+        }, routes -> { });
+        awaitDeadLetters(1);
+
+        List<String> sunk = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        PostStreamPipeline.DeadLetter letter = pipeline.takeDeadLetters().get(0);
+        pipeline.retry(letter, () -> "routes of " + letter.reply(), routes -> {
+            sunk.add(routes);
+            done.countDown();
+        });
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(sunk).containsExactly("routes of 回复");
+    }
+
+    private static Runnable awaiting(CountDownLatch latch) {
+        return () -> {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private void awaitDeadLetters(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            synchronized (list) {
+                if (list.size() == expected) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        synchronized (list) {
+            assertThat(list).hasSize(expected);
+        }
+    }
+}
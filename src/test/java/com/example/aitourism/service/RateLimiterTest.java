@@ -0,0 +1,193 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.config.RateLimitConfig;
+import com.example.aitourism.mapper.RoleMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 令牌桶限流：TOKEN_BUCKET_SCRIPT 在这里按 Lua 中的语义模拟执行（补充、扣减、重试等待），时间由测试推进；
+ * 验证桶的放行与拒绝、本地预取、按角色选择限额，以及 Redis 不可用时放行
+ */
+class RateLimiterTest {
+
+    private static final String CHAT = "/ai_assistant/chat-stream";
+
+    private final RateLimitConfig config = new RateLimitConfig();
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final RoleMapper roleMapper = mock(RoleMapper.class);
+    private final AiModelMetricsCollector metricsCollector = mock(AiModelMetricsCollector.class);
+    private RateLimiter rateLimiter;
+
+    // 模拟的 Redis 状态：桶键 -> {tokens, ts}，以及 Redis 服务器时间
+    private final Map<String, double[]> buckets = new HashMap<>();
+    private final List<String> scriptKeys = new ArrayList<>();
+    private long now = 1_000_000;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        config.setEnabled(true);
+        RateLimitConfig.Rule chat = new RateLimitConfig.Rule();
+        chat.setPath(CHAT);
+        chat.setCapacity(3);
+        chat.setRefillPerMinute(60);
+        chat.setPrefetch(1);
+        RateLimitConfig.Limit vip = new RateLimitConfig.Limit();
+        vip.setCapacity(5);
+        vip.setRefillPerMinute(60);
+        RateLimitConfig.Limit root = new RateLimitConfig.Limit();
+        root.setCapacity(50);
+        root.setRefillPerMinute(600);
+        chat.getRoles().put("VIP", vip);
+        chat.getRoles().put("ROOT", root);
+        config.getRules().put("chat", chat);
+
+        when(redis.execute(any(RedisScript.class), anyList(), anyString(), anyString(), anyString()))
+                .thenAnswer(invocation -> runScript(
+                        ((List<String>) invocation.getArgument(1)).get(0),
+                        Integer.parseInt(invocation.getArgument(2)),
+                        Double.parseDouble(invocation.getArgument(3)),
+                        Integer.parseInt(invocation.getArgument(4))));
+        when(roleMapper.findRoleCodesByUserId(anyString())).thenReturn(List.of("USER"));
+
+        rateLimiter = new RateLimiter(config, redis, roleMapper, metricsCollector);
+        rateLimiter.init();
+    }
+
+    @Test
+    void bucketAllowsBurstThenRejectsUntilRefilled() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+        }
+
+        RateLimiter.Decision rejected = rateLimiter.check(CHAT, "u1", "1.1.1.1");
+        assertThat(rejected.allowed()).isFalse();
+        // 每秒补充 1 个令牌
+        assertThat(rejected.retryAfterMs()).isEqualTo(1000);
+
+        now += 1000;
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isFalse();
+    }
+
+    @Test
+    void subjectsHaveIndependentBuckets() {
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.check(CHAT, "u1", "1.1.1.1");
+        }
+
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isFalse();
+        assertThat(rateLimiter.check(CHAT, "u2", "1.1.1.1").allowed()).isTrue();
+        // 未登录按 IP 限流，与同一 IP 上已登录用户的桶无关
+        assertThat(rateLimiter.check(CHAT, null, "1.1.1.1").allowed()).isTrue();
+        assertThat(scriptKeys).contains("ai:rate-limit:chat:default:u:u1", "ai:rate-limit:chat:default:ip:1.1.1.1");
+    }
+
+    @Test
+    void prefetchedTokensAreSpentLocally() {
+        config.getRules().get("chat").setCapacity(10);
+        config.getRules().get("chat").setPrefetch(3);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+        }
+        assertThat(scriptKeys).hasSize(1);
+        assertThat(buckets.get("ai:rate-limit:chat:default:u:u1")[0]).isEqualTo(7);
+
+        // 本地令牌用完后再访问 Redis
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+        assertThat(scriptKeys).hasSize(2);
+    }
+
+    @Test
+    void prefetchNeverTakesMoreThanTheBucketHolds() {
+        config.getRules().get("chat").setCapacity(2);
+        config.getRules().get("chat").setPrefetch(5);
+
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isFalse();
+        assertThat(scriptKeys).hasSize(2);
+    }
+
+    @Test
+    void firstConfiguredRoleOfTheUserSelectsTheLimit() {
+        when(roleMapper.findRoleCodesByUserId("root")).thenReturn(List.of("ROOT", "VIP"));
+        when(roleMapper.findRoleCodesByUserId("vip")).thenReturn(List.of("USER", "VIP"));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(rateLimiter.check(CHAT, "vip", "1.1.1.1").allowed()).isTrue();
+        }
+        assertThat(rateLimiter.check(CHAT, "vip", "1.1.1.1").allowed()).isFalse();
+        assertThat(rateLimiter.check(CHAT, "root", "1.1.1.1").allowed()).isTrue();
+
+        // 规则中 VIP 配置在 ROOT 之前，同时具有两个角色时取 VIP
+        assertThat(scriptKeys).contains("ai:rate-limit:chat:VIP:u:vip", "ai:rate-limit:chat:VIP:u:root");
+    }
+
+    @Test
+    void roleLookupFailureFallsBackToDefaultLimit() {
+        when(roleMapper.findRoleCodesByUserId("u1")).thenThrow(new IllegalStateException("db down"));
+
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+
+        assertThat(scriptKeys).containsExactly("ai:rate-limit:chat:default:u:u1");
+    }
+
+    @Test
+    void anonymousRequestsNeverQueryRoles() {
+        rateLimiter.check(CHAT, null, "1.1.1.1");
+
+        verify(roleMapper, never()).findRoleCodesByUserId(anyString());
+    }
+
+    @Test
+    void redisFailureLetsRequestsThrough() {
+        when(redis.execute(any(RedisScript.class), anyList(), anyString(), anyString(), anyString()))
+                .thenThrow(new RedisConnectionFailureException("connection refused"));
+
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+        verify(metricsCollector).recordRateLimitDecision(any(), any(), any(), any());
+    }
+
+    @Test
+    void unmatchedPathOrDisabledLimiterSkipsRedis() {
+        assertThat(rateLimiter.check("/other", "u1", "1.1.1.1").allowed()).isTrue();
+        config.setEnabled(false);
+        assertThat(rateLimiter.check(CHAT, "u1", "1.1.1.1").allowed()).isTrue();
+
+        assertThat(scriptKeys).isEmpty();
+    }
+
+    // 按 TOKEN_BUCKET_SCRIPT 的语义执行一次脚本
+    private List<Long> runScript(String key, int capacity, double rate, int requested) {
+        scriptKeys.add(key);
+        double[] state = buckets.computeIfAbsent(key, k -> new double[]{capacity, now});
+        double tokens = Math.min(capacity, state[0] + Math.max(0, now - state[1]) * rate);
+        long granted = Math.min(requested, (long) Math.floor(tokens));
+        tokens -= granted;
+        state[0] = tokens;
+        state[1] = now;
+        long retry = granted == 0 ? (long) Math.ceil((1 - tokens) / rate) : 0;
+        return List.of(granted, retry);
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.aitourism.service;
+
+import com.example.aitourism.ai.MemoryAssistantServiceFactory;
+import com.example.aitourism.ai.mcp.McpClientService;
+import com.example.aitourism.ai.memory.ChatMemoryCodec;
+import com.example.aitourism.ai.model.ModelClientRegistry;
+import com.example.aitourism.config.ChatMemoryCodecConfig;
+import com.example.aitourism.config.HedgingConfig;
+import com.example.aitourism.config.McpConfig;
+import com.example.aitourism.config.WarmupConfig;
+import com.example.aitourism.entity.Session;
+import com.example.aitourism.mapper.SessionMapper;
+import com.example.aitourism.monitor.AiModelMetricsCollector;
+import com.example.aitourism.monitor.AiModelMonitorListener;
+import com.example.aitourism.sse.SseFrameEncoder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 启动预热：模型端点与 MCP 工具端点由本地 HttpServer 模拟，验证各步骤真实访问了端点、
+ * 端点失败只记录不中断，以及整体超时后不再阻塞就绪
+ */
+class WarmupServiceTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String base;
+    // 请求路径 -> 次数
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    // 请求路径 -> 返回状态码，未配置的路径返回 404
+    private final Map<String, Integer> statuses = new ConcurrentHashMap<>();
+    private volatile long modelDelayMs;
+
+    private final WarmupConfig config = new WarmupConfig();
+    private final McpConfig mcpConfig = new McpConfig();
+    private final AiModelMetricsCollector metricsCollector = mock(AiModelMetricsCollector.class);
+    private final MemoryAssistantServiceFactory assistantServiceFactory = mock(MemoryAssistantServiceFactory.class);
+    private final SessionMapper sessionMapper = mock(SessionMapper.class);
+    private ModelClientRegistry modelClientRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        // 各端点的请求并行处理，慢端点不会让其他请求排队
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        statuses.put("/main/v1/models", 200);
+        statuses.put("/small/v1/models", 200);
+        statuses.put("/mcp/sse", 200);
+
+        config.setTimeoutSeconds(10);
+        config.setEndpointTimeoutSeconds(5);
+        config.setJitIterations(10);
+        config.setRecentSessions(2);
+
+        McpConfig.McpClientConfig amap = new McpConfig.McpClientConfig();
+        amap.setName("amap");
+        amap.setSseUrl(base + "/mcp/sse");
+        mcpConfig.setClients(List.of(amap));
+
+        modelClientRegistry = modelClientRegistry(base + "/main/v1", base + "/small/v1");
+        when(sessionMapper.findAll(0, 2)).thenReturn(List.of(session("s1"), session("s2")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        modelClientRegistry.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void modelAndToolEndpointsAreWarmedBeforeReady() {
+        WarmupService warmupService = warmupService();
+
+        warmupService.run(null);
+
+        assertThat(warmupService.isReady()).isTrue();
+        assertThat(warmupService.isTimedOut()).isFalse();
+        assertThat(warmupService.steps()).containsOnlyKeys(
+                "models", "assistant", "tools", "hot_paths", "stores", "recent_sessions");
+        assertThat(warmupService.steps().values()).allMatch(result -> result.endsWith("ms"));
+        // 同步与流式两类客户端各自的连接池各预热一次
+        assertThat(hits("/main/v1/models")).isEqualTo(2);
+        assertThat(hits("/small/v1/models")).isEqualTo(2);
+        assertThat(hits("/mcp/sse")).isEqualTo(1);
+        // 主模型与小模型两个端点，各两类客户端
+        verify(metricsCollector, times(4)).recordWarmupRoundTrip(eq("127.0.0.1:" + server.getAddress().getPort()), any());
+        verify(assistantServiceFactory).warmup();
+        verify(assistantServiceFactory).prewarmMemory("s1");
+        verify(assistantServiceFactory).prewarmMemory("s2");
+    }
+
+    @Test
+    void unreachableToolEndpointIsRecordedWithoutStoppingLaterSteps() {
+        statuses.put("/mcp/sse", 503);
+        WarmupService warmupService = warmupService();
+
+        warmupService.run(null);
+
+        assertThat(warmupService.isReady()).isTrue();
+        assertThat(warmupService.steps().get("tools")).startsWith("error");
+        assertThat(warmupService.steps().get("models")).endsWith("ms");
+        assertThat(warmupService.steps().get("recent_sessions")).endsWith("ms");
+        verify(metricsCollector).recordWarmupStep(eq("tools"), eq("error"), any());
+        verify(assistantServiceFactory).prewarmMemory("s2");
+    }
+
+    @Test
+    void toolEndpointsCanBeSkipped() {
+        config.setToolEndpointsEnabled(false);
+        WarmupService warmupService = warmupService();
+
+        warmupService.run(null);
+
+        assertThat(warmupService.steps()).doesNotContainKey("tools");
+        assertThat(hits("/mcp/sse")).isZero();
+        assertThat(hits("/main/v1/models")).isEqualTo(2);
+    }
+
+    @Test
+    void slowModelEndpointStopsBlockingReadinessAfterTheTimeout() {
+        config.setTimeoutSeconds(1);
+        modelDelayMs = 2000;
+        WarmupService warmupService = warmupService();
+
+        long start = System.nanoTime();
+        warmupService.run(null);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1900));
+        assertThat(warmupService.isReady()).isTrue();
+        assertThat(warmupService.isTimedOut()).isTrue();
+        assertThat(warmupService.steps()).doesNotContainKey("models");
+    }
+
+    @Test
+    void disabledWarmupIsReadyWithoutTouchingEndpoints() {
+        config.setEnabled(false);
+        WarmupService warmupService = warmupService();
+
+        warmupService.run(null);
+
+        assertThat(warmupService.isReady()).isTrue();
+        assertThat(hits).isEmpty();
+        verify(sessionMapper, never()).findAll(anyInt(), anyInt());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        hits.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+        if (path.endsWith("/models") && modelDelayMs > 0) {
+            try {
+                Thread.sleep(modelDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = "{\"object\":\"list\",\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statuses.getOrDefault(path, 404), body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private int hits(String path) {
+        AtomicInteger count = hits.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    private WarmupService warmupService() {
+        return new WarmupService(config,
+                modelClientRegistry,
+                assistantServiceFactory,
+                new McpClientService(mcpConfig),
+                new SseFrameEncoder("gpt-4o-mini"),
+                new ChatMemoryCodec(new ChatMemoryCodecConfig()),
+                mock(ChatMemoryStore.class),
+                sessionMapper,
+                metricsCollector);
+    }
+
+    private ModelClientRegistry modelClientRegistry(String mainUrl, String smallUrl) {
+        ModelClientRegistry registry = new ModelClientRegistry();
+        ReflectionTestUtils.setField(registry, "apiKey", "test");
+        ReflectionTestUtils.setField(registry, "baseUrl", mainUrl);
+        ReflectionTestUtils.setField(registry, "modelName", "gpt-4o-mini");
+        ReflectionTestUtils.setField(registry, "maxOutputTokens", 800);
+        ReflectionTestUtils.setField(registry, "apiKeySmall", "test");
+        ReflectionTestUtils.setField(registry, "baseUrlSmall", smallUrl);
+        ReflectionTestUtils.setField(registry, "modelNameSmall", "qwen2.5:7b");
+        ReflectionTestUtils.setField(registry, "connectTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(registry, "readTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(registry, "maxConnections", 10);
+        ReflectionTestUtils.setField(registry, "acquireTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(registry, "keepAliveMs", 30000L);
+        ReflectionTestUtils.setField(registry, "http2Enabled", true);
+        ReflectionTestUtils.setField(registry, "warmupEnabled", true);
+        ReflectionTestUtils.setField(registry, "metricsCollector", metricsCollector);
+        ReflectionTestUtils.setField(registry, "aiModelMonitorListener", mock(AiModelMonitorListener.class));
+        ReflectionTestUtils.setField(registry, "hedgingConfig", new HedgingConfig());
+        registry.init();
+        return registry;
+    }
+
+    private static Session session(String sessionId) {
+        Session session = new Session();
+        session.setSessionId(sessionId);
+        return session;
+    }
+}
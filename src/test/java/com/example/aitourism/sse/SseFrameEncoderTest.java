@@ -0,0 +1,103 @@
+package com.example.aitourism.sse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseFrameEncoderTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final SseFrameEncoder encoder = new SseFrameEncoder("gpt-4o-mini");
+
+    /**
+     * 转义对照表：名称、输入、是否与 Jackson 的输出逐字相同。
+     * Jackson 对 \b、\f 使用短转义、其余控制字符用大写十六进制，且不转义 U+2028/U+2029，
+     * 这些行只比较解析后的 JSON 是否一致
+     */
+    static Stream<Arguments> escapingCases() {
+        return Stream.of(
+                Arguments.of("plain", "北京三日游 Day 1", true),
+                Arguments.of("quote", "他说\"好\"", true),
+                Arguments.of("backslash", "C:\\path\\to", true),
+                Arguments.of("newline", "第一行\n第二行", true),
+                Arguments.of("carriage return", "a\r\nb", true),
+                Arguments.of("tab", "a\tb", true),
+                Arguments.of("backspace and form feed", "a\bb\fc", false),
+                Arguments.of("other control characters", "\u0000\u0001\u001f\u000b", false),
+                Arguments.of("line and paragraph separators", "a\u2028b\u2029c", false),
+                Arguments.of("surrogate pair", "路线 🗺️ 𠮷", true),
+                Arguments.of("escape sequence as text", "\\u0041 \\n", true),
+                Arguments.of("empty", "", true)
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("escapingCases")
+    void textFrameMatchesJacksonSerialisation(String name, String text, boolean identical) throws Exception {
+        String frame = encoder.textFrame(text);
+        assertThat(frame).startsWith("data: ").endsWith("\n\n");
+        String json = frame.substring("data: ".length(), frame.length() - 2);
+
+        String expected = MAPPER.writeValueAsString(Map.of("choices", List.of(chunk(text))));
+        JsonNode parsed = MAPPER.readTree(json);
+        assertThat(parsed).isEqualTo(MAPPER.readTree(expected));
+        assertThat(parsed.at("/choices/0/text").asText()).isEqualTo(text);
+        if (identical) {
+            assertThat(json).isEqualTo(expected);
+        }
+        // 数据行内不能出现原始换行、控制字符或 U+2028/U+2029
+        assertThat(json.chars().filter(c -> c < 0x20 || c == 0x2028 || c == 0x2029)).isEmpty();
+    }
+
+    // 与 textFrame 相同的字段顺序
+    private static Map<String, Object> chunk(String text) {
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("index", 0);
+        chunk.put("text", text);
+        chunk.put("finish_reason", "stop");
+        chunk.put("model", "gpt-4o-mini");
+        return chunk;
+    }
+
+    @Test
+    void namedEventFrameBecomesNamedServerSentEvent() {
+        Map<String, String> payload = new LinkedHashMap<>();
+        payload.put("session_id", "s1");
+        payload.put("title", "北京\"三日\"游");
+
+        ServerSentEvent<String> event = SseFrameEncoder.toServerSentEvent(encoder.eventFrame("title", payload));
+
+        assertThat(event.event()).isEqualTo("title");
+        assertThat(event.data()).isEqualTo("{\"session_id\":\"s1\",\"title\":\"北京\\\"三日\\\"游\"}");
+    }
+
+    @Test
+    void textFrameIsPassedThroughAsData() {
+        String frame = encoder.textFrame("event: 不是事件\n");
+
+        ServerSentEvent<String> event = SseFrameEncoder.toServerSentEvent(frame);
+
+        assertThat(event.event()).isNull();
+        assertThat(event.data()).isEqualTo(frame);
+    }
+
+    @Test
+    void stopFrameIsPassedThroughAsData() {
+        ServerSentEvent<String> event = SseFrameEncoder.toServerSentEvent(SseFrameEncoder.STOP_FRAME);
+
+        assertThat(event.event()).isNull();
+        assertThat(event.data()).isEqualTo(SseFrameEncoder.STOP_FRAME);
+    }
+}
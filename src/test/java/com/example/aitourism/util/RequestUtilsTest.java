@@ -0,0 +1,48 @@
+package com.example.aitourism.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestUtilsTest {
+
+    private static final List<String> TRUSTED = List.of("10.0.0.0/8", "192.168.1.5", "::1");
+
+    @Test
+    void forwardedHeaderFromUntrustedPeerIsIgnored() {
+        assertThat(clientIp("203.0.113.9", "1.1.1.1", TRUSTED)).isEqualTo("203.0.113.9");
+        assertThat(clientIp("192.168.1.6", "1.1.1.1", TRUSTED)).isEqualTo("192.168.1.6");
+    }
+
+    @Test
+    void forwardedHeaderIsIgnoredWithoutTrustedProxies() {
+        assertThat(clientIp("10.1.2.3", "1.1.1.1", List.of())).isEqualTo("10.1.2.3");
+    }
+
+    @Test
+    void rightmostUntrustedHopIsTheClient() {
+        // 最左侧的 6.6.6.6 由客户端自己填写，不能采信
+        assertThat(clientIp("10.1.2.3", "6.6.6.6, 198.51.100.7", TRUSTED)).isEqualTo("198.51.100.7");
+        assertThat(clientIp("10.1.2.3", "198.51.100.7, 10.9.9.9, 192.168.1.5", TRUSTED)).isEqualTo("198.51.100.7");
+        assertThat(clientIp("0:0:0:0:0:0:0:1", "2001:db8::1", TRUSTED)).isEqualTo("2001:db8::1");
+    }
+
+    @Test
+    void invalidHopsStopTheWalk() {
+        assertThat(clientIp("10.1.2.3", "unknown, 10.9.9.9", TRUSTED)).isEqualTo("10.9.9.9");
+        assertThat(clientIp("10.1.2.3", "evil.example.com", TRUSTED)).isEqualTo("10.1.2.3");
+        assertThat(clientIp("10.1.2.3", null, TRUSTED)).isEqualTo("10.1.2.3");
+    }
+
+    private static String clientIp(String remoteAddr, String forwardedFor, List<String> trustedProxies) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return RequestUtils.getClientIp(request, trustedProxies);
+    }
+}